@@ -31,4 +31,19 @@ public interface CacheManager {
 	 * @return
 	 */
 	public Cache createCache(String cacheName);
+	
+	/**
+	 * Create a typed cache. Nulls are not cached.
+	 * @param cacheName
+	 * @return
+	 */
+	public <K, V> ProfileCache<K, V> createProfileCache(String cacheName);
+	
+	/**
+	 * Create a typed cache that remembers when a value doesn't exist.
+	 * @param cacheName
+	 * @param negativeTtl	number of seconds to remember that a key has no value, 0 to not remember
+	 * @return
+	 */
+	public <K, V> ProfileCache<K, V> createProfileCache(String cacheName, int negativeTtl);
 }
@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A typed cache for Profile2, see {@link CacheManager#createProfileCache(String, int)}.
+ * 
+ * <p>When several threads miss on the same key at once, only one of them runs the loader and the others wait for its result.
+ * If the cache was created with a negative TTL, a null from the loader is remembered for that long so the loader isn't run
+ * again for every request.</p>
+ *
+ */
+public interface ProfileCache<K, V> {
+
+	/**
+	 * Get a value from the cache, loading it if it is not there
+	 * @param key		the key
+	 * @param loader	loader to use on a miss
+	 * @return the value, or null if the loader returned null
+	 */
+	public V get(K key, CacheLoader<K, V> loader);
+	
+	/**
+	 * Get a value from the cache, without loading it
+	 * @param key	the key
+	 * @return the value, or null if it is not cached or is cached as not existing
+	 */
+	public V get(K key);
+	
+	/**
+	 * Get the values that are in the cache for some keys, without loading anything
+	 * @param keys	the keys
+	 * @return Map of key to value for the keys that are cached with a value
+	 */
+	public Map<K, V> getAll(Collection<K> keys);
+	
+	/**
+	 * Add a value to the cache, replacing any existing value. Any load for the key that is in progress will not be cached.
+	 * @param key	the key
+	 * @param value	the value
+	 */
+	public void put(K key, V value);
+	
+	/**
+	 * Remove a value from the cache
+	 * @param key	the key
+	 */
+	public void remove(K key);
+	
+	/**
+	 * Remove everything from the cache
+	 */
+	public void clear();
+}
@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.hbm.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Model for how far a background conversion has got, so that it can carry on where it left off after a restart - persistent
+ * 
+ * <p>Users are processed in uuid order, so everyone up to and including lastUserUuid has been done.</p>
+ *
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProfileConversionCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	
+	private String name;
+	private String lastUserUuid;
+	private int processed;
+	private int failed;
+	private boolean complete;
+	private Date lastUpdated;
+	
+}
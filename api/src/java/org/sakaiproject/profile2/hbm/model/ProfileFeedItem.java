@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.hbm.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Model for an entry in a user's news feed - persistent
+ * 
+ * <p>When a wall item is added, an entry is written for each of the creator's connections, so that a user's feed
+ * can be read with a single range query on recipientUuid instead of going through the walls of all of their connections.</p>
+ *
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProfileFeedItem implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+	
+	private String recipientUuid;
+	private long wallItemId;
+	private String creatorUuid;
+	private Date itemDate;
+	
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.logic;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends email notifications in the background, on a fixed number of worker threads with a bounded queue.
+ *
+ * <p>Recipients are processed in batches. Within a batch, a template is only rendered once for each locale and set of replacement values.</p>
+ *
+ * <p>Recipients must already be cleaned up for their email preferences.</p>
+ *
+ */
+public interface NotificationDispatcher {
+
+	/**
+	 * Queue an email to a list of users using the email template and replacement values supplied
+	 *
+	 * @param userUuids				list of uuids to send to
+	 * @param emailTemplateKey		the email template
+	 * @param replacementValues		Map of values that are substituted into the placeholders in the email template.
+	 * @return true if all recipients were queued, false if the queue was full and some were dropped
+	 */
+	public boolean dispatch(List<String> userUuids, String emailTemplateKey, Map<String,String> replacementValues);
+
+	/**
+	 * Queue an email to a number of users using the email template supplied, with different replacement values for each user
+	 *
+	 * @param emailTemplateKey			the email template
+	 * @param replacementValuesByUser	Map of uuid to the replacement values for that user
+	 * @return true if all recipients were queued, false if the queue was full and some were dropped
+	 */
+	public boolean dispatch(String emailTemplateKey, Map<String, Map<String,String>> replacementValuesByUser);
+
+	/**
+	 * Send an email message straight away, in the current thread. The message will be formatted with
+	 * mime boundaries, html escaped then sent.
+	 *
+	 * @param userUuid	uuid of the user to send the message to
+	 * @param subject	subject of message
+	 * @param message	complete with newlines and any links.
+	 * @return true if sent, false if not
+	 */
+	public boolean sendEmail(String userUuid, String subject, String message);
+
+	/**
+	 * Get the number of recipients that have been queued since startup
+	 * @return
+	 */
+	public long getQueuedCount();
+
+	/**
+	 * Get the number of emails that have been sent since startup
+	 * @return
+	 */
+	public long getSentCount();
+
+	/**
+	 * Get the number of emails that could not be sent since startup, including those dropped because the queue was full
+	 * @return
+	 */
+	public long getFailedCount();
+
+	/**
+	 * Get the average time between an email being queued and sent
+	 * @return time in milliseconds, 0 if nothing has been sent
+	 */
+	public long getAverageLatency();
+
+	/**
+	 * Get the number of batches currently waiting in the queue
+	 * @return
+	 */
+	public int getQueueDepth();
+}
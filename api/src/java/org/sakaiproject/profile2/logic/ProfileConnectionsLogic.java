@@ -46,6 +46,27 @@ public interface ProfileConnectionsLogic {
 	 */
 	public List<Person> getConnectionsForUser(final String userUuid);
 	
+	/**
+	 * Gets a page of the Persons that are connected to this user, sorted by display name. incl prefs and privacy
+	 * 
+	 * <p>Only the Persons on the requested page are created.</p>
+	 * 
+	 * @param userUuid		uuid of the user to retrieve the list of connections for
+	 * @param offset		index of the first connection to return
+	 * @param limit			maximum number of connections to return
+	 * @return
+	 */
+	public List<Person> getConnectionsForUser(final String userUuid, final int offset, final int limit);
+	
+	/**
+	 * Gets the uuids of the users that are connected to this user. No privacy checks are done, 
+	 * so this is only for internal use, eg for sending notifications to a user's connections.
+	 * 
+	 * @param userUuid		uuid of the user to retrieve the list of connections for
+	 * @return List of uuids, empty if none.
+	 */
+	public List<String> getConnectionUserIdsForUser(final String userUuid);
+	
 	/**
 	 * Gets a count of the number of connections a user has.
 	 * @param userId		uuid of the user to retrieve the count for
@@ -61,6 +82,18 @@ public interface ProfileConnectionsLogic {
 	 */
 	public List<Person> getConnectionRequestsForUser(final String userId);
 	
+	/**
+	 * Gets a page of the Persons that have unconfirmed connection requests to this person, sorted by display name
+	 * 
+	 * <p>Only the Persons on the requested page are created.</p>
+	 * 
+	 * @param userId		uuid of the user to retrieve the list of connections for
+	 * @param offset		index of the first request to return
+	 * @param limit			maximum number of requests to return
+	 * @return
+	 */
+	public List<Person> getConnectionRequestsForUser(final String userId, final int offset, final int limit);
+	
 	/**
 	 * Gets a count of the number of unconfirmed incoming connection requests
 	 * 
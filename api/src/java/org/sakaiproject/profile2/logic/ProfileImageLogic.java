@@ -15,7 +15,9 @@
  */
 package org.sakaiproject.profile2.logic;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.sakaiproject.profile2.model.GalleryImage;
 import org.sakaiproject.profile2.model.Person;
@@ -105,6 +107,19 @@ public interface ProfileImageLogic {
 	 */
 	public ProfileImage getProfileImage(Person person, int size, String siteId);
 	
+	/**
+	 * Get the profile images for a list of people, eg a page of connections or search results. 
+	 * See getProfileImage(String, ProfilePreferences, ProfilePrivacy, int);
+	 * 
+	 * <p>This gives the same result as calling getProfileImage for each person, but privacy, preferences and the image
+	 * records are looked up for the whole list at once. The display name and user type are taken from each Person.</p>
+	 * 
+	 * @param people	Person objects for the users
+	 * @param size		size of image to return.
+	 * @return Map of uuid to ProfileImage for each person
+	 */
+	public Map<String, ProfileImage> getProfileImages(Collection<Person> people, int size);
+	
 	/**
 	 * Update the profile image for a user given the byte[] of the image.
 	 * <p>Will work, but not have visible effect if the setting for the image type used in sakai.properties is not upload. ie its using URL instead
@@ -162,6 +177,16 @@ public interface ProfileImageLogic {
 	 * @return all profile gallery images for the specified user.
 	 */
 	public List<GalleryImage> getGalleryImages(String userUuid);
+	
+	/**
+	 * Retrieves a page of the gallery images for the specified user, oldest first.
+	 * 
+	 * @param userUuid the ID of the user.
+	 * @param offset index of the first image to return
+	 * @param limit maximum number of images to return
+	 * @return the requested profile gallery images for the specified user.
+	 */
+	public List<GalleryImage> getGalleryImages(String userUuid, int offset, int limit);
 
 	/**
 	 * Retrieves all gallery images in randomized order for the specified user.
@@ -16,6 +16,9 @@
 package org.sakaiproject.profile2.logic;
 
 import java.math.BigDecimal;
+import java.util.List;
+
+import org.sakaiproject.profile2.hbm.model.ProfileKudos;
 
 
 /**
@@ -54,4 +57,28 @@ public interface ProfileKudosLogic {
 	 * @return
 	 */
 	public boolean updateKudos(String userUuid, int score, BigDecimal percentage);
+	
+	/**
+	 * Update the kudos ratings for a number of users in one go
+	 * 
+	 * @param kudos	list of ProfileKudos, already calculated
+	 * @return
+	 */
+	public boolean updateKudos(List<ProfileKudos> kudos);
+	
+	/**
+	 * Mark a user's kudos rating as needing to be recalculated, because something it depends on has changed.
+	 * The current rating is kept until it is recalculated.
+	 * 
+	 * @param userUuid	uuid for the user
+	 */
+	public void invalidateKudos(String userUuid);
+	
+	/**
+	 * Get the uuids of the users whose kudos ratings need to be recalculated.
+	 * This is everyone that has been invalidated, as well as anyone that has never had a rating.
+	 * 
+	 * @return list of uuids
+	 */
+	public List<String> getUserIdsForKudosRecalculation();
 }
@@ -162,6 +162,8 @@ public interface ProfileLogic {
 		
 	/**
 	 * Get a List of Persons for the given Users.
+	 * <p>The records that make up each Person are fetched for the whole list at once, so this should always be
+	 * preferred over calling getPerson for each User.</p>
 	 * @param users
 	 * @return
 	 */
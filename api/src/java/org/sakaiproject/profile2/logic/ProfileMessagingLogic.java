@@ -65,12 +65,22 @@ public interface ProfileMessagingLogic {
 		
 	/**
 	 * Gets a list of MessageThreads with messages to a given user, each containing the most recent messages in each thread
-	 * TODO This needs to be optimised to get the latest message property in the same query.
+	 * and the number of unread messages. Sorted by most recent message, newest first.
 	 * @param userId	user to get the list of messages for
 	 * @return
 	 */
 	public List<MessageThread> getMessageThreads(final String userId);
 	
+	/**
+	 * Gets a page of the MessageThreads with messages to a given user, each containing the most recent messages in each thread
+	 * and the number of unread messages. Sorted by most recent message, newest first.
+	 * @param userId	user to get the list of messages for
+	 * @param offset	index of the first thread to return
+	 * @param limit		maximum number of threads to return
+	 * @return
+	 */
+	public List<MessageThread> getMessageThreads(final String userId, final int offset, final int limit);
+	
 	/**
 	 * Gets the count of the message threads for a user
 	 * @param userId	user to get the count of message threads for
@@ -85,6 +95,15 @@ public interface ProfileMessagingLogic {
 	 */
 	public List<Message> getMessagesInThread(final String threadId);
 	
+	/**
+	 * Gets a page of the messages contained in this thread, sorted by date posted.
+	 * @param threadId	id of the thread to get the messages for
+	 * @param offset	index of the first message to return
+	 * @param limit		maximum number of messages to return
+	 * @return
+	 */
+	public List<Message> getMessagesInThread(final String threadId, final int offset, final int limit);
+	
 	/**
 	 * Gets the count of the messages in a thread
 	 * @param threadId	thread to get the count for
@@ -15,6 +15,9 @@
  */
 package org.sakaiproject.profile2.logic;
 
+import java.util.Collection;
+import java.util.Map;
+
 import org.sakaiproject.profile2.model.ProfilePreferences;
 import org.sakaiproject.profile2.types.PreferenceType;
 
@@ -47,6 +50,15 @@ public interface ProfilePreferencesLogic {
 	 */
 	public ProfilePreferences getPreferencesRecordForUser(final String userId, boolean useCache);
 	
+	/**
+	 * Retrieve the preferences records for a number of users. Records are taken from the cache where possible,
+	 * the rest are fetched in bulk. Default records are created in bulk for any users that don't have one.
+	 *
+	 * @param userUuids		uuids of the users to retrieve the records for
+	 * @return Map of uuid to ProfilePreferences record. Users whose record could not be retrieved or created will not be included.
+	 */
+	public Map<String, ProfilePreferences> getPreferencesRecordsForUsers(final Collection<String> userUuids);
+	
 	/**
 	 * Save the preferences record to the database
 	 *
@@ -62,5 +74,14 @@ public interface ProfilePreferencesLogic {
 	 * @since 1.5
 	 */
 	public boolean isPreferenceEnabled(final String userUuid, final PreferenceType type);
+	
+	/**
+	 * Do these users have the specific preference enabled? This is the bulk equivalent of {@link #isPreferenceEnabled(String, PreferenceType)}
+	 * and fetches the preferences for all of the users at once.
+	 * @param userUuids	uuids of the users
+	 * @param type		PreferenceType enum
+	 * @return Map of uuid to true if enabled, false if not. Every user is included.
+	 */
+	public Map<String, Boolean> isPreferenceEnabled(final Collection<String> userUuids, final PreferenceType type);
 
 }
@@ -15,6 +15,9 @@
  */
 package org.sakaiproject.profile2.logic;
 
+import java.util.List;
+import java.util.Map;
+
 import org.sakaiproject.profile2.model.ProfilePrivacy;
 import org.sakaiproject.profile2.types.PreferenceType;
 import org.sakaiproject.profile2.types.PrivacyType;
@@ -48,6 +51,15 @@ public interface ProfilePrivacyLogic {
 	 */
 	public ProfilePrivacy getPrivacyRecordForUser(final String userId, boolean useCache);
 	
+	/**
+	 * Retrieve the privacy records for a list of users. Records are taken from the cache where possible,
+	 * the rest are fetched in bulk. Default records are created for any users that don't have one.
+	 *
+	 * @param userUuids		uuids of the users to retrieve the records for
+	 * @return Map of uuid to ProfilePrivacy record. Users whose record could not be retrieved or created will not be included.
+	 */
+	public Map<String, ProfilePrivacy> getPrivacyRecordsForUsers(final List<String> userUuids);
+	
 	/**
 	 * Save the profile privacy record to the database
 	 *
@@ -68,6 +80,23 @@ public interface ProfilePrivacyLogic {
 	 */
 	public boolean isActionAllowed(final String userX, final String userY, final PrivacyType type);
 	
+	/**
+	 * Bulk version of isActionAllowed, for checking the same action against many users at once, eg for a roster.
+	 * <p>The privacy records are fetched in one go rather than once per user.
+	 * 
+	 * @param userXs		uuids of the users that will have the action performed on them
+	 * @param userY			uuid of user requesting to do the action
+	 * @param type			PrivacyType enum
+	 * @return Map of userX uuid to decision. Every uuid supplied will have an entry.
+	 */
+	public Map<String, Boolean> isActionAllowedForUsers(final List<String> userXs, final String userY, final PrivacyType type);
+	
+	/**
+	 * Clear the privacy decisions that have been worked out during the current request.
+	 * <p>Needs to be called when anything a decision depends on changes, ie a privacy record or a connection.
+	 */
+	public void clearCachedDecisions();
+	
 	/**
 	 * Has the user allowed viewing of their birth year in their profile. 
 	 * This is either on or off and does not depend on friends etc which is why it is not included above.
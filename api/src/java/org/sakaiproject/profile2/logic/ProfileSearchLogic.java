@@ -36,6 +36,8 @@ public interface ProfileSearchLogic {
 	 * 
 	 * <p>This list is automatically cleaned for non-existent users by way of UserDirectoryService.getUsers.</p>
 	 * 
+	 * <p>At most SakaiProxy.getMaxSearchResults() are returned. SakaiPerson matches come first, then internal users, then external users.</p>
+	 * 
 	 * @param search string to search for
 	 * @param includeConnections should connections be returned in results
 	 * @param worksiteId optional parameter to limit search to a single worksite. Specify <code>null</code> to search all users.
@@ -48,6 +50,8 @@ public interface ProfileSearchLogic {
 	 *
 	 * <p>This list is automatically cleaned for non-existent users by way of UserDirectoryService.getUsers.</p>
 	 * 
+	 * <p>At most SakaiProxy.getMaxSearchResults() are returned.</p>
+	 * 
 	 * @param search string to search for
 	 * @param includeConnections should connections be returned in results
 	 * @param worksiteId optional parameter to limit search to a single worksite. Specify <code>null</code> to search all users.
@@ -15,6 +15,9 @@
  */
 package org.sakaiproject.profile2.logic;
 
+import java.util.List;
+import java.util.Map;
+
 import org.sakaiproject.profile2.model.ProfilePrivacy;
 import org.sakaiproject.profile2.model.ProfileStatus;
 
@@ -55,6 +58,17 @@ public interface ProfileStatusLogic {
 	 */
 	public ProfileStatus getUserStatus(String userUuid, ProfilePrivacy privacy);
 	
+	/**
+	 * Get the statuses for a list of users in one lookup
+	 * 
+	 * <p>The same rules as {@link #getUserStatus(String)} apply, ie only recent statuses are returned and
+	 * each user's privacy settings are checked against the current requesting user.</p>
+	 *
+	 * @param userUuids		uuids of the users to get the statuses for
+	 * @return Map of uuid to ProfileStatus. Users with no status, or whose status is not allowed to be shown, will not be included.
+	 */
+	public Map<String, ProfileStatus> getUserStatuses(List<String> userUuids);
+	
 	/**
 	 * Set user status
 	 *
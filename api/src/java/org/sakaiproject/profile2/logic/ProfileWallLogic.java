@@ -94,6 +94,18 @@ public interface ProfileWallLogic {
 	 */
 	public List<WallItem> getWallItemsForUser(String userUuid, ProfilePrivacy privacy);
 	
+	/**
+	 * Returns a page of the wall for the specified user, newest first. Privacy 
+	 * settings are used to determine if the user is allowed to access the 
+	 * requested wall and which items on it they can see.
+	 * 
+	 * @param userUuid the user to query by.
+	 * @param offset the index of the first wall item to return.
+	 * @param limit the maximum number of wall items to return.
+	 * @return the page of wall items for the specified user.
+	 */
+	public List<WallItem> getWallItemsForUser(String userUuid, int offset, int limit);
+	
 	/**
 	 * Returns the number of available wall items for the specified user. The
 	 * privacy record will be looked up.
@@ -113,5 +125,22 @@ public interface ProfileWallLogic {
 	 * @return the number of available wall items for the specified user.
 	 */
 	public int getWallItemsCount(String userUuid, ProfilePrivacy privacy);
+	
+	/**
+	 * Returns a page of the news feed for the specified user, newest first.
+	 * The feed contains the events and status updates of the user's
+	 * connections, and posts they have made on their own walls.
+	 * 
+	 * <p>Wall items are added to the feed in the background, so a new item
+	 * may take a moment to appear. To get the next page, pass the id of the
+	 * last wall item on the current page as the cursor.</p>
+	 * 
+	 * @param userUuid the user to query by. Must be the current user.
+	 * @param cursor the id of the last wall item on the previous page, or
+	 *        <code>0</code> for the first page.
+	 * @param limit the maximum number of wall items to return.
+	 * @return the page of wall items, empty if there are no more.
+	 */
+	public List<WallItem> getFeedForUser(String userUuid, long cursor, int limit);
 
 }
@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.sakaiproject.api.common.edu.person.SakaiPerson;
+import org.sakaiproject.profile2.model.ImageSource;
 import org.sakaiproject.profile2.model.MimeTypeByteArray;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.tool.api.Tool;
@@ -61,6 +62,13 @@ public interface SakaiProxy {
 	 * @return
 	 */
 	public String getUserIdForEid(String eid);
+	
+	/**
+	 * Convert a list of eids to internal userids in one lookup
+	 * @param eids	list of eids
+	 * @return Map of eid to userid. Eids that could not be found are not included.
+	 */
+	public Map<String, String> getUserIdsForEids(List<String> eids);
 
 	/**
 	 * Get displayname of a given userid (internal id)
@@ -168,6 +176,13 @@ public interface SakaiProxy {
 	 */
 	public SakaiPerson getSakaiPerson(String userId);
 	
+	/**
+	 * Get the SakaiPersons for a list of users in one lookup
+	 * @param userIds	uuids of the users
+	 * @return Map of uuid to SakaiPerson. Users without a SakaiPerson will not be included.
+	 */
+	public Map<String, SakaiPerson> getSakaiPersons(List<String> userIds);
+	
 	/**
 	 * Get a SakaiPerson Jpeg photo for a user. Checks UserMutableType record first, then goes for SystemMutableType if none.
 	 * <p>Returns null if nothing found.
@@ -264,6 +279,14 @@ public interface SakaiProxy {
 	 */
 	public MimeTypeByteArray getResource(String resourceId);
 	
+	/**
+	 * Retrieve a resource from ContentHosting as an ImageSource, so it can be streamed instead of being read into memory.
+	 *
+	 * @param resourceId	the full resourceId of the file
+	 * @return ImageSource or null if the resource doesn't exist
+	 */
+	public ImageSource getResourceSource(String resourceId);
+	
 	/**
 	 * Removes the specified resource.
 	 * 
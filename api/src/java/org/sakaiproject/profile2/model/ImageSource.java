@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A source of image data that can be written straight to an OutputStream, so that large images do not need to be held in memory
+ * in order to be sent to the browser.
+ *
+ * <p>The data is only read when writeTo or getBytes is called. A source may be written more than once.</p>
+ *
+ */
+public abstract class ImageSource {
+
+	/**
+	 * Get the mimetype of the image
+	 * @return mimetype or null if not known
+	 */
+	public abstract String getMimeType();
+
+	/**
+	 * Get the length of the image data
+	 * @return number of bytes, or -1 if not known
+	 */
+	public abstract long getLength();
+
+	/**
+	 * Get when the image was last modified
+	 * @return time in milliseconds, or 0 if not known
+	 */
+	public abstract long getLastModified();
+
+	/**
+	 * Write the image data to the given stream. The stream is not closed.
+	 * @param out	stream to write to
+	 * @return the number of bytes written
+	 * @throws IOException
+	 */
+	public abstract long writeTo(OutputStream out) throws IOException;
+
+	/**
+	 * Read the image data into a byte[]. Only use this if you really need the whole image in memory, otherwise use writeTo.
+	 * @return byte[] of image data
+	 * @throws IOException
+	 */
+	public byte[] getBytes() throws IOException {
+		long length = getLength();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(length > 0 && length < Integer.MAX_VALUE ? (int)length : 4096);
+		writeTo(out);
+		return out.toByteArray();
+	}
+}
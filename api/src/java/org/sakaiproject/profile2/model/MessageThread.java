@@ -52,6 +52,11 @@ public class MessageThread implements Serializable, Comparable<Object> {
 	 */
 	private Message mostRecentMessage;
 	
+	/**
+	 * number of unread messages in this thread for the user that requested it - not persisted.
+	 */
+	private int unreadMessagesCount;
+	
 	/**
 	 * Natural sort by order
 	 */
@@ -33,4 +33,9 @@ public class MimeTypeByteArray {
 	private byte[] bytes;
 	private String mimeType;
 	
+	/**
+	 * when the data was last modified, in milliseconds. 0 if not known.
+	 */
+	private long lastModified;
+	
 }
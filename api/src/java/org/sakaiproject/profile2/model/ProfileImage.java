@@ -15,6 +15,8 @@
  */
 package org.sakaiproject.profile2.model;
 
+import java.io.IOException;
+
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -27,6 +29,7 @@ import org.apache.commons.lang.StringUtils;
  * <p>This is a wrapper class which contains fields for all types of profile images. Only one field will be set at any given time.</p>
  * <p>Use the getBinary or getUrl methods to do the work and return the data as either a String or byte[]. If String, this will be a URL/URI you can use directly.
  * If byte[] this will be the uploaded image. Consult both.</p>
+ * <p>Images read from a file or ContentHosting are not loaded until required. Use getSource to stream them.</p>
  * 
  * <p>Note. Eventually, this will return only Strings. The byte[] will be base64 encoded and returned as a data URI you can use, however this
  * is not supported in browsers older than IE8 (Safari, Firefox, Chrome, all ok though).
@@ -48,10 +51,22 @@ public class ProfileImage {
 	private String officialImageEncoded;
 	private String altText;
 	private String mimeType;
+	
+	/**
+	 * when the binary data was last modified, in milliseconds. 0 if not known.
+	 */
+	private long lastModified;
 	private boolean isDefault;
+	
+	/**
+	 * source for image data that has not been read yet, eg a file or a resource in ContentHosting.
+	 * Prefer this over getBinary when sending the image somewhere.
+	 */
+	private ImageSource source;
 		
 	/**
-	 * Get access to the binary data from either the uploaded image or the base64 encoded data
+	 * Get access to the binary data from either the uploaded image, the base64 encoded data or the image source.
+	 * Note that for an image source this reads the entire image into memory.
 	 * @return byte[] or null if none
 	 */
 	public byte[] getBinary() {
@@ -61,9 +76,25 @@ public class ProfileImage {
 		if(StringUtils.isNotBlank(officialImageEncoded)){
 			return Base64.decodeBase64(officialImageEncoded);
 		}
+		if(source != null){
+			try {
+				return source.getBytes();
+			} catch (IOException e) {
+				//treat the same as no image
+				return null;
+			}
+		}
 		return null;
 	}
 	
+	/**
+	 * Check if there is binary data for this image without reading it
+	 * @return true if getBinary would return data
+	 */
+	public boolean hasBinary() {
+		return uploadedImage != null || StringUtils.isNotBlank(officialImageEncoded) || source != null;
+	}
+	
 	/**
 	 * Get access to the URL from either the external image that a user can set, or an official image.
 	 * @return url or null.
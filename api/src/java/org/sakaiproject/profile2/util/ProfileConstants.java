@@ -48,6 +48,15 @@ public class ProfileConstants {
 	//default if not specified in sakai.properties as profile.picture.max (megs)
 	public static final int MAX_IMAGE_UPLOAD_SIZE = 2; 
 	
+	//default if not specified in sakai.properties as profile2.image.cache.size (megs)
+	public static final int DEFAULT_IMAGE_CACHE_SIZE = 32;
+	
+	//default if not specified in sakai.properties as profile2.official.image.cache.size (megs)
+	public static final int DEFAULT_OFFICIAL_IMAGE_CACHE_SIZE = 32;
+	
+	//mimetype for official images on the filesystem, which are always .jpg
+	public static final String MIMETYPE_JPEG = "image/jpeg";
+	
 	//one side will be scaled to this if larger. 200 is large enough
 	public static final int MAX_IMAGE_XY = 200; 	
 	
@@ -0,0 +1,20 @@
+/* add the background conversion checkpoint table */
+create table PROFILE_CONVERSION_T (
+	NAME varchar(99) not null,
+	LAST_USER_UUID varchar(99),
+	PROCESSED integer not null,
+	FAILED integer not null,
+	COMPLETE bit not null,
+	LAST_UPDATED datetime not null,
+	primary key (NAME)
+);
+
+/* add the news feed table */
+create table PROFILE_FEED_T (
+	RECIPIENT_UUID varchar(99) not null,
+	WALL_ITEM_ID bigint not null,
+	CREATOR_UUID varchar(99) not null,
+	ITEM_DATE datetime not null,
+	primary key (RECIPIENT_UUID, WALL_ITEM_ID)
+);
+create index PROFILE_FEED_WALL_ITEM_ID_I on PROFILE_FEED_T (WALL_ITEM_ID);
@@ -0,0 +1,20 @@
+/* add the background conversion checkpoint table */
+create table PROFILE_CONVERSION_T (
+	NAME varchar2(99) not null,
+	LAST_USER_UUID varchar2(99),
+	PROCESSED number(10,0) not null,
+	FAILED number(10,0) not null,
+	COMPLETE number(1,0) not null,
+	LAST_UPDATED date not null,
+	primary key (NAME)
+);
+
+/* add the news feed table */
+create table PROFILE_FEED_T (
+	RECIPIENT_UUID varchar2(99) not null,
+	WALL_ITEM_ID number(19,0) not null,
+	CREATOR_UUID varchar2(99) not null,
+	ITEM_DATE timestamp(6) not null,
+	primary key (RECIPIENT_UUID, WALL_ITEM_ID)
+);
+create index PROFILE_FEED_WALL_ITEM_ID_I on PROFILE_FEED_T (WALL_ITEM_ID);
@@ -15,8 +15,16 @@
  */
 package org.sakaiproject.profile2.cache;
 
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import lombok.Setter;
 
+import org.apache.log4j.Logger;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
 
@@ -28,12 +36,62 @@ import org.sakaiproject.memory.api.MemoryService;
  */
 public class CacheManagerImpl implements CacheManager {
 
+	private static final Logger log = Logger.getLogger(CacheManagerImpl.class);
+	
+	//names of the JMX beans registered for the typed caches
+	private final List<ObjectName> registered = new CopyOnWriteArrayList<ObjectName>();
+
 	/**
  	* {@inheritDoc}
  	*/
 	public Cache createCache(String cacheName) {
 		return memoryService.newCache(cacheName);
 	}
+	
+	/**
+ 	* {@inheritDoc}
+ 	*/
+	public <K, V> ProfileCache<K, V> createProfileCache(String cacheName) {
+		return createProfileCache(cacheName, 0);
+	}
+	
+	/**
+ 	* {@inheritDoc}
+ 	*/
+	public <K, V> ProfileCache<K, V> createProfileCache(String cacheName, int negativeTtl) {
+		ProfileCacheImpl<K, V> cache = new ProfileCacheImpl<K, V>(cacheName, memoryService.newCache(cacheName), negativeTtl);
+		register(cache);
+		return cache;
+	}
+	
+	/**
+	 * Register the statistics for a cache with JMX, replacing any left over from a previous deployment
+	 */
+	private void register(ProfileCacheImpl<?, ?> cache) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName("org.sakaiproject.profile2:type=Cache,name=" + ObjectName.quote(cache.getName()));
+			if(server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(cache, name);
+			registered.add(name);
+		} catch (Exception e) {
+			log.warn("Could not register cache statistics with JMX for: " + cache.getName() + " : " + e.getClass() + " : " + e.getMessage());
+		}
+	}
+	
+	public void destroy() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for(ObjectName name : registered) {
+			try {
+				server.unregisterMBean(name);
+			} catch (Exception e) {
+				log.debug("Could not unregister cache statistics: " + name);
+			}
+		}
+		registered.clear();
+	}
 
 	@Setter
 	private MemoryService memoryService;
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.sakaiproject.profile2.model.MimeTypeByteArray;
+
+/**
+ * A least recently used cache for image data, bounded by the total number of bytes held rather than the number of entries.
+ * 
+ * <p>Entries are never updated, so keys must change whenever the image does, eg by using the resource id of the image.
+ * This means the cache is local to each node and never needs to be invalidated across a cluster.</p>
+ * 
+ * <p>Callers must not modify the byte arrays that are returned.</p>
+ *
+ */
+public class ImageCache {
+
+	private final long maxBytes;
+	private long currentBytes = 0;
+	
+	//access ordered so the eldest entry is the least recently used
+	private final LinkedHashMap<String, MimeTypeByteArray> entries = new LinkedHashMap<String, MimeTypeByteArray>(16, 0.75f, true);
+	
+	/**
+	 * Create a new cache
+	 * @param maxBytes	maximum number of bytes to hold
+	 */
+	public ImageCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+	
+	/**
+	 * Get an image from the cache
+	 * @param key	key for the image
+	 * @return	MimeTypeByteArray or null if not in the cache
+	 */
+	public synchronized MimeTypeByteArray get(String key) {
+		return entries.get(key);
+	}
+	
+	/**
+	 * Add an image to the cache, removing the least recently used images if required to make room.
+	 * Images larger than the whole cache are not added.
+	 * 
+	 * @param key	key for the image
+	 * @param image	MimeTypeByteArray to add
+	 */
+	public synchronized void put(String key, MimeTypeByteArray image) {
+		if(image == null || image.getBytes() == null || image.getBytes().length > maxBytes) {
+			return;
+		}
+		
+		MimeTypeByteArray previous = entries.put(key, image);
+		if(previous != null) {
+			currentBytes -= previous.getBytes().length;
+		}
+		currentBytes += image.getBytes().length;
+		
+		Iterator<Map.Entry<String, MimeTypeByteArray>> iter = entries.entrySet().iterator();
+		while(currentBytes > maxBytes && iter.hasNext()) {
+			currentBytes -= iter.next().getValue().getBytes().length;
+			iter.remove();
+		}
+	}
+	
+	/**
+	 * Check if an image of the given size should be added to the cache. Images larger than a tenth of the cache are not,
+	 * so a few large images can't push out everything else. Those should be streamed instead.
+	 * 
+	 * @param length	size of the image in bytes, -1 if not known
+	 * @return true if it should be cached
+	 */
+	public boolean isCacheable(long length) {
+		return length >= 0 && length <= maxBytes / 10;
+	}
+	
+	/**
+	 * Remove everything from the cache
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		currentBytes = 0;
+	}
+	
+	/**
+	 * Get the number of bytes currently held
+	 * @return
+	 */
+	public synchronized long getSize() {
+		return currentBytes;
+	}
+}
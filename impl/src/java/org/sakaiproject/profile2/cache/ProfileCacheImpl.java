@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.cache;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.sakaiproject.memory.api.Cache;
+
+/**
+ * Implementation of ProfileCache, on top of a Sakai Cache.
+ * 
+ * <p>Loads in progress are tracked per key, so concurrent misses for a key wait for one load. A put or remove for a key cancels
+ * caching the result of any load in progress for it, so a load that started before an update can't overwrite it.</p>
+ * 
+ * <p>Negative entries are stored in the Sakai cache as a marker with an expiry time, so they age out independently of the
+ * cache's own expiry settings.</p>
+ *
+ */
+public class ProfileCacheImpl<K, V> implements ProfileCache<K, V>, ProfileCacheImplMBean {
+
+	private final String name;
+	private final Cache cache;
+	private final long negativeTtl;
+	
+	//loads in progress
+	private final ConcurrentHashMap<K, FutureTask<V>> loading = new ConcurrentHashMap<K, FutureTask<V>>();
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong negativeHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong loads = new AtomicLong();
+	private final AtomicLong loadFailures = new AtomicLong();
+	private final AtomicLong loadTime = new AtomicLong();
+	
+	/**
+	 * @param name			name of the cache
+	 * @param cache			Sakai cache to hold the values
+	 * @param negativeTtl	number of seconds to remember that a key has no value, 0 to not remember
+	 */
+	public ProfileCacheImpl(String name, Cache cache, int negativeTtl) {
+		this.name = name;
+		this.cache = cache;
+		this.negativeTtl = negativeTtl * 1000L;
+	}
+	
+	/**
+ 	* {@inheritDoc}
+ 	*/
+	public V get(final K key, final CacheLoader<K, V> loader) {
+		
+		Object cached = lookup(key);
+		if(cached instanceof NegativeEntry) {
+			return null;
+		}
+		if(cached != null) {
+			return cast(cached);
+		}
+		
+		//join a load in progress for this key, or start one in this thread
+		FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+			public V call() {
+				loads.incrementAndGet();
+				long start = System.currentTimeMillis();
+				try {
+					return loader.load(key);
+				} catch (RuntimeException e) {
+					loadFailures.incrementAndGet();
+					throw e;
+				} finally {
+					loadTime.addAndGet(System.currentTimeMillis() - start);
+				}
+			}
+		});
+		FutureTask<V> existing = loading.putIfAbsent(key, task);
+		if(existing == null) {
+			task.run();
+		} else {
+			task = existing;
+		}
+		
+		V value;
+		try {
+			value = task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			loading.remove(key, task);
+			if(e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+		
+		//only cache if there hasn't been a put or remove since the load started
+		if(existing == null && loading.remove(key, task)) {
+			if(value != null) {
+				cache.put(key, value);
+			} else if(negativeTtl > 0) {
+				cache.put(key, new NegativeEntry(System.currentTimeMillis() + negativeTtl));
+			}
+		}
+		return value;
+	}
+	
+	/**
+ 	* {@inheritDoc}
+ 	*/
+	public V get(K key) {
+		Object cached = lookup(key);
+		if(cached instanceof NegativeEntry) {
+			return null;
+		}
+		return cast(cached);
+	}
+	
+	/**
+ 	* {@inheritDoc}
+ 	*/
+	public Map<K, V> getAll(Collection<K> keys) {
+		Map<K, V> values = new HashMap<K, V>();
+		for(K key : keys) {
+			V value = get(key);
+			if(value != null) {
+				values.put(key, value);
+			}
+		}
+		return values;
+	}
+	
+	/**
+ 	* {@inheritDoc}
+ 	*/
+	public void put(K key, V value) {
+		loading.remove(key);
+		if(value == null) {
+			cache.remove(key);
+		} else {
+			cache.put(key, value);
+		}
+	}
+	
+	/**
+ 	* {@inheritDoc}
+ 	*/
+	public void remove(K key) {
+		loading.remove(key);
+		cache.remove(key);
+	}
+	
+	/**
+ 	* {@inheritDoc}
+ 	*/
+	public void clear() {
+		loading.clear();
+		cache.clear();
+	}
+	
+	/**
+	 * Get whatever is in the cache for a key, removing negative entries that have expired, and count the result
+	 * @return the value, a NegativeEntry, or null
+	 */
+	private Object lookup(K key) {
+		Object cached = cache.get(key);
+		if(cached instanceof NegativeEntry) {
+			if(((NegativeEntry) cached).isExpired()) {
+				cache.remove(key);
+				cached = null;
+			} else {
+				negativeHits.incrementAndGet();
+				return cached;
+			}
+		}
+		if(cached == null) {
+			misses.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return cached;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private V cast(Object cached) {
+		return (V) cached;
+	}
+	
+	public String getName() {
+		return name;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getNegativeHits() {
+		return negativeHits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getLoads() {
+		return loads.get();
+	}
+
+	public long getLoadFailures() {
+		return loadFailures.get();
+	}
+
+	public long getTotalLoadTime() {
+		return loadTime.get();
+	}
+
+	public double getAverageLoadTime() {
+		long l = loads.get();
+		return l == 0 ? 0 : (double) loadTime.get() / l;
+	}
+
+	public double getHitRatio() {
+		long found = hits.get() + negativeHits.get();
+		long total = found + misses.get();
+		return total == 0 ? 0 : (double) found / total;
+	}
+
+	public void resetStatistics() {
+		hits.set(0);
+		negativeHits.set(0);
+		misses.set(0);
+		loads.set(0);
+		loadFailures.set(0);
+		loadTime.set(0);
+	}
+	
+	/**
+	 * Marker for a key that is known to have no value
+	 */
+	private static class NegativeEntry implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final long expires;
+		
+		NegativeEntry(long expires) {
+			this.expires = expires;
+		}
+		
+		boolean isExpired() {
+			return System.currentTimeMillis() >= expires;
+		}
+	}
+}
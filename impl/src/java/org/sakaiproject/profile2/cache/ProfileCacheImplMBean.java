@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.cache;
+
+/**
+ * Statistics for a ProfileCache, registered with JMX under org.sakaiproject.profile2:type=Cache.
+ *
+ */
+public interface ProfileCacheImplMBean {
+
+	public String getName();
+	
+	/**
+	 * Number of lookups that found a value
+	 */
+	public long getHits();
+	
+	/**
+	 * Number of lookups that found the key is cached as having no value
+	 */
+	public long getNegativeHits();
+	
+	/**
+	 * Number of lookups that found nothing
+	 */
+	public long getMisses();
+	
+	/**
+	 * Number of times the loader was run. Lower than misses when concurrent misses for a key share a load.
+	 */
+	public long getLoads();
+	
+	/**
+	 * Number of times the loader threw an exception
+	 */
+	public long getLoadFailures();
+	
+	/**
+	 * Total time spent in the loader, in ms
+	 */
+	public long getTotalLoadTime();
+	
+	/**
+	 * Average time spent in the loader, in ms
+	 */
+	public double getAverageLoadTime();
+	
+	/**
+	 * Proportion of lookups that found a value or a negative entry
+	 */
+	public double getHitRatio();
+	
+	/**
+	 * Reset the statistics to zero
+	 */
+	public void resetStatistics();
+	
+	/**
+	 * Remove everything from the cache
+	 */
+	public void clear();
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.conversion;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.log4j.Logger;
+import org.sakaiproject.profile2.dao.ProfileDao;
+import org.sakaiproject.profile2.hbm.model.ProfileConversionCheckpoint;
+import org.sakaiproject.profile2.logic.SakaiProxy;
+import org.sakaiproject.profile2.util.ProfileConstants;
+import org.sakaiproject.tool.api.Session;
+import org.sakaiproject.tool.api.SessionManager;
+
+/**
+ * Runs the profile image conversion, profile image import and profile import in a background thread after startup,
+ * so that server startup is not held up by them. This is not part of the public API.
+ *
+ * <p>Users are processed in batches on a small pool of worker threads. The position reached is saved as a checkpoint
+ * after each batch so that if the server is restarted, the conversion carries on from where it got to.
+ * Once a conversion is complete it will not run again unless its checkpoint row is removed.</p>
+ *
+ */
+public class ProfileConversionService {
+
+	private static final Logger log = Logger.getLogger(ProfileConversionService.class);
+
+	//checkpoint names
+	public static final String CONVERT_IMAGES = "convertProfileImages";
+	public static final String IMPORT_IMAGES = "importProfileImages";
+
+	//number of users to process at a time
+	private static final int BATCH_SIZE = 100;
+
+	//number of worker threads, can be overridden by profile2.conversion.threads
+	private static final int DEFAULT_THREADS = 2;
+
+	//pause between batches in ms so we don't swamp the server, can be overridden by profile2.conversion.batch.delay
+	private static final int DEFAULT_BATCH_DELAY = 500;
+
+	private Thread thread;
+	private ExecutorService executor;
+	private volatile boolean stopped;
+
+	/**
+	 * Name of the conversion currently running, or null if none
+	 */
+	@Getter
+	private volatile String currentConversion;
+
+	/**
+	 * Number of users processed so far for the current conversion
+	 */
+	@Getter
+	private volatile int processed;
+
+	/**
+	 * Number of users that failed so far for the current conversion
+	 */
+	@Getter
+	private volatile int failed;
+
+	/**
+	 * Total number of users to process for the current conversion
+	 */
+	@Getter
+	private volatile int total;
+
+	public void init() {
+
+		final boolean convertImages = sakaiProxy.isProfileConversionEnabled();
+
+		boolean importImages = sakaiProxy.isProfileImageImportEnabled();
+		if(importImages && sakaiProxy.getProfilePictureType() != ProfileConstants.PICTURE_SETTING_UPLOAD) {
+			log.warn("I'm set to import images but profile2.picture.type=upload is not set. Not importing.");
+			importImages = false;
+		}
+		final boolean doImportImages = importImages;
+
+		final boolean importProfiles = sakaiProxy.isProfileImportEnabled();
+
+		//nothing to do
+		if(!convertImages && !doImportImages && !importProfiles) {
+			return;
+		}
+
+		int threads = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.conversion.threads", null), DEFAULT_THREADS);
+		final int delay = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.conversion.batch.delay", null), DEFAULT_BATCH_DELAY);
+		executor = Executors.newFixedThreadPool(threads);
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+
+				//start a session for admin so we can access everyone's resources
+				Session session = sessionManager.startSession();
+				sessionManager.setCurrentSession(session);
+				session.setUserEid("admin");
+				session.setUserId("admin");
+
+				try {
+					if(convertImages) {
+						runConversion(CONVERT_IMAGES, session, delay);
+					}
+					if(doImportImages && !stopped) {
+						runConversion(IMPORT_IMAGES, session, delay);
+					}
+					if(importProfiles && !stopped) {
+						String csv = sakaiProxy.getProfileImportCsvPath();
+						converter.importProfiles(csv);
+					}
+				} catch (InterruptedException e) {
+					log.warn("Profile2 conversion interrupted, stopping. It will resume from the last checkpoint on the next startup.");
+				} catch (Exception e) {
+					log.error("Profile2 conversion failed: " + e.getClass() + " : " + e.getMessage(), e);
+				} finally {
+					currentConversion = null;
+					executor.shutdownNow();
+					session.invalidate();
+				}
+			}
+		}, "Profile2 conversion");
+		thread.setDaemon(true);
+		thread.start();
+
+		log.info("Profile2: conversion started in the background.");
+	}
+
+	public void destroy() {
+		stopped = true;
+		if(thread != null) {
+			thread.interrupt();
+		}
+		if(executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Run a conversion over every user, starting from the last checkpoint
+	 * @param name		name of the conversion, one of CONVERT_IMAGES or IMPORT_IMAGES
+	 * @param session	admin session to use in the worker threads
+	 * @param delay		pause between batches, in ms
+	 * @throws InterruptedException
+	 */
+	private void runConversion(final String name, final Session session, int delay) throws InterruptedException {
+
+		ProfileConversionCheckpoint checkpoint = dao.getConversionCheckpoint(name);
+		if(checkpoint == null) {
+			checkpoint = new ProfileConversionCheckpoint(name, null, 0, 0, false, new Date());
+		}
+
+		if(checkpoint.isComplete()) {
+			log.info("Profile2: " + name + " has already been completed, skipping.");
+			return;
+		}
+
+		currentConversion = name;
+		processed = checkpoint.getProcessed();
+		failed = checkpoint.getFailed();
+		total = dao.getAllSakaiPersonIdsCount();
+
+		log.info("Profile2: " + name + " starting" + (checkpoint.getLastUserUuid() != null ? " from " + checkpoint.getLastUserUuid() : "") + ", " + total + " users in total.");
+
+		List<String> batch = getNextBatch(checkpoint.getLastUserUuid());
+		while(!batch.isEmpty()) {
+
+			if(stopped) {
+				throw new InterruptedException();
+			}
+
+			//convert on the pool
+			List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+			for(final String userUuid : batch) {
+				tasks.add(new Callable<Boolean>() {
+					public Boolean call() {
+						sessionManager.setCurrentSession(session);
+						try {
+							if(CONVERT_IMAGES.equals(name)) {
+								converter.convertProfileImage(userUuid);
+							} else {
+								converter.importProfileImage(userUuid);
+							}
+							return true;
+						} catch (Exception e) {
+							log.error("Profile2: " + name + " failed for " + userUuid + ": " + e.getClass() + " : " + e.getMessage());
+							return false;
+						}
+					}
+				});
+			}
+
+			for(Future<Boolean> future : executor.invokeAll(tasks)) {
+				try {
+					if(!future.get()) {
+						failed++;
+					}
+				} catch (ExecutionException e) {
+					failed++;
+				}
+				processed++;
+			}
+
+			//save where we got to
+			checkpoint.setLastUserUuid(batch.get(batch.size() - 1));
+			checkpoint.setProcessed(processed);
+			checkpoint.setFailed(failed);
+			checkpoint.setLastUpdated(new Date());
+			dao.saveConversionCheckpoint(checkpoint);
+
+			log.info("Profile2: " + name + " processed " + processed + " of " + total + " users (" + failed + " failed).");
+
+			if(delay > 0) {
+				Thread.sleep(delay);
+			}
+
+			batch = getNextBatch(checkpoint.getLastUserUuid());
+		}
+
+		checkpoint.setComplete(true);
+		checkpoint.setLastUpdated(new Date());
+		dao.saveConversionCheckpoint(checkpoint);
+
+		log.info("Profile2: " + name + " finished. " + processed + " users processed, " + failed + " failed.");
+	}
+
+	/**
+	 * Get the next batch of user uuids after the one given
+	 * @param lastUserUuid	uuid of the last user processed, or null to start at the beginning
+	 * @return
+	 */
+	private List<String> getNextBatch(String lastUserUuid) {
+		if(lastUserUuid == null) {
+			return dao.getAllSakaiPersonIds(0, BATCH_SIZE);
+		}
+		return dao.getSakaiPersonIdsAfter(lastUserUuid, BATCH_SIZE);
+	}
+
+	@Setter
+	private SakaiProxy sakaiProxy;
+
+	@Setter
+	private ProfileDao dao;
+
+	@Setter
+	private ProfileConverter converter;
+
+	@Setter
+	private SessionManager sessionManager;
+
+}
@@ -15,16 +15,18 @@
  */
 package org.sakaiproject.profile2.conversion;
 
+import java.beans.IntrospectionException;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -33,25 +35,27 @@ import lombok.Getter;
 import lombok.Setter;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
 import org.sakaiproject.api.common.edu.person.SakaiPerson;
 import org.sakaiproject.authz.api.SecurityAdvisor;
 import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.profile2.dao.ProfileDao;
-import org.sakaiproject.profile2.exception.ProfileNotDefinedException;
 import org.sakaiproject.profile2.hbm.model.ProfileImageExternal;
+import org.sakaiproject.profile2.hbm.model.ProfileImageOfficial;
 import org.sakaiproject.profile2.hbm.model.ProfileImageUploaded;
-import org.sakaiproject.profile2.logic.ProfileImageLogic;
 import org.sakaiproject.profile2.logic.SakaiProxy;
 import org.sakaiproject.profile2.model.ImportableUserProfile;
 import org.sakaiproject.profile2.model.MimeTypeByteArray;
 import org.sakaiproject.profile2.model.UserProfile;
+import org.sakaiproject.profile2.search.ProfileSearchIndex;
 import org.sakaiproject.profile2.util.ProfileConstants;
 import org.sakaiproject.profile2.util.ProfileUtils;
 
 import au.com.bytecode.opencsv.CSVReader;
 import au.com.bytecode.opencsv.bean.CsvToBean;
 import au.com.bytecode.opencsv.bean.HeaderColumnNameTranslateMappingStrategy;
+import au.com.bytecode.opencsv.bean.MappingStrategy;
 
 /**
  * Handles the conversion and import of profiles and images. This is not part of the public API.
@@ -73,13 +77,17 @@ public class ProfileConverter {
 	private SecurityService securityService;
 	
 	@Setter
-	private ProfileImageLogic imageLogic;
-	
-	ConvertedImage ci = null;
+	private ProfileSearchIndex searchIndex;
 	
 	private final static String DEFAULT_FILE_NAME = "Profile Image";
 	private final static String DEFAULT_MIME_TYPE = "image/jpeg";
 	
+	//number of CSV rows to import at a time, can be overridden by profile2.import.batch.size
+	private final static int DEFAULT_IMPORT_BATCH_SIZE = 500;
+	
+	//maximum number of errors kept in an ImportSummary
+	private final static int MAX_IMPORT_ERRORS = 100;
+	
 	public void init() {
 		log.info("Profile2: ==============================="); 
 		log.info("Profile2: Conversion utility starting up."); 
@@ -87,166 +95,151 @@ public class ProfileConverter {
 	}
 	
 	/**
-	 * Convert profile images
+	 * Convert the profile images for a user. Images stored in SakaiPerson are saved as uploaded images, with a thumbnail and avatar,
+	 * and image urls in SakaiPerson are saved as external images. Anything that already exists is left alone.
+	 * 
+	 * <p>This does not keep any state so can be called for different users at the same time.</p>
+	 * 
+	 * @param userUuid	uuid of the user to convert
 	 */
-	public void convertProfileImages() {
+	public void convertProfileImage(String userUuid) {
 		
-		//get list of users
-		List<String> allUsers = new ArrayList<String>(dao.getAllSakaiPersonIds());
+		//get image record from dao directly, we don't need privacy/prefs here
+		ProfileImageUploaded uploadedProfileImage = dao.getCurrentProfileImageRecord(userUuid);
 		
-		if(allUsers.isEmpty()){
-			log.warn("Profile2 image converter: No SakaiPersons to process. Nothing to do!");
-			return;
-		}
-		//for each, do they have a profile image record. if so, skip (perhaps null the SakaiPerson JPEG_PHOTO bytes?)
-		for(Iterator<String> i = allUsers.iterator(); i.hasNext();) {
-			String userUuid = (String)i.next();
+		ConvertedImage ci = new ConvertedImage();
+		ci.setUserUuid(userUuid);
+		
+		//if no record, we need to run all conversions
+		if(uploadedProfileImage == null) {
+			//main
+			convertSakaiPersonImage(ci);
 			
-			//get image record from dao directly, we don't need privacy/prefs here
-			ProfileImageUploaded uploadedProfileImage = dao.getCurrentProfileImageRecord(userUuid);
+			if(StringUtils.isNotBlank(ci.getMainResourceId())) {
+				//thumbnail
+				generateAndPersistThumbnail(ci);
+				//avatar
+				generateAndPersistAvatar(ci);
+			}
+		} else {
 			
-			ci = new ConvertedImage();
-			ci.setUserUuid(userUuid);
+			//get any existing values and set into object so we know if we need to generate or save anything
+			ci.setMainResourceId(uploadedProfileImage.getMainResource());
+			ci.setThumbnailResourceId(uploadedProfileImage.getThumbnailResource());
+			ci.setAvatarResourceId(uploadedProfileImage.getAvatarResource());
 			
-			//if no record, we need to run all conversions
-			if(uploadedProfileImage == null) {
-				//main
-				convertSakaiPersonImage();
-				
-				if(StringUtils.isNotBlank(ci.getMainResourceId())) {
-					//thumbnail
-					generateAndPersistThumbnail();
-					//avatar
-					generateAndPersistAvatar();
-				}
-			} else {
-				
-				//get any existing values and set into object so we know if we need to generate or save anything
-				ci.setMainResourceId(uploadedProfileImage.getMainResource());
-				ci.setThumbnailResourceId(uploadedProfileImage.getThumbnailResource());
-				ci.setAvatarResourceId(uploadedProfileImage.getAvatarResource());
-				
-				//get the existing profile image
+			//only get the existing profile image if we need to generate something from it
+			if(StringUtils.isBlank(ci.getThumbnailResourceId()) || StringUtils.isBlank(ci.getAvatarResourceId())) {
 				MimeTypeByteArray mtba = sakaiProxy.getResource(ci.getMainResourceId());
-				
-				ci.setImage(mtba.getBytes());
-				ci.setMimeType(mtba.getMimeType());
-
-				//if we need thumb or avatar, create as necessary
-				if(ci.needsThumb()){
-					generateAndPersistThumbnail();
-				}
-				if(ci.needsAvatar()){
-					generateAndPersistAvatar();
+				if(mtba != null) {
+					ci.setImage(mtba.getBytes());
+					ci.setMimeType(mtba.getMimeType());
 				}
 			}
-		
-			//save image resource IDs
-			if(ci.isNeedsSaving()){
-				ProfileImageUploaded convertedProfileImage = new ProfileImageUploaded(userUuid, ci.getMainResourceId(), ci.getThumbnailResourceId(), ci.getAvatarResourceId(), true);
-			
-				if(dao.addNewProfileImage(convertedProfileImage)){
-					log.info("Profile2 image converter: Binary image converted and saved for " + userUuid);
-				} else {
-					log.warn("Profile2 image converter: Binary image conversion failed for " + userUuid);
-				}	
+
+			//if we need thumb or avatar, create as necessary
+			if(ci.needsThumb()){
+				generateAndPersistThumbnail(ci);
 			}
+			if(ci.needsAvatar()){
+				generateAndPersistAvatar(ci);
+			}
+		}
+	
+		//save image resource IDs
+		if(ci.isNeedsSaving()){
+			ProfileImageUploaded convertedProfileImage = new ProfileImageUploaded(userUuid, ci.getMainResourceId(), ci.getThumbnailResourceId(), ci.getAvatarResourceId(), true);
+		
+			if(dao.addNewProfileImage(convertedProfileImage)){
+				log.info("Profile2 image converter: Binary image converted and saved for " + userUuid);
+			} else {
+				log.warn("Profile2 image converter: Binary image conversion failed for " + userUuid);
+			}	
+		}
+		
+		//
+		// Process external image urls
+		//
+		
+		//process any image URLs, if they don't already have a valid record.
+		ProfileImageExternal externalProfileImage = dao.getExternalImageRecordForUser(userUuid);
+		if(externalProfileImage != null) {
+			log.debug("Profile2 image converter: ProfileImageExternal record exists for " + userUuid + ". Nothing to do here, skipping...");
+		} else {
+			log.debug("Profile2 image converter: No existing ProfileImageExternal record for " + userUuid + ". Processing...");
 			
-			//
-			// Process external image urls
-			//
+			String url = sakaiProxy.getSakaiPersonImageUrl(userUuid);
 			
-			//process any image URLs, if they don't already have a valid record.
-			ProfileImageExternal externalProfileImage = dao.getExternalImageRecordForUser(userUuid);
-			if(externalProfileImage != null) {
-				log.info("Profile2 image converter: ProfileImageExternal record exists for " + userUuid + ". Nothing to do here, skipping...");
+			//if none, nothing to do
+			if(StringUtils.isBlank(url)) {
+				log.debug("Profile2 image converter: No url image to convert for " + userUuid + ". Skipping...");
 			} else {
-				log.info("Profile2 image converter: No existing ProfileImageExternal record for " + userUuid + ". Processing...");
-				
-				String url = sakaiProxy.getSakaiPersonImageUrl(userUuid);
-				
-				//if none, nothing to do
-				if(StringUtils.isBlank(url)) {
-					log.info("Profile2 image converter: No url image to convert for " + userUuid + ". Skipping...");
+				externalProfileImage = new ProfileImageExternal(userUuid, url, null, null);
+				if(dao.saveExternalImage(externalProfileImage)) {
+					log.info("Profile2 image converter: Url image converted and saved for " + userUuid);
 				} else {
-					externalProfileImage = new ProfileImageExternal(userUuid, url, null, null);
-					if(dao.saveExternalImage(externalProfileImage)) {
-						log.info("Profile2 image converter: Url image converted and saved for " + userUuid);
-					} else {
-						log.warn("Profile2 image converter: Url image conversion failed for " + userUuid);
-					}
+					log.warn("Profile2 image converter: Url image conversion failed for " + userUuid);
 				}
-				
 			}
 			
-			log.info("Profile2 image converter: Finished converting user profile for: " + userUuid);
-			//go to next user
 		}
 		
-		return;
+		log.debug("Profile2 image converter: Finished converting user profile for: " + userUuid);
 	}
 	
 	/**
-	 * This imports URL profile images into upload profile images.
+	 * Import a user's external profile image url as an uploaded profile image, if they don't already have one.
+	 * 
+	 * <p>This does not keep any state so can be called for different users at the same time.</p>
+	 * 
+	 * @param userUuid	uuid of the user to import
 	 */
-	public void importProfileImages() {
+	public void importProfileImage(String userUuid) {
 		
-		//get list of users
-		List<String> allUsers = new ArrayList<String>(dao.getAllSakaiPersonIds());
+		//get image record from dao directly, we don't need privacy/prefs here
+		ProfileImageUploaded uploadedProfileImage = dao.getCurrentProfileImageRecord(userUuid);
 		
-		if(allUsers.isEmpty()){
-			log.warn("Profile2 image converter: No SakaiPersons to process. Nothing to do!");
-			return;
-		}
+		ConvertedImage ci = new ConvertedImage();
+		ci.setUserUuid(userUuid);
 		
-		//for each, do they have a profile image record. if so, skip (perhaps null the SakaiPerson JPEG_PHOTO bytes?)
-		for(Iterator<String> i = allUsers.iterator(); i.hasNext();) {
-			String userUuid = i.next();
+		//if no record, we need to run all conversions
+		if(uploadedProfileImage == null) {
 			
-			//get image record from dao directly, we don't need privacy/prefs here
-			ProfileImageUploaded uploadedProfileImage = dao.getCurrentProfileImageRecord(userUuid);
-			
-			ci = new ConvertedImage();
-			ci.setUserUuid(userUuid);
-			
-			//if no record, we need to run all conversions
-			if(uploadedProfileImage == null) {
-				
-				//main
-				ProfileImageExternal externalProfileImage = dao.getExternalImageRecordForUser(userUuid);
-				if (externalProfileImage == null) {
-					log.info("No existing external profile images for "+ userUuid);
+			//main
+			ProfileImageExternal externalProfileImage = dao.getExternalImageRecordForUser(userUuid);
+			if (externalProfileImage == null) {
+				log.debug("No existing external profile images for "+ userUuid);
+			} else {
+				String mainUrl = externalProfileImage.getMainUrl();
+				if (StringUtils.isNotBlank(mainUrl)) {
+					retrieveMainImage(ci, mainUrl);
 				} else {
-					String mainUrl = externalProfileImage.getMainUrl();
-					if (StringUtils.isNotBlank(mainUrl)) {
-						retrieveMainImage(userUuid, mainUrl);
-					} else {
-						log.info("No URL set for "+ userUuid);
-					}
-				}
-	
-				if(StringUtils.isNotBlank(ci.getMainResourceId())) {
-					//thumbnail
-					generateAndPersistThumbnail();
-					//avatar
-					generateAndPersistAvatar();
+					log.debug("No URL set for "+ userUuid);
 				}
 			}
-		
-			//save image resource IDs
-			if(ci.isNeedsSaving()){
-				ProfileImageUploaded convertedProfileImage = new ProfileImageUploaded(userUuid, ci.getMainResourceId(), ci.getThumbnailResourceId(), ci.getAvatarResourceId(), true);
-			
-				if(dao.addNewProfileImage(convertedProfileImage)){
-					log.info("Profile2 image converter: Binary image converted and saved for " + userUuid);
-				} else {
-					log.warn("Profile2 image converter: Binary image conversion failed for " + userUuid);
-				}	
+
+			if(StringUtils.isNotBlank(ci.getMainResourceId())) {
+				//thumbnail
+				generateAndPersistThumbnail(ci);
+				//avatar
+				generateAndPersistAvatar(ci);
 			}
 		}
+	
+		//save image resource IDs
+		if(ci.isNeedsSaving()){
+			ProfileImageUploaded convertedProfileImage = new ProfileImageUploaded(userUuid, ci.getMainResourceId(), ci.getThumbnailResourceId(), ci.getAvatarResourceId(), true);
+		
+			if(dao.addNewProfileImage(convertedProfileImage)){
+				log.info("Profile2 image converter: Binary image converted and saved for " + userUuid);
+			} else {
+				log.warn("Profile2 image converter: Binary image conversion failed for " + userUuid);
+			}	
+		}
 	}
 
-	private void retrieveMainImage(String userUuid, String mainUrl) {
+	private void retrieveMainImage(ConvertedImage ci, String mainUrl) {
+		String userUuid = ci.getUserUuid();
 		InputStream inputStream = null;
 		try {
 			URL url = new URL(mainUrl);
@@ -332,13 +325,18 @@ public class ProfileConverter {
 	 * 
 	 * <p>Only users that do not currently have a profile will be imported.
 	 * 
+	 * <p>The file is read a row at a time and processed in batches, so only one batch is held in memory. For each batch the eids are
+	 * resolved and existing profiles checked in one lookup, and the profiles and official image urls are saved in JDBC batches,
+	 * one transaction per batch. The batch size can be set with profile2.import.batch.size.
+	 * 
 	 * @param path	path to CSV file on the server
+	 * @return an ImportSummary with the counts and any errors, or null if the file could not be read
 	 */
-	public void importProfiles(String path) {
+	public ImportSummary importProfiles(String path) {
 		
 		if(StringUtils.isBlank(path)) {
 			log.warn("Profile2 importer: invalid path to CSV file. Aborting.");
-			return;
+			return null;
 		}
 		
         HeaderColumnNameTranslateMappingStrategy<ImportableUserProfile> strat = new HeaderColumnNameTranslateMappingStrategy<ImportableUserProfile>();
@@ -373,13 +371,20 @@ public class ProfileConverter {
         map.put("official image url", "officialImageUrl");
         
         strat.setColumnMapping(map);
-
-        CsvToBean<ImportableUserProfile> csv = new CsvToBean<ImportableUserProfile>();
-        List<ImportableUserProfile> list = new ArrayList<ImportableUserProfile>();
+        
+        int batchSize = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.import.batch.size", null), DEFAULT_IMPORT_BATCH_SIZE);
+        
+        CSVReader reader = null;
         try {
-			list = csv.parse(strat, new CSVReader(new FileReader(path)));
-		} catch (FileNotFoundException fnfe) {
+        	reader = new CSVReader(new FileReader(path));
+        	strat.captureHeader(reader);
+        } catch (FileNotFoundException fnfe) {
 			log.error("Profile2 importer: Couldn't find file: " + fnfe.getClass() + " : " + fnfe.getMessage());
+			return null;
+		} catch (IOException ioe) {
+			log.error("Profile2 importer: Couldn't read file: " + ioe.getClass() + " : " + ioe.getMessage());
+			closeQuietly(reader);
+			return null;
 		}
         
 		//setup a security advisor so we can save profiles
@@ -390,103 +395,159 @@ public class ProfileConverter {
 		};
 		enableSecurityAdvisor(securityAdvisor);
 		
-        //process each
-        for(ImportableUserProfile profile: list) {
-
-        	log.info("Processing user: " + profile.getEid());
-        	
-        	//get uuid
-        	String uuid = sakaiProxy.getUserIdForEid(profile.getEid());
-        	if(StringUtils.isBlank(uuid)) {
-        		log.error("Invalid user: " + profile.getEid() + ". Skipping...");
-        		continue;
-        	}
-        	
-        	profile.setUserUuid(uuid);
-        	        	
-        	//check if user already has a profile. Skip if so.
-        	if(hasPersistentProfile(uuid)) {
-        		log.warn("User: " + profile.getEid() + " already has a profile. Skipping...");
-        		continue;
-        	}
-        	
-        	//persist user profile
-        	try {
-        		SakaiPerson sp = transformUserProfileToSakaiPerson(profile);
-        		
-        		if(sp == null){
-        			//already logged
-        			continue;
-        		}
-        		
-        		if(sakaiProxy.updateSakaiPerson(sp)) {
-        			log.info("Profile saved for user: " + profile.getEid());
-        		} else {
-        			log.error("Couldn't save profile for user: " + profile.getEid());
-        			continue;
-        		}
-        	} catch (ProfileNotDefinedException pnde) {
-        		//already logged
-        		continue;
-        	}
-        	
-        	//add/update official image, if supplied in the CSV
-        	if(StringUtils.isNotBlank(profile.getOfficialImageUrl())) {
-        		if(imageLogic.saveOfficialImageUrl(uuid, profile.getOfficialImageUrl())) {
-        			log.info("Official image saved for user: " + profile.getEid());
-        		} else {
-        			log.error("Couldn't save official image for user: " + profile.getEid());
-        		}
-        	}
-        }
-        disableSecurityAdvisor(securityAdvisor);
+		ImportSummary summary = new ImportSummary();
+		StreamingCsvToBean csv = new StreamingCsvToBean();
+		List<ImportableUserProfile> batch = new ArrayList<ImportableUserProfile>(batchSize);
+		try {
+			String[] line;
+			while((line = reader.readNext()) != null) {
+				summary.rows++;
+				try {
+					batch.add(csv.processLine(strat, line));
+				} catch (Exception e) {
+					summary.invalid++;
+					summary.addError("Row " + summary.rows + " could not be read: " + e.getClass() + " : " + e.getMessage());
+				}
+				
+				if(batch.size() >= batchSize) {
+					importBatch(batch, summary);
+					batch.clear();
+					log.info("Profile2 importer: " + summary.rows + " rows processed, " + summary.imported + " profiles imported.");
+				}
+			}
+			importBatch(batch, summary);
+		} catch (IOException ioe) {
+			log.error("Profile2 importer: Couldn't read file, stopping after " + summary.rows + " rows: " + ioe.getClass() + " : " + ioe.getMessage());
+			summary.addError("Stopped at row " + summary.rows + ": " + ioe.getMessage());
+		} finally {
+			disableSecurityAdvisor(securityAdvisor);
+			closeQuietly(reader);
+		}
 		
+		summary.finish();
+		log.info("Profile2 importer: " + summary);
+		for(String error : summary.getErrors()) {
+			log.warn("Profile2 importer: " + error);
+		}
+		
+		return summary;
 	}
 	
 	/**
-	 * Does the given user already have a <b>persistent</b> user profile?
+	 * Import a batch of profiles. Users that can't be found or that already have a profile are skipped.
 	 * 
-	 * @param userUuid	uuid of the user
-	 * @return
+	 * @param batch		profiles read from the CSV
+	 * @param summary	summary to add the results to
 	 */
-	private boolean hasPersistentProfile(String userUuid) {
-				
-		SakaiPerson sp = sakaiProxy.getSakaiPerson(userUuid);
-		if(sp != null){
-			return true;
-		} 
-		return false;
+	private void importBatch(List<ImportableUserProfile> batch, ImportSummary summary) {
+		
+		if(batch.isEmpty()) {
+			return;
+		}
+		
+		//get uuids for the whole batch
+		List<String> eids = new ArrayList<String>();
+		for(ImportableUserProfile profile: batch) {
+			if(StringUtils.isNotBlank(profile.getEid())) {
+				eids.add(profile.getEid());
+			}
+		}
+		Map<String, String> uuids = sakaiProxy.getUserIdsForEids(eids);
+		
+		//keyed on uuid, first row for a user wins
+		Map<String, ImportableUserProfile> profiles = new LinkedHashMap<String, ImportableUserProfile>();
+		for(ImportableUserProfile profile: batch) {
+			String uuid = uuids.get(profile.getEid());
+			if(StringUtils.isBlank(uuid)) {
+				summary.invalid++;
+				summary.addError("Invalid user: " + profile.getEid() + ". Skipped.");
+				continue;
+			}
+			if(profiles.containsKey(uuid)) {
+				summary.skipped++;
+				log.warn("User: " + profile.getEid() + " is in the file more than once. Skipping...");
+				continue;
+			}
+			profile.setUserUuid(uuid);
+			profiles.put(uuid, profile);
+		}
+		
+		//check which users already have a profile. Skip if so.
+		Map<String, SakaiPerson> existing = sakaiProxy.getSakaiPersons(new ArrayList<String>(profiles.keySet()));
+		
+		List<SakaiPerson> sakaiPersons = new ArrayList<SakaiPerson>();
+		List<ProfileImageOfficial> officialImages = new ArrayList<ProfileImageOfficial>();
+		
+		for(ImportableUserProfile profile: profiles.values()) {
+			
+			String uuid = profile.getUserUuid();
+			if(existing.containsKey(uuid)) {
+				summary.skipped++;
+				log.debug("User: " + profile.getEid() + " already has a profile. Skipping...");
+				continue;
+			}
+			
+			SakaiPerson sakaiPerson = sakaiProxy.createSakaiPerson(uuid);
+			if(sakaiPerson == null) {
+				summary.failed++;
+				summary.addError("Couldn't create a SakaiPerson for user: " + profile.getEid());
+				continue;
+			}
+			sakaiPersons.add(transformUserProfileToSakaiPerson(profile, sakaiPerson));
+			
+			//add/update official image, if supplied in the CSV
+			if(StringUtils.isNotBlank(profile.getOfficialImageUrl())) {
+				officialImages.add(new ProfileImageOfficial(uuid, profile.getOfficialImageUrl()));
+			}
+		}
+		
+		//persist user profiles
+		if(dao.saveSakaiPersons(sakaiPersons)) {
+			summary.imported += sakaiPersons.size();
+		} else {
+			summary.failed += sakaiPersons.size();
+			summary.addError("Couldn't save a batch of " + sakaiPersons.size() + " profiles, ending at row " + summary.rows);
+			return;
+		}
+		
+		//no update events are posted for imported profiles, so update the search index directly
+		List<String> savedUuids = new ArrayList<String>();
+		for(SakaiPerson sakaiPerson: sakaiPersons) {
+			savedUuids.add(sakaiPerson.getAgentUuid());
+		}
+		try {
+			searchIndex.reindex(savedUuids);
+		} catch (Exception e) {
+			log.warn("Could not update search index for a batch of " + savedUuids.size() + " imported profiles: " + e.getClass() + " : " + e.getMessage());
+		}
+		
+		if(dao.saveOfficialImageUrls(officialImages)) {
+			summary.officialImages += officialImages.size();
+		} else {
+			summary.addError("Couldn't save a batch of " + officialImages.size() + " official images, ending at row " + summary.rows);
+		}
 	}
 	
+	private void closeQuietly(CSVReader reader) {
+		if(reader != null) {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				log.debug("Profile2 importer: couldn't close file: " + e.getMessage());
+			}
+		}
+	}
 	
 	/**
 	 * Convenience method to map a UserProfile object onto a SakaiPerson object for persisting
 	 * 
-	 * @param up 		input UserProfile
-	 * @return			returns a SakaiPerson representation of the UserProfile object which can be persisted
+	 * @param up 			input UserProfile
+	 * @param sakaiPerson	SakaiPerson to map the fields onto
+	 * @return				returns a SakaiPerson representation of the UserProfile object which can be persisted
 	 */
-	private SakaiPerson transformUserProfileToSakaiPerson(UserProfile up) {
+	private SakaiPerson transformUserProfileToSakaiPerson(UserProfile up, SakaiPerson sakaiPerson) {
 	
-		log.info("Transforming: " + up.toString());
-		
-		String userUuid = up.getUserUuid();
-		
-		if(StringUtils.isBlank(userUuid)) {
-			log.error("Profile was invalid (missing uuid), cannot transform.");
-			return null;
-		}
-		
-		//get SakaiPerson
-		SakaiPerson sakaiPerson = sakaiProxy.getSakaiPerson(userUuid);
-		
-		//if null, create one 
-		if(sakaiPerson == null) {
-			sakaiPerson = sakaiProxy.createSakaiPerson(userUuid);
-			//if its still null, throw exception
-			if(sakaiPerson == null) {
-				throw new ProfileNotDefinedException("Couldn't create a SakaiPerson for " + userUuid);
-			}
-		} 
+		log.debug("Transforming: " + up.toString());
 		
 		//map fields from UserProfile to SakaiPerson
 		
@@ -543,7 +604,7 @@ public class ProfileConverter {
 	 * Helper to convert an image stored in SakaiPerson into a main image
 	 * @return 
 	 */
-	private void convertSakaiPersonImage(){
+	private void convertSakaiPersonImage(ConvertedImage ci){
 		
 		String userUuid = ci.getUserUuid();
 		
@@ -579,7 +640,7 @@ public class ProfileConverter {
 	 * Helper to convert an image into a thumbnail
 	 * @return 
 	 */
-	private void generateAndPersistThumbnail() {
+	private void generateAndPersistThumbnail(ConvertedImage ci) {
 		
 		String userUuid = ci.getUserUuid();
 		
@@ -602,7 +663,7 @@ public class ProfileConverter {
 	 * Helper to convert an image into a thumbnail
 	 * @return 
 	 */
-	private void generateAndPersistAvatar() {
+	private void generateAndPersistAvatar(ConvertedImage ci) {
 
 		String userUuid = ci.getUserUuid();
 		
@@ -623,7 +684,7 @@ public class ProfileConverter {
 	
 	
 	/**
-	 * Private class to store some info while we perform the conversions
+	 * Private class to store some info while we perform the conversion for a user. Each conversion has its own.
 	 * 
 	 * @author Steve Swinsburg (steve.swinsburg@gmail.com)
 	 *
@@ -654,4 +715,57 @@ public class ProfileConverter {
 		
 	}
 	
+	/**
+	 * The result of a profile import
+	 */
+	public static class ImportSummary {
+		
+		@Getter private int rows;
+		@Getter private int imported;
+		@Getter private int skipped;
+		@Getter private int invalid;
+		@Getter private int failed;
+		@Getter private int officialImages;
+		@Getter private long elapsed;
+		@Getter private List<String> errors = new ArrayList<String>();
+		
+		private long start = System.currentTimeMillis();
+		
+		private void addError(String error) {
+			if(errors.size() < MAX_IMPORT_ERRORS) {
+				errors.add(error);
+			}
+		}
+		
+		private void finish() {
+			elapsed = System.currentTimeMillis() - start;
+		}
+		
+		/**
+		 * Get the number of rows processed per second
+		 * @return
+		 */
+		public long getRowsPerSecond() {
+			return elapsed > 0 ? (rows * 1000L / elapsed) : rows;
+		}
+		
+		@Override
+		public String toString() {
+			return rows + " rows processed in " + elapsed + "ms (" + getRowsPerSecond() + " rows/s). " 
+				+ imported + " profiles imported, " + officialImages + " official images saved, " 
+				+ skipped + " skipped, " + invalid + " invalid, " + failed + " failed.";
+		}
+	}
+	
+	/**
+	 * CsvToBean that lets us map one line at a time rather than parsing the whole file into a list
+	 */
+	private static class StreamingCsvToBean extends CsvToBean<ImportableUserProfile> {
+		
+		@Override
+		protected ImportableUserProfile processLine(MappingStrategy<ImportableUserProfile> mapper, String[] line) throws IllegalAccessException, InvocationTargetException, InstantiationException, IntrospectionException {
+			return super.processLine(mapper, line);
+		}
+	}
+	
 }
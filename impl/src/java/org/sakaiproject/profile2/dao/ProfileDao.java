@@ -17,7 +17,11 @@ package org.sakaiproject.profile2.dao;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
+import org.sakaiproject.api.common.edu.person.SakaiPerson;
+import org.sakaiproject.profile2.hbm.model.ProfileConversionCheckpoint;
+import org.sakaiproject.profile2.hbm.model.ProfileFeedItem;
 import org.sakaiproject.profile2.hbm.model.ProfileFriend;
 import org.sakaiproject.profile2.hbm.model.ProfileImageExternal;
 import org.sakaiproject.profile2.hbm.model.ProfileImageOfficial;
@@ -36,6 +40,7 @@ import org.sakaiproject.profile2.model.SocialNetworkingInfo;
 import org.sakaiproject.profile2.model.UserProfile;
 import org.sakaiproject.profile2.model.WallItem;
 import org.sakaiproject.profile2.model.WallItemComment;
+import org.springframework.dao.DataAccessException;
 
 /**
  * Internal DAO Interface for Profile2.
@@ -63,6 +68,22 @@ public interface ProfileDao {
 	 */
 	public List<String> getConfirmedConnectionUserIdsForUser(final String userId);
 	
+	/**
+	 * Get the number of unconfirmed incoming connection requests for a user, without loading them
+	 *
+	 * @param userId		uuid of the user
+	 * @return count, 0 if none
+	 */
+	public int getRequestedConnectionsCountForUser(final String userId);
+	
+	/**
+	 * Get the number of confirmed connections for a user, either side of the relationship, without loading them
+	 *
+	 * @param userId		uuid of the user
+	 * @return count, 0 if none
+	 */
+	public int getConfirmedConnectionsCountForUser(final String userId);
+	
 	/**
 	 * Get a list of all userIds that match the search criteria in name or email
 	 * 
@@ -100,6 +121,14 @@ public interface ProfileDao {
 	 */
 	public ProfileImageUploaded getCurrentProfileImageRecord(final String userId);
 	
+	/**
+	 * Get the current ProfileImage records for a list of users. If a user has more than one, the latest comes first.
+	 *
+	 * @param userUuids		uuids of the users
+	 * @return List of records, can be empty.
+	 */
+	public List<ProfileImageUploaded> getCurrentProfileImageRecordsForUsers(final List<String> userUuids);
+	
 	/**
 	 * Get old ProfileImage records from the database. 
 	 * TODO: Used for displaying old the profile pictures album
@@ -115,6 +144,13 @@ public interface ProfileDao {
 	 */
 	public ProfileImageOfficial getOfficialImageRecordForUser(final String userUuid);
 	
+	/**
+	 * Get the ProfileImageOfficial records for a list of users
+	 * @param userUuids		uuids of the users
+	 * @return List of records, can be empty.
+	 */
+	public List<ProfileImageOfficial> getOfficialImageRecordsForUsers(final List<String> userUuids);
+	
 	/**
 	 * Save the ProfileImageOfficial record the database
 	 * @param officialImage		ProfileImageOfficial object
@@ -122,6 +158,21 @@ public interface ProfileDao {
 	 */
 	public boolean saveOfficialImageUrl(ProfileImageOfficial officialImage);
 	
+	/**
+	 * Save a list of ProfileImageOfficial records in one go. The inserts are sent in JDBC batches.
+	 * @param officialImages	list of ProfileImageOfficial objects
+	 * @return
+	 */
+	public boolean saveOfficialImageUrls(List<ProfileImageOfficial> officialImages);
+	
+	/**
+	 * Save a list of SakaiPerson records in one go. The updates are sent in JDBC batches.
+	 * <p>This is only for bulk imports. The records must already have been created via the SakaiPersonManager.</p>
+	 * @param sakaiPersons	list of SakaiPerson objects
+	 * @return
+	 */
+	public boolean saveSakaiPersons(List<SakaiPerson> sakaiPersons);
+	
 	/**
 	 * Get a connection record for a user/friend pair
 	 * <p>This tries both column arrangements, ie user/friend and friend/user</p>
@@ -189,6 +240,14 @@ public interface ProfileDao {
 	 */
 	public int getStatusUpdatesCount(final String userUuid);
 	
+	/**
+	 * Get the ProfileStatus records for a list of users, but only those where the date of the record is within the given time
+	 * @param userUuids				uuids of the users
+	 * @param oldestStatusDate		oldest date to search until
+	 * @return list of ProfileStatus records, empty if none.
+	 */
+	public List<ProfileStatus> getUserStatuses(final List<String> userUuids, final Date oldestStatusDate);
+	
 	/**
 	 * Add a new ProfilePrivacy record
 	 * @param privacy		ProfilePrivacy object
@@ -203,6 +262,13 @@ public interface ProfileDao {
 	 */
 	public ProfilePrivacy getPrivacyRecord(final String userId);
 	
+	/**
+	 * Get the ProfilePrivacy records for a list of users
+	 * @param userUuids		uuids of the users
+	 * @return list of ProfilePrivacy records, empty if none. Users without a record will not be included.
+	 */
+	public List<ProfilePrivacy> getPrivacyRecordsForUsers(final List<String> userUuids);
+	
 	/**
 	 * Update the ProfilePrivacy record
 	 * @param privacy		ProfilePrivacy object
@@ -239,6 +305,13 @@ public interface ProfileDao {
 	 */
 	public List<CompanyProfile> getCompanyProfiles(final String userId);
 	
+	/**
+	 * Get all CompanyProfile records for a list of users
+	 * @param userUuids		uuids of the users
+	 * @return list of CompanyProfile records, empty if none.
+	 */
+	public List<CompanyProfile> getCompanyProfilesForUsers(final List<String> userUuids);
+	
 	/**
 	 * Remove a CompanyProfile record
 	 * @param companyProfile	CompanyProfile record
@@ -269,6 +342,15 @@ public interface ProfileDao {
 	 */
 	public List<GalleryImage> getGalleryImages(final String userId);
 	
+	/**
+	 * Get a page of the GalleryImage records for a user, oldest first
+	 * @param userId		uuid of the user
+	 * @param offset		index of the first image to return
+	 * @param limit			maximum number of images to return
+	 * @return
+	 */
+	public List<GalleryImage> getGalleryImages(final String userId, final int offset, final int limit);
+	
 	/**
 	 * Remove a GalleryImage record
 	 * 
@@ -292,6 +374,13 @@ public interface ProfileDao {
 	 */
 	public SocialNetworkingInfo getSocialNetworkingInfo(final String userId);
 	
+	/**
+	 * Get the SocialNetworkingInfo records for a list of users
+	 * @param userUuids		uuids of the users
+	 * @return list of SocialNetworkingInfo records, empty if none. Users without a record will not be included.
+	 */
+	public List<SocialNetworkingInfo> getSocialNetworkingInfos(final List<String> userUuids);
+	
 	/**
 	 * Save a SocialNetworkingInfo record
 	 * @param socialNetworkingInfo	SocialNetworkingInfo object
@@ -318,6 +407,45 @@ public interface ProfileDao {
 	 */
 	public int getAllSakaiPersonIdsCount();
 	
+	/**
+	 * Get a page of uuids for users that have a SakaiPerson record, ordered by uuid
+	 * @param start		first record
+	 * @param count		total number of records
+	 * @return list of uuids
+	 */
+	public List<String> getAllSakaiPersonIds(final int start, final int count);
+	
+	/**
+	 * Get the uuids that come after the given uuid, for users that have a SakaiPerson record, ordered by uuid
+	 * @param userUuid	last uuid that was processed
+	 * @param count		maximum number of uuids to return
+	 * @return list of uuids
+	 */
+	public List<String> getSakaiPersonIdsAfter(final String userUuid, final int count);
+	
+	/**
+	 * Get a list of uuids for users that have a SakaiPerson record but no kudos record
+	 * @return list of uuids
+	 */
+	public List<String> getSakaiPersonIdsWithoutKudos();
+	
+	/**
+	 * Get a page of UserProfiles ordered by uuid, containing only the fields that are used by the search index
+	 * @param typeUuid	uuid of the SakaiPerson type to read, ie the user mutable type
+	 * @param start		first record
+	 * @param count		total number of records
+	 * @return list of partially populated UserProfiles
+	 */
+	public List<UserProfile> getUserProfilesForSearchIndex(final String typeUuid, final int start, final int count);
+	
+	/**
+	 * Get the UserProfiles for the given users, containing only the fields that are used by the search index
+	 * @param typeUuid	uuid of the SakaiPerson type to read, ie the user mutable type
+	 * @param userUuids	uuids of the users
+	 * @return list of partially populated UserProfiles, for those users that have a SakaiPerson record of that type
+	 */
+	public List<UserProfile> getUserProfilesForSearchIndex(final String typeUuid, final List<String> userUuids);
+	
 	/**
 	 * Get a ProfileImageExternal record for a user
 	 * @param userId uuid of the user
@@ -325,6 +453,13 @@ public interface ProfileDao {
 	 */
 	public ProfileImageExternal getExternalImageRecordForUser(final String userId);
 	
+	/**
+	 * Get the ProfileImageExternal records for a list of users
+	 * @param userUuids uuids of the users
+	 * @return List of records, can be empty.
+	 */
+	public List<ProfileImageExternal> getExternalImageRecordsForUsers(final List<String> userUuids);
+	
 	/**
 	 * Save a ProfileImageExternal record
 	 * @param externalImage		ProfileImageExternal record
@@ -338,6 +473,15 @@ public interface ProfileDao {
 	 * @param prefs		complete ProfilePreferences record
 	 */
 	public ProfilePreferences addNewPreferencesRecord(ProfilePreferences prefs);
+	
+	/**
+	 * Persist a list of new ProfilePreferences records in one go. The inserts are sent in JDBC batches.
+	 * If any of them fail, none are saved.
+	 *
+	 * @param prefs		list of complete ProfilePreferences records
+	 * @throws DataAccessException if the records could not be saved, for example because one already exists
+	 */
+	public void addNewPreferencesRecords(List<ProfilePreferences> prefs);
 
 	/**
 	 * Get a ProfilePreferences record for the user
@@ -346,6 +490,13 @@ public interface ProfileDao {
 	 */
 	public ProfilePreferences getPreferencesRecordForUser(final String userId);
 	
+	/**
+	 * Get the ProfilePreferences records for a list of users
+	 * @param userUuids		uuids of the users
+	 * @return list of ProfilePreferences records, empty if none. Users without a record will not be included.
+	 */
+	public List<ProfilePreferences> getPreferencesRecordsForUsers(final List<String> userUuids);
+	
 	/**
 	 * Save a ProfilePreferences record
 	 * @param prefs		ProfilePreferences record
@@ -388,6 +539,37 @@ public interface ProfileDao {
 	 */
 	public int getMessageThreadsCount(final String userId);
 	
+	/**
+	 * Get a page of the ids of the MessageThreads for a user, ordered by the most recent message in each thread, newest first
+	 * @param userId		uuid of the user
+	 * @param offset		index of the first thread to return
+	 * @param limit			maximum number of threads to return
+	 * @return
+	 */
+	public List<String> getMessageThreadIds(final String userId, final int offset, final int limit);
+	
+	/**
+	 * Get the MessageThread records for a list of ids
+	 * @param threadIds		ids of the threads
+	 * @return
+	 */
+	public List<MessageThread> getMessageThreads(final List<String> threadIds);
+	
+	/**
+	 * Get the latest Message in each of a list of MessageThreads
+	 * @param threadIds		ids of the threads
+	 * @return list of Messages. If messages were posted at the same time there may be more than one for a thread.
+	 */
+	public List<Message> getLatestMessagesInThreads(final List<String> threadIds);
+	
+	/**
+	 * Get the count of unread messages for a user in each of a list of MessageThreads
+	 * @param userId		uuid of the user
+	 * @param threadIds		ids of the threads
+	 * @return Map of thread id to count. Threads with no unread messages are not included.
+	 */
+	public Map<String, Integer> getUnreadMessagesCounts(final String userId, final List<String> threadIds);
+	
 	/**
 	 * Get a list of all Messages in a given thread
 	 * @param threadId		id of the thread
@@ -395,6 +577,15 @@ public interface ProfileDao {
 	 */
 	public List<Message> getMessagesInThread(final String threadId);
 	
+	/**
+	 * Get a page of the Messages in a given thread, oldest first
+	 * @param threadId		id of the thread
+	 * @param offset		index of the first message to return
+	 * @param limit			maximum number of messages to return
+	 * @return
+	 */
+	public List<Message> getMessagesInThread(final String threadId, final int offset, final int limit);
+	
 	/**
 	 * Get a count of all Messages in a given thread
 	 * @param threadId		id of the thread
@@ -493,6 +684,75 @@ public interface ProfileDao {
 	 */
 	public boolean updateKudos(ProfileKudos kudos);
 	
+	/**
+	 * Get the checkpoint for a background conversion
+	 * @param name	name of the conversion
+	 * @return the checkpoint or null if the conversion has not been started
+	 */
+	public ProfileConversionCheckpoint getConversionCheckpoint(final String name);
+	
+	/**
+	 * Save the checkpoint for a background conversion
+	 * @param checkpoint	the checkpoint
+	 * @return
+	 */
+	public boolean saveConversionCheckpoint(ProfileConversionCheckpoint checkpoint);
+	
+	/**
+	 * Update a list of kudos records in one go
+	 * @param kudos	list of ProfileKudos
+	 * @return
+	 */
+	public boolean updateKudos(List<ProfileKudos> kudos);
+	
+	/**
+	 * Mark the kudos records for a list of users as needing to be recalculated
+	 * @param userUuids	list of uuids
+	 * @return
+	 */
+	public boolean invalidateKudos(final List<String> userUuids);
+	
+	/**
+	 * Get the uuids of users whose kudos records have been marked as needing to be recalculated
+	 * @return list of uuids
+	 */
+	public List<String> getInvalidatedKudosUserIds();
+	
+	/**
+	 * Get the number of confirmed connections for each of a list of users
+	 * @param userUuids	list of uuids
+	 * @return Map of uuid to count. Users with none are not included.
+	 */
+	public Map<String, Integer> getConnectionsCounts(final List<String> userUuids);
+	
+	/**
+	 * Get the number of sent messages for each of a list of users
+	 * @param userUuids	list of uuids
+	 * @return Map of uuid to count. Users with none are not included.
+	 */
+	public Map<String, Integer> getSentMessagesCounts(final List<String> userUuids);
+	
+	/**
+	 * Get the number of status updates for each of a list of users
+	 * @param userUuids	list of uuids
+	 * @return Map of uuid to count. Users with none are not included.
+	 */
+	public Map<String, Integer> getStatusUpdatesCounts(final List<String> userUuids);
+	
+	/**
+	 * Get the number of gallery images for each of a list of users
+	 * @param userUuids	list of uuids
+	 * @return Map of uuid to count. Users with none are not included.
+	 */
+	public Map<String, Integer> getGalleryImagesCounts(final List<String> userUuids);
+	
+	/**
+	 * Get the ExternalIntegrationInfo records for a list of users
+	 * @param userUuids	list of uuids
+	 * @return list of records, users without a record are not included.
+	 */
+	public List<ExternalIntegrationInfo> getExternalIntegrationInfos(final List<String> userUuids);
+	
 	/**
 	 * Get the ExternalIntegrationInfo record for a user
 	 * @param userUuid
@@ -531,6 +791,34 @@ public interface ProfileDao {
 	 * @return the wall items for the specified user.
 	 */
 	public List<WallItem> getWallItemsForUser(final String userUuid);
+	
+	/**
+	 * Retrieves a page of wall items for the specified user, newest first.
+	 * 
+	 * @param userUuid the user ID.
+	 * @param excludedCreators creators whose wall items should be skipped, may be empty.
+	 * @param offset the index of the first wall item to return.
+	 * @param limit the maximum number of wall items to return.
+	 * @return the wall items for the specified user.
+	 */
+	public List<WallItem> getWallItemsForUser(final String userUuid, final List<String> excludedCreators, final int offset, final int limit);
+	
+	/**
+	 * Gets a count of the wall items for the specified user.
+	 * 
+	 * @param userUuid the user ID.
+	 * @param excludedCreators creators whose wall items should not be counted, may be empty.
+	 * @return the number of wall items.
+	 */
+	public int getWallItemsCount(final String userUuid, final List<String> excludedCreators);
+	
+	/**
+	 * Gets the uuids of everyone who has created a wall item on the specified user's wall.
+	 * 
+	 * @param userUuid the user ID.
+	 * @return List of uuids, can be empty.
+	 */
+	public List<String> getWallItemCreators(final String userUuid);
 			
 	/**
 	 * Adds a new wall item comment.
@@ -541,6 +829,51 @@ public interface ProfileDao {
 	 */
 	public boolean addNewCommentToWallItem(WallItemComment wallItemComment);
 	
+	/**
+	 * Adds entries to the news feeds of a number of users. The entries are inserted in JDBC batches.
+	 * If any of them fail, none are added.
+	 * 
+	 * @param feedItems the feed entries to add, all of which must be new.
+	 * @throws DataAccessException if the entries could not be added.
+	 */
+	public void addNewFeedItems(final List<ProfileFeedItem> feedItems);
+	
+	/**
+	 * Retrieves a page of the news feed for the specified user, newest first.
+	 * 
+	 * @param userUuid the user ID.
+	 * @param beforeWallItemId only return wall items older than this one, or 0 to start from the newest.
+	 * @param limit the maximum number of wall items to return.
+	 * @return the wall items in the feed, can be empty.
+	 */
+	public List<WallItem> getFeedItemsForUser(final String userUuid, final long beforeWallItemId, final int limit);
+	
+	/**
+	 * Removes the oldest entries from the news feeds of the specified users so that each has no more than the given number.
+	 * 
+	 * @param userUuids the users whose feeds to trim.
+	 * @param maxItems the number of entries to keep in each feed.
+	 * @return <code>true</code> on success, <code>false</code> on failure.
+	 */
+	public boolean trimFeedItems(final List<String> userUuids, final int maxItems);
+	
+	/**
+	 * Removes a wall item from every news feed it is in.
+	 * 
+	 * @param wallItemId the id of the wall item.
+	 * @return <code>true</code> on success, <code>false</code> on failure.
+	 */
+	public boolean removeFeedItemsForWallItem(final long wallItemId);
+	
+	/**
+	 * Removes the entries two users have in each other's news feeds, for when they are no longer connected.
+	 * 
+	 * @param userUuid the first user.
+	 * @param friendUuid the second user.
+	 * @return <code>true</code> on success, <code>false</code> on failure.
+	 */
+	public boolean removeFeedItemsForConnection(final String userUuid, final String friendUuid);
+	
 	/**
 	 * Invalidate the current profile image for a user.
 	 *
@@ -551,26 +884,39 @@ public interface ProfileDao {
 	// Hibernate query constants
 	final String QUERY_GET_COMPANY_PROFILE = "getCompanyProfile";
 	final String QUERY_GET_COMPANY_PROFILES = "getCompanyProfiles";
+	final String QUERY_GET_COMPANY_PROFILES_FOR_USERS = "getCompanyProfilesForUsers";
 	
 	final String QUERY_GET_FRIEND_REQUESTS_FOR_USER = "getFriendRequestsForUser"; 
+	final String QUERY_GET_FRIEND_REQUESTS_FOR_USER_COUNT = "getFriendRequestsForUserCount"; 
+	final String QUERY_GET_CONFIRMED_FRIENDS_FOR_USER_COUNT = "getConfirmedFriendsForUserCount"; 
 	final String QUERY_GET_CONFIRMED_FRIEND_USERIDS_FOR_USER = "getConfirmedFriendUserIdsForUser"; 
 	final String QUERY_GET_FRIEND_REQUEST = "getFriendRequest"; 
 	final String QUERY_GET_FRIEND_RECORD = "getFriendRecord"; 
+	final String QUERY_GET_CONNECTIONS_COUNTS_FOR_USERS = "getConnectionsCountsForUsers";
+	final String QUERY_GET_CONNECTIONS_COUNTS_FOR_FRIENDS = "getConnectionsCountsForFriends";
 	final String QUERY_GET_USER_STATUS = "getUserStatus"; 
+	final String QUERY_GET_USER_STATUSES_FOR_USERS = "getUserStatusesForUsers";
 	final String QUERY_GET_PRIVACY_RECORD = "getPrivacyRecord"; 
+	final String QUERY_GET_PRIVACY_RECORDS_FOR_USERS = "getPrivacyRecordsForUsers";
 	final String QUERY_GET_CURRENT_PROFILE_IMAGE_RECORD = "getCurrentProfileImageRecord"; 
+	final String QUERY_GET_CURRENT_PROFILE_IMAGE_RECORDS_FOR_USERS = "getCurrentProfileImageRecordsForUsers";
 	final String QUERY_OTHER_PROFILE_IMAGE_RECORDS = "getOtherProfileImageRecords"; 
 	final String QUERY_GET_STATUS_UPDATES_COUNT = "getStatusUpdatesCount";
+	final String QUERY_GET_STATUS_UPDATES_COUNTS_FOR_USERS = "getStatusUpdatesCountsForUsers";
 
 	//GalleryImage
 	final String QUERY_GET_GALLERY_IMAGE_RECORDS = "getGalleryImageRecords";
 	final String QUERY_GET_GALLERY_RECORD = "getGalleryRecord";
 	final String QUERY_GET_GALLERY_IMAGE_RECORDS_COUNT = "getGalleryImageRecordsCount";
+	final String QUERY_GET_GALLERY_IMAGE_RECORDS_COUNTS_FOR_USERS = "getGalleryImageRecordsCountsForUsers";
 
 	
 	final String QUERY_GET_PREFERENCES_RECORD = "getPreferencesRecord";
+	final String QUERY_GET_PREFERENCES_RECORDS_FOR_USERS = "getPreferencesRecordsForUsers";
 	final String QUERY_GET_SOCIAL_NETWORKING_INFO = "getSocialNetworkingInfo";
+	final String QUERY_GET_SOCIAL_NETWORKING_INFOS_FOR_USERS = "getSocialNetworkingInfosForUsers";
 	final String QUERY_GET_EXTERNAL_IMAGE_RECORD = "getProfileImageExternalRecord";
+	final String QUERY_GET_EXTERNAL_IMAGE_RECORDS_FOR_USERS = "getProfileImageExternalRecordsForUsers";
 
 	//SakaiPersonMeta
 	final String QUERY_FIND_SAKAI_PERSONS_BY_NAME_OR_EMAIL = "findSakaiPersonsByNameOrEmail"; 
@@ -579,10 +925,16 @@ public interface ProfileDao {
 	final String QUERY_GET_SAKAI_PERSON = "getSakaiPerson";
 	final String QUERY_GET_ALL_SAKAI_PERSON_IDS = "getAllSakaiPersonIds"; 
 	final String QUERY_GET_ALL_SAKAI_PERSON_IDS_COUNT = "getAllSakaiPersonIdsCount";
+	final String QUERY_GET_ALL_SAKAI_PERSON_IDS_ORDERED = "getAllSakaiPersonIdsOrdered";
+	final String QUERY_GET_SAKAI_PERSON_IDS_WITHOUT_KUDOS = "getSakaiPersonIdsWithoutKudos";
+	final String QUERY_GET_SAKAI_PERSON_IDS_AFTER = "getSakaiPersonIdsAfter";
+	final String QUERY_GET_SAKAI_PERSONS_FOR_SEARCH_INDEX = "getSakaiPersonsForSearchIndex";
+	final String QUERY_GET_SAKAI_PERSONS_FOR_SEARCH_INDEX_FOR_USERS = "getSakaiPersonsForSearchIndexForUsers";
 
 	
 	//ProfileImageOfficial
 	final String QUERY_GET_OFFICIAL_IMAGE_RECORD = "getProfileImageOfficialRecord"; 
+	final String QUERY_GET_OFFICIAL_IMAGE_RECORDS_FOR_USERS = "getProfileImageOfficialRecordsForUsers";
 	
 	// from Message.hbm.xml
 	final String QUERY_GET_ALL_UNREAD_MESSAGES_COUNT = "getAllUnreadMessagesCount";
@@ -593,11 +945,16 @@ public interface ProfileDao {
 	final String QUERY_GET_LATEST_MESSAGE_IN_THREAD = "getLatestMessageInThread";
 	final String QUERY_GET_MESSAGE_THREADS="getMessageThreads";
 	final String QUERY_GET_MESSAGE_THREADS_COUNT="getMessageThreadsCount";
+	final String QUERY_GET_MESSAGE_THREAD_IDS_ORDERED="getMessageThreadIdsOrdered";
+	final String QUERY_GET_LATEST_MESSAGES_IN_THREADS="getLatestMessagesInThreads";
+	final String QUERY_GET_UNREAD_MESSAGES_COUNTS_IN_THREADS="getUnreadMessagesCountsInThreads";
 	final String QUERY_GET_SENT_MESSAGES_COUNT="getSentMessagesCount";
+	final String QUERY_GET_SENT_MESSAGES_COUNTS_FOR_USERS="getSentMessagesCountsForUsers";
 
 	
 	//from MessageThread.hbm.xml
 	final String QUERY_GET_MESSAGE_THREAD="getMessageThread";
+	final String QUERY_GET_MESSAGE_THREADS_FOR_IDS="getMessageThreadsForIds";
 
 	//from MessageRecipient.hbm.xml
 	final String QUERY_GET_MESSAGE_PARTICIPANT_FOR_MESSAGE_AND_UUID="getMessageParticipantForMessageAndUuid";
@@ -605,29 +962,53 @@ public interface ProfileDao {
 
 	//from ProfileKudos.hbm.xml
 	final String QUERY_GET_KUDOS_RECORD="getKudosRecord";
+	final String QUERY_INVALIDATE_KUDOS_RECORDS="invalidateKudosRecords";
+	final String QUERY_GET_INVALIDATED_KUDOS_USER_IDS="getInvalidatedKudosUserIds";
+	
+	//from ProfileConversionCheckpoint.hbm.xml
+	final String QUERY_GET_CONVERSION_CHECKPOINT="getConversionCheckpoint";
 	
 	//from ExternalIntegrationInfo.hbm.xml
 	final String QUERY_GET_EXTERNAL_INTEGRATION_INFO="getExternalIntegrationInfo";
+	final String QUERY_GET_EXTERNAL_INTEGRATION_INFOS_FOR_USERS="getExternalIntegrationInfosForUsers";
 	
 	//from WallItem.hbm.xml
 	final String QUERY_GET_WALL_ITEMS = "getWallItemRecords";
+	final String QUERY_GET_WALL_ITEMS_ORDERED = "getWallItemRecordsOrdered";
+	final String QUERY_GET_WALL_ITEMS_ORDERED_EXCLUDING_CREATORS = "getWallItemRecordsOrderedExcludingCreators";
+	final String QUERY_GET_WALL_ITEMS_COUNT = "getWallItemsCount";
+	final String QUERY_GET_WALL_ITEMS_COUNT_EXCLUDING_CREATORS = "getWallItemsCountExcludingCreators";
+	final String QUERY_GET_WALL_ITEM_CREATORS = "getWallItemCreators";
+	
+	//from ProfileFeedItem.hbm.xml
+	final String QUERY_GET_FEED_ITEMS = "getFeedItems";
+	final String QUERY_GET_FEED_ITEMS_BEFORE = "getFeedItemsBefore";
+	final String QUERY_GET_FEED_ITEM_IDS = "getFeedItemIds";
+	final String QUERY_TRIM_FEED_ITEMS = "trimFeedItems";
+	final String QUERY_REMOVE_FEED_ITEMS_FOR_WALL_ITEM = "removeFeedItemsForWallItem";
+	final String QUERY_REMOVE_FEED_ITEMS_FOR_CONNECTION = "removeFeedItemsForConnection";
 	
 	// TODO remove these unused strings
 	//from WallItemComment.hbm.xml
 	//final String QUERY_GET_WALL_ITEM_COMMENTS = "getWallItemComments";
 	
-	//final String QUERY_GET_WALL_ITEMS_COUNT = "getWallItemsCount";
-	
 	// Hibernate object fields
 	final String USER_UUID = "userUuid";
+	final String USER_UUIDS = "userUuids";
 	final String FRIEND_UUID = "friendUuid";
 	final String CONFIRMED = "confirmed";
 	final String OLDEST_STATUS_DATE = "oldestStatusDate";
+	final String DATE_ADDED = "dateAdded";
 	final String SEARCH = "search";
 	final String UUID = "uuid";
 	final String ID = "id";
 	final String THREAD = "thread";
+	final String THREADS = "threads";
 	final String MESSAGE_ID = "messageId";
+	final String CREATOR_UUIDS = "creatorUuids";
+	final String NAME = "name";
+	final String WALL_ITEM_ID = "wallItemId";
+	final String TYPE_UUID = "typeUuid";
 	
 	
 }
@@ -18,8 +18,12 @@ package org.sakaiproject.profile2.dao.impl;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.hibernate.CacheMode;
@@ -28,7 +32,10 @@ import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.transform.Transformers;
+import org.sakaiproject.api.common.edu.person.SakaiPerson;
 import org.sakaiproject.profile2.dao.ProfileDao;
+import org.sakaiproject.profile2.hbm.model.ProfileConversionCheckpoint;
+import org.sakaiproject.profile2.hbm.model.ProfileFeedItem;
 import org.sakaiproject.profile2.hbm.model.ProfileFriend;
 import org.sakaiproject.profile2.hbm.model.ProfileImageExternal;
 import org.sakaiproject.profile2.hbm.model.ProfileImageOfficial;
@@ -59,6 +66,14 @@ import org.springframework.orm.hibernate3.support.HibernateDaoSupport;
 public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 
 	private static final Logger log = Logger.getLogger(ProfileDaoImpl.class);
+	
+	private static final int MAX_IN_CLAUSE_SIZE = 1000;
+	
+	//number of entities to save before flushing when saving in bulk, should match hibernate.jdbc.batch_size
+	private static final int JDBC_BATCH_SIZE = 50;
+	
+	//kudos records are marked as needing to be recalculated by setting their date to this
+	private static final Date KUDOS_INVALIDATED_DATE = new Date(0);
 
 	
 	/**
@@ -103,6 +118,42 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 	  	return (List<String>) getHibernateTemplate().executeFind(hcb);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public int getRequestedConnectionsCountForUser(final String userId) {
+		
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			
+	  			Query q = session.getNamedQuery(QUERY_GET_FRIEND_REQUESTS_FOR_USER_COUNT);
+	  			q.setParameter(USER_UUID, userId, Hibernate.STRING);
+	  			q.setBoolean("false", Boolean.FALSE); 
+	  			return q.uniqueResult();
+	  		}
+	  	};
+	  	
+	  	return ((Number)getHibernateTemplate().execute(hcb)).intValue();
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public int getConfirmedConnectionsCountForUser(final String userId) {
+		
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			
+	  			Query q = session.getNamedQuery(QUERY_GET_CONFIRMED_FRIENDS_FOR_USER_COUNT);
+	  			q.setParameter(USER_UUID, userId, Hibernate.STRING);
+	  			q.setBoolean("true", Boolean.TRUE); 
+	  			return q.uniqueResult();
+	  		}
+	  	};
+	  	
+	  	return ((Number)getHibernateTemplate().execute(hcb)).intValue();
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -179,6 +230,13 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 		return (ProfileImageUploaded) getHibernateTemplate().execute(hcb);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<ProfileImageUploaded> getCurrentProfileImageRecordsForUsers(final List<String> userUuids) {
+		return (List<ProfileImageUploaded>) findForUsers(QUERY_GET_CURRENT_PROFILE_IMAGE_RECORDS_FOR_USERS, userUuids);
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -269,6 +327,13 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 		return (ProfileImageOfficial) getHibernateTemplate().execute(hcb);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<ProfileImageOfficial> getOfficialImageRecordsForUsers(final List<String> userUuids) {
+		return (List<ProfileImageOfficial>) findForUsers(QUERY_GET_OFFICIAL_IMAGE_RECORDS_FOR_USERS, userUuids);
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -403,6 +468,28 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 	  	return ((Integer)getHibernateTemplate().execute(hcb)).intValue();
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<ProfileStatus> getUserStatuses(final List<String> userUuids, final Date oldestDate) {
+		
+		List<ProfileStatus> statuses = new ArrayList<ProfileStatus>();
+		
+		for(final List<String> chunk : partition(userUuids)) {
+			HibernateCallback hcb = new HibernateCallback() {
+		  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+		  			Query q = session.getNamedQuery(QUERY_GET_USER_STATUSES_FOR_USERS);
+		  			q.setParameterList(USER_UUIDS, chunk, Hibernate.STRING);
+		  			q.setParameter(OLDEST_STATUS_DATE, oldestDate, Hibernate.DATE);
+		  			return q.list();
+				}
+			};
+			statuses.addAll((List<ProfileStatus>) getHibernateTemplate().executeFind(hcb));
+		}
+		
+		return statuses;
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -434,6 +521,13 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 		return (ProfilePrivacy) getHibernateTemplate().execute(hcb);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<ProfilePrivacy> getPrivacyRecordsForUsers(final List<String> userUuids) {
+		return (List<ProfilePrivacy>) findForUsers(QUERY_GET_PRIVACY_RECORDS_FOR_USERS, userUuids);
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -493,6 +587,13 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 	  	return (List<CompanyProfile>) getHibernateTemplate().executeFind(hcb);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<CompanyProfile> getCompanyProfilesForUsers(final List<String> userUuids) {
+		return (List<CompanyProfile>) findForUsers(QUERY_GET_COMPANY_PROFILES_FOR_USERS, userUuids);
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -538,6 +639,25 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 	  	return (List<GalleryImage>) getHibernateTemplate().executeFind(hcb);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<GalleryImage> getGalleryImages(final String userId, final int offset, final int limit) {
+		
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			
+	  			Query q = session.getNamedQuery(QUERY_GET_GALLERY_IMAGE_RECORDS);
+	  			q.setParameter(USER_UUID, userId, Hibernate.STRING);
+	  			q.setFirstResult(offset);
+	  			q.setMaxResults(limit);
+	  			return q.list();
+	  		}
+	  	};
+	  	
+	  	return (List<GalleryImage>) getHibernateTemplate().executeFind(hcb);
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -586,6 +706,13 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 		return (SocialNetworkingInfo) getHibernateTemplate().execute(hcb);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<SocialNetworkingInfo> getSocialNetworkingInfos(final List<String> userUuids) {
+		return (List<SocialNetworkingInfo>) findForUsers(QUERY_GET_SOCIAL_NETWORKING_INFOS_FOR_USERS, userUuids);
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -653,6 +780,98 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 	  	return (List<String>) getHibernateTemplate().executeFind(hcb);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<String> getAllSakaiPersonIds(final int start, final int count) {
+				
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			Query q = session.getNamedQuery(QUERY_GET_ALL_SAKAI_PERSON_IDS_ORDERED);
+	  			q.setFirstResult(start);
+	  			q.setMaxResults(count);
+	  			return q.list();
+	  		}
+	  	};
+	  	
+	  	return (List<String>) getHibernateTemplate().executeFind(hcb);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<String> getSakaiPersonIdsAfter(final String userUuid, final int count) {
+				
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			Query q = session.getNamedQuery(QUERY_GET_SAKAI_PERSON_IDS_AFTER);
+	  			q.setParameter(USER_UUID, userUuid, Hibernate.STRING);
+	  			q.setMaxResults(count);
+	  			return q.list();
+	  		}
+	  	};
+	  	
+	  	return (List<String>) getHibernateTemplate().executeFind(hcb);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<String> getSakaiPersonIdsWithoutKudos() {
+				
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			Query q = session.getNamedQuery(QUERY_GET_SAKAI_PERSON_IDS_WITHOUT_KUDOS);
+	  			return q.list();
+	  		}
+	  	};
+	  	
+	  	return (List<String>) getHibernateTemplate().executeFind(hcb);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<UserProfile> getUserProfilesForSearchIndex(final String typeUuid, final int start, final int count) {
+		
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			Query q = session.getNamedQuery(QUERY_GET_SAKAI_PERSONS_FOR_SEARCH_INDEX);
+	  			q.setParameter(TYPE_UUID, typeUuid, Hibernate.STRING);
+	  			q.setFirstResult(start);
+	  			q.setMaxResults(count);
+	  			q.setResultTransformer(Transformers.aliasToBean(UserProfile.class));
+	  			q.setCacheMode(CacheMode.IGNORE);
+	  			return q.list();
+	  		}
+	  	};
+	  	
+	  	return (List<UserProfile>) getHibernateTemplate().executeFind(hcb);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<UserProfile> getUserProfilesForSearchIndex(final String typeUuid, final List<String> userUuids) {
+		
+		List<UserProfile> results = new ArrayList<UserProfile>();
+		
+		for(final List<String> chunk : partition(userUuids)) {
+			HibernateCallback hcb = new HibernateCallback() {
+		  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+		  			Query q = session.getNamedQuery(QUERY_GET_SAKAI_PERSONS_FOR_SEARCH_INDEX_FOR_USERS);
+		  			q.setParameter(TYPE_UUID, typeUuid, Hibernate.STRING);
+		  			q.setParameterList(USER_UUIDS, chunk, Hibernate.STRING);
+		  			q.setResultTransformer(Transformers.aliasToBean(UserProfile.class));
+		  			return q.list();
+				}
+			};
+			results.addAll(getHibernateTemplate().executeFind(hcb));
+		}
+		
+		return results;
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -711,6 +930,13 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 		return (ProfileImageExternal) getHibernateTemplate().execute(hcb);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<ProfileImageExternal> getExternalImageRecordsForUsers(final List<String> userUuids) {
+		return (List<ProfileImageExternal>) findForUsers(QUERY_GET_EXTERNAL_IMAGE_RECORDS_FOR_USERS, userUuids);
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -739,6 +965,15 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 		}
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public void addNewPreferencesRecords(List<ProfilePreferences> prefs) {
+		
+		//not caught here, so the transaction is rolled back rather than committing the failed batch
+		saveInBatches(prefs, true);
+	}
+	
 	
 	/**
  	 * {@inheritDoc}
@@ -756,6 +991,13 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 	
 		return (ProfilePreferences) getHibernateTemplate().execute(hcb);
 	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<ProfilePreferences> getPreferencesRecordsForUsers(final List<String> userUuids) {
+		return (List<ProfilePreferences>) findForUsers(QUERY_GET_PREFERENCES_RECORDS_FOR_USERS, userUuids);
+	}
 
 	
 	/**
@@ -844,6 +1086,67 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 	  	return ((Integer)getHibernateTemplate().execute(hcb)).intValue();
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<String> getMessageThreadIds(final String userId, final int offset, final int limit) {
+		
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  		
+	  			Query q = session.getNamedQuery(QUERY_GET_MESSAGE_THREAD_IDS_ORDERED);
+	  			q.setParameter(UUID, userId, Hibernate.STRING);
+	  			q.setFirstResult(offset);
+	  			q.setMaxResults(limit);
+	  			return q.list();
+	  		}
+	  	};
+	  	
+	  	return (List<String>) getHibernateTemplate().executeFind(hcb);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<MessageThread> getMessageThreads(final List<String> threadIds) {
+		return (List<MessageThread>) findForIds(QUERY_GET_MESSAGE_THREADS_FOR_IDS, THREADS, threadIds);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<Message> getLatestMessagesInThreads(final List<String> threadIds) {
+		return (List<Message>) findForIds(QUERY_GET_LATEST_MESSAGES_IN_THREADS, THREADS, threadIds);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public Map<String, Integer> getUnreadMessagesCounts(final String userId, final List<String> threadIds) {
+		
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		
+		for(final List<String> chunk : partition(threadIds)) {
+			HibernateCallback hcb = new HibernateCallback() {
+		  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+		  			
+		  			Query q = session.getNamedQuery(QUERY_GET_UNREAD_MESSAGES_COUNTS_IN_THREADS);
+		  			q.setParameter(UUID, userId, Hibernate.STRING);
+		  			q.setBoolean("false", Boolean.FALSE);
+		  			q.setParameterList(THREADS, chunk, Hibernate.STRING);
+		  			return q.list();
+		  		}
+		  	};
+		  	
+		  	List<Object[]> rows = (List<Object[]>) getHibernateTemplate().executeFind(hcb);
+		  	for(Object[] row : rows) {
+		  		counts.put((String)row[0], ((Number)row[1]).intValue());
+		  	}
+		}
+		
+		return counts;
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -878,6 +1181,25 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 	  	return (List<Message>) getHibernateTemplate().executeFind(hcb);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<Message> getMessagesInThread(final String threadId, final int offset, final int limit) {
+		
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  		
+	  			Query q = session.getNamedQuery(QUERY_GET_MESSAGES_IN_THREAD);
+	  			q.setParameter(THREAD, threadId, Hibernate.STRING);
+	  			q.setFirstResult(offset);
+	  			q.setMaxResults(limit);
+	  			return q.list();
+	  		}
+	  	};
+	  	
+	  	return (List<Message>) getHibernateTemplate().executeFind(hcb);
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -1068,6 +1390,65 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 		}
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public boolean saveOfficialImageUrls(List<ProfileImageOfficial> officialImages) {
+		try {
+			saveInBatches(officialImages, false);
+			return true;
+		} catch (Exception e) {
+			log.error("saveOfficialImageUrls failed. " + e.getClass() + ": " + e.getMessage());  
+			return false;
+		}
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public boolean saveSakaiPersons(List<SakaiPerson> sakaiPersons) {
+		try {
+			saveInBatches(sakaiPersons, false);
+			return true;
+		} catch (Exception e) {
+			log.error("saveSakaiPersons failed. " + e.getClass() + ": " + e.getMessage());  
+			return false;
+		}
+	}
+	
+	/**
+	 * Save or update a list of entities in a single session, flushing every JDBC_BATCH_SIZE entities
+	 * so the statements go in batches and the session doesn't grow with the list.
+	 * @param entities
+	 * @param insert	true if the entities are all new, so they can be inserted without checking if they exist first
+	 */
+	private void saveInBatches(final List<?> entities, final boolean insert) {
+		
+		if(entities == null || entities.isEmpty()) {
+			return;
+		}
+		
+		getHibernateTemplate().execute(new HibernateCallback() {			
+			public Object doInHibernate(Session session) throws HibernateException, SQLException {
+				int i = 0;
+				for(Object entity : entities) {
+					if(insert) {
+						session.save(entity);
+					} else {
+						session.saveOrUpdate(entity);
+					}
+					if(++i % JDBC_BATCH_SIZE == 0) {
+						session.flush();
+						session.clear();
+					}
+				}
+				session.flush();
+				session.clear();
+				return null;
+			}
+		});
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -1100,6 +1481,149 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 		}
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public ProfileConversionCheckpoint getConversionCheckpoint(final String name) {
+				
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			
+	  			Query q = session.getNamedQuery(QUERY_GET_CONVERSION_CHECKPOINT);
+	  			q.setParameter(NAME, name, Hibernate.STRING);
+	  			q.setMaxResults(1);
+	  			return q.uniqueResult();
+	  		}
+	  	};
+	  	
+	  	return (ProfileConversionCheckpoint) getHibernateTemplate().execute(hcb);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public boolean saveConversionCheckpoint(ProfileConversionCheckpoint checkpoint) {
+		try {
+			getHibernateTemplate().saveOrUpdate(checkpoint);
+			return true;
+		} catch (Exception e) {
+			log.error("saveConversionCheckpoint failed. " + e.getClass() + ": " + e.getMessage());  
+			return false;
+		}
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public boolean updateKudos(List<ProfileKudos> kudos) {
+		try {
+			getHibernateTemplate().saveOrUpdateAll(kudos);
+			return true;
+		} catch (Exception e) {
+			log.error("updateKudos failed. " + e.getClass() + ": " + e.getMessage());  
+			return false;
+		}
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public boolean invalidateKudos(final List<String> userUuids) {
+		
+		try {
+			for(final List<String> chunk : partition(userUuids)) {
+				HibernateCallback hcb = new HibernateCallback() {
+			  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+			  			Query q = session.getNamedQuery(QUERY_INVALIDATE_KUDOS_RECORDS);
+			  			q.setParameter(DATE_ADDED, KUDOS_INVALIDATED_DATE, Hibernate.TIMESTAMP);
+			  			q.setParameterList(USER_UUIDS, chunk, Hibernate.STRING);
+			  			return q.executeUpdate();
+			  		}
+			  	};
+			  	getHibernateTemplate().execute(hcb);
+			}
+			return true;
+		} catch (Exception e) {
+			log.error("invalidateKudos failed. " + e.getClass() + ": " + e.getMessage());  
+			return false;
+		}
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<String> getInvalidatedKudosUserIds() {
+		
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			Query q = session.getNamedQuery(QUERY_GET_INVALIDATED_KUDOS_USER_IDS);
+	  			q.setParameter(DATE_ADDED, KUDOS_INVALIDATED_DATE, Hibernate.TIMESTAMP);
+	  			return q.list();
+	  		}
+	  	};
+	  	
+	  	return (List<String>) getHibernateTemplate().executeFind(hcb);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public Map<String, Integer> getConnectionsCounts(final List<String> userUuids) {
+		
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		
+		//connections are stored once, so count both sides of the relationship
+		for(final String queryName : new String[]{QUERY_GET_CONNECTIONS_COUNTS_FOR_USERS, QUERY_GET_CONNECTIONS_COUNTS_FOR_FRIENDS}) {
+			for(final List<String> chunk : partition(userUuids)) {
+				HibernateCallback hcb = new HibernateCallback() {
+			  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+			  			Query q = session.getNamedQuery(queryName);
+			  			q.setParameterList(USER_UUIDS, chunk, Hibernate.STRING);
+			  			q.setBoolean("true", Boolean.TRUE);
+			  			return q.list();
+			  		}
+			  	};
+			  	addCounts(counts, getHibernateTemplate().executeFind(hcb));
+			}
+		}
+		
+		return counts;
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public Map<String, Integer> getSentMessagesCounts(final List<String> userUuids) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		addCounts(counts, findForUsers(QUERY_GET_SENT_MESSAGES_COUNTS_FOR_USERS, userUuids));
+		return counts;
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public Map<String, Integer> getStatusUpdatesCounts(final List<String> userUuids) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		addCounts(counts, findForUsers(QUERY_GET_STATUS_UPDATES_COUNTS_FOR_USERS, userUuids));
+		return counts;
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public Map<String, Integer> getGalleryImagesCounts(final List<String> userUuids) {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		addCounts(counts, findForUsers(QUERY_GET_GALLERY_IMAGE_RECORDS_COUNTS_FOR_USERS, userUuids));
+		return counts;
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<ExternalIntegrationInfo> getExternalIntegrationInfos(final List<String> userUuids) {
+		return (List<ExternalIntegrationInfo>) findForUsers(QUERY_GET_EXTERNAL_INTEGRATION_INFOS_FOR_USERS, userUuids);
+	}
+	
 	
 	/**
  	 * {@inheritDoc}
@@ -1177,6 +1701,114 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 	  	return (List<WallItem>) getHibernateTemplate().executeFind(hcb);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<WallItem> getWallItemsForUser(final String userUuid, final List<String> excludedCreators, final int offset, final int limit) {
+		
+		//too many creators to exclude in the query, so page the filtered list instead
+		if(excludedCreators != null && excludedCreators.size() > MAX_IN_CLAUSE_SIZE) {
+			List<WallItem> wallItems = getWallItemsExcludingCreators(userUuid, excludedCreators);
+			if(offset >= wallItems.size()) {
+				return new ArrayList<WallItem>();
+			}
+			return new ArrayList<WallItem>(wallItems.subList(offset, Math.min(offset + limit, wallItems.size())));
+		}
+		
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			
+	  			Query q;
+	  			if(excludedCreators == null || excludedCreators.isEmpty()) {
+	  				q = session.getNamedQuery(QUERY_GET_WALL_ITEMS_ORDERED);
+	  			} else {
+	  				q = session.getNamedQuery(QUERY_GET_WALL_ITEMS_ORDERED_EXCLUDING_CREATORS);
+	  				q.setParameterList(CREATOR_UUIDS, excludedCreators, Hibernate.STRING);
+	  			}
+	  			q.setParameter(USER_UUID, userUuid, Hibernate.STRING);
+	  			q.setFirstResult(offset);
+	  			q.setMaxResults(limit);
+	  			return q.list();
+	  		}
+	  	};
+	  	
+	  	return (List<WallItem>) getHibernateTemplate().executeFind(hcb);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public int getWallItemsCount(final String userUuid, final List<String> excludedCreators) {
+		
+		//too many creators to exclude in the query, so count the filtered list instead
+		if(excludedCreators != null && excludedCreators.size() > MAX_IN_CLAUSE_SIZE) {
+			return getWallItemsExcludingCreators(userUuid, excludedCreators).size();
+		}
+		
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			
+	  			Query q;
+	  			if(excludedCreators == null || excludedCreators.isEmpty()) {
+	  				q = session.getNamedQuery(QUERY_GET_WALL_ITEMS_COUNT);
+	  			} else {
+	  				q = session.getNamedQuery(QUERY_GET_WALL_ITEMS_COUNT_EXCLUDING_CREATORS);
+	  				q.setParameterList(CREATOR_UUIDS, excludedCreators, Hibernate.STRING);
+	  			}
+	  			q.setParameter(USER_UUID, userUuid, Hibernate.STRING);
+	  			return q.uniqueResult();
+	  		}
+	  	};
+	  	
+	  	return ((Number)getHibernateTemplate().execute(hcb)).intValue();
+	}
+	
+	/**
+	 * Get all of the wall items for a user, newest first, skipping those by the given creators. This is the fallback for when
+	 * there are more creators than fit in a NOT IN clause, which can't be split into chunks the way an IN clause can.
+	 * 
+	 * @param userUuid			the user ID.
+	 * @param excludedCreators	creators whose wall items should be skipped.
+	 * @return the remaining wall items for the specified user.
+	 */
+	private List<WallItem> getWallItemsExcludingCreators(final String userUuid, final List<String> excludedCreators) {
+		
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			
+	  			Query q = session.getNamedQuery(QUERY_GET_WALL_ITEMS_ORDERED);
+	  			q.setParameter(USER_UUID, userUuid, Hibernate.STRING);
+	  			return q.list();
+	  		}
+	  	};
+	  	
+	  	Set<String> excluded = new HashSet<String>(excludedCreators);
+	  	List<WallItem> wallItems = new ArrayList<WallItem>();
+	  	for(WallItem wallItem : (List<WallItem>) getHibernateTemplate().executeFind(hcb)) {
+	  		if(!excluded.contains(wallItem.getCreatorUuid())) {
+	  			wallItems.add(wallItem);
+	  		}
+	  	}
+	  	return wallItems;
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<String> getWallItemCreators(final String userUuid) {
+		
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			
+	  			Query q = session.getNamedQuery(QUERY_GET_WALL_ITEM_CREATORS);
+	  			q.setParameter(USER_UUID, userUuid, Hibernate.STRING);
+	  			return q.list();
+	  		}
+	  	};
+	  	
+	  	return (List<String>) getHibernateTemplate().executeFind(hcb);
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -1190,6 +1822,119 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 		}
 	}	
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public void addNewFeedItems(final List<ProfileFeedItem> feedItems) {
+		
+		//not caught here, so the transaction is rolled back rather than committing the failed batch
+		saveInBatches(feedItems, true);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<WallItem> getFeedItemsForUser(final String userUuid, final long beforeWallItemId, final int limit) {
+		
+		HibernateCallback hcb = new HibernateCallback() {
+	  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+	  			
+	  			Query q;
+	  			if(beforeWallItemId > 0) {
+	  				q = session.getNamedQuery(QUERY_GET_FEED_ITEMS_BEFORE);
+	  				q.setParameter(WALL_ITEM_ID, beforeWallItemId, Hibernate.LONG);
+	  			} else {
+	  				q = session.getNamedQuery(QUERY_GET_FEED_ITEMS);
+	  			}
+	  			q.setParameter(USER_UUID, userUuid, Hibernate.STRING);
+	  			q.setMaxResults(limit);
+	  			return q.list();
+	  		}
+	  	};
+	  	
+	  	return (List<WallItem>) getHibernateTemplate().executeFind(hcb);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public boolean trimFeedItems(final List<String> userUuids, final int maxItems) {
+		
+		try {
+			HibernateCallback hcb = new HibernateCallback() {
+		  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+		  			
+		  			for(String userUuid : userUuids) {
+		  				
+		  				//find the newest entry that is past the limit, if there is one
+		  				Query q = session.getNamedQuery(QUERY_GET_FEED_ITEM_IDS);
+		  				q.setParameter(USER_UUID, userUuid, Hibernate.STRING);
+		  				q.setFirstResult(maxItems);
+		  				q.setMaxResults(1);
+		  				Long oldest = (Long) q.uniqueResult();
+		  				if(oldest == null) {
+		  					continue;
+		  				}
+		  				
+		  				Query d = session.getNamedQuery(QUERY_TRIM_FEED_ITEMS);
+		  				d.setParameter(USER_UUID, userUuid, Hibernate.STRING);
+		  				d.setParameter(WALL_ITEM_ID, oldest, Hibernate.LONG);
+		  				d.executeUpdate();
+		  			}
+		  			return null;
+		  		}
+		  	};
+		  	getHibernateTemplate().execute(hcb);
+			return true;
+		} catch (Exception e) {
+			log.error("trimFeedItems failed. " + e.getClass() + ": " + e.getMessage());  
+			return false;
+		}
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public boolean removeFeedItemsForWallItem(final long wallItemId) {
+		
+		try {
+			HibernateCallback hcb = new HibernateCallback() {
+		  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+		  			Query q = session.getNamedQuery(QUERY_REMOVE_FEED_ITEMS_FOR_WALL_ITEM);
+		  			q.setParameter(WALL_ITEM_ID, wallItemId, Hibernate.LONG);
+		  			return q.executeUpdate();
+		  		}
+		  	};
+		  	getHibernateTemplate().execute(hcb);
+			return true;
+		} catch (Exception e) {
+			log.error("removeFeedItemsForWallItem failed. " + e.getClass() + ": " + e.getMessage());  
+			return false;
+		}
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public boolean removeFeedItemsForConnection(final String userUuid, final String friendUuid) {
+		
+		try {
+			HibernateCallback hcb = new HibernateCallback() {
+		  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+		  			Query q = session.getNamedQuery(QUERY_REMOVE_FEED_ITEMS_FOR_CONNECTION);
+		  			q.setParameter(USER_UUID, userUuid, Hibernate.STRING);
+		  			q.setParameter(FRIEND_UUID, friendUuid, Hibernate.STRING);
+		  			return q.executeUpdate();
+		  		}
+		  	};
+		  	getHibernateTemplate().execute(hcb);
+			return true;
+		} catch (Exception e) {
+			log.error("removeFeedItemsForConnection failed. " + e.getClass() + ": " + e.getMessage());  
+			return false;
+		}
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -1209,4 +1954,78 @@ public class ProfileDaoImpl extends HibernateDaoSupport implements ProfileDao {
 	      log.debug("init");
 	}
 	
+	/**
+	 * Run a named query that takes a list of user uuids as its only parameter. 
+	 * The list is split into chunks so we stay under the maximum number of items allowed in an IN clause.
+	 * 
+	 * @param queryName		name of the query in the hbm
+	 * @param userUuids		uuids of the users
+	 * @return combined results of each chunk, empty if none.
+	 */
+	private List<?> findForUsers(final String queryName, final List<String> userUuids) {
+		return findForIds(queryName, USER_UUIDS, userUuids);
+	}
+	
+	/**
+	 * Run a named query that takes a list of ids, splitting the list into chunks if required.
+	 * 
+	 * @param queryName		name of the query
+	 * @param paramName		name of the list parameter in the query
+	 * @param ids			list of ids
+	 * @return combined results of each chunk
+	 */
+	private List<?> findForIds(final String queryName, final String paramName, final List<String> ids) {
+		
+		List<Object> results = new ArrayList<Object>();
+		
+		for(final List<String> chunk : partition(ids)) {
+			HibernateCallback hcb = new HibernateCallback() {
+		  		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+		  			Query q = session.getNamedQuery(queryName);
+		  			q.setParameterList(paramName, chunk, Hibernate.STRING);
+		  			return q.list();
+				}
+			};
+			results.addAll(getHibernateTemplate().executeFind(hcb));
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Add the rows from a grouped count query, ie [uuid, count], to a map of counts.
+	 * 
+	 * @param counts	map to add to
+	 * @param rows		rows from the query
+	 */
+	private void addCounts(Map<String, Integer> counts, List<?> rows) {
+		for(Object o : rows) {
+			Object[] row = (Object[]) o;
+			String uuid = (String) row[0];
+			int count = ((Number) row[1]).intValue();
+			
+			Integer existing = counts.get(uuid);
+			counts.put(uuid, existing == null ? count : existing + count);
+		}
+	}
+	
+	/**
+	 * Split a list of ids into chunks no larger than MAX_IN_CLAUSE_SIZE. Oracle will not accept more than 1000 items in an IN clause.
+	 * 
+	 * @param ids		list of ids, may be null
+	 * @return list of chunks, empty if the list was null or empty.
+	 */
+	private List<List<String>> partition(final List<String> ids) {
+		
+		List<List<String>> chunks = new ArrayList<List<String>>();
+		if(ids == null) {
+			return chunks;
+		}
+		
+		for(int i = 0; i < ids.size(); i += MAX_IN_CLAUSE_SIZE) {
+			chunks.add(new ArrayList<String>(ids.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, ids.size()))));
+		}
+		return chunks;
+	}
+	
 }
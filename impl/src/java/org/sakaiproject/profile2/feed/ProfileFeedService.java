@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.feed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Setter;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.log4j.Logger;
+import org.sakaiproject.profile2.dao.ProfileDao;
+import org.sakaiproject.profile2.hbm.model.ProfileFeedItem;
+import org.sakaiproject.profile2.logic.ProfilePrivacyLogic;
+import org.sakaiproject.profile2.logic.SakaiProxy;
+import org.sakaiproject.profile2.model.WallItem;
+import org.sakaiproject.profile2.types.PrivacyType;
+import org.springframework.dao.DataAccessException;
+
+/**
+ * Writes new wall items into the news feeds of the creator's connections, in the background.
+ *
+ * <p>Each connection that is allowed to see the creator's wall gets an entry in PROFILE_FEED_T, so their feed can be read
+ * with one range query. Feeds are trimmed to the newest profile2.feed.size entries as they are written.</p>
+ *
+ * <p>The number of threads and the queue size can be set via profile2.feed.threads and profile2.feed.queue.size.
+ * When the queue is full, the wall item is left out of the feeds.</p>
+ *
+ * <p>This is not part of the public API.</p>
+ *
+ */
+public class ProfileFeedService {
+
+	private static final Logger log = Logger.getLogger(ProfileFeedService.class);
+
+	//number of recipients written in each transaction
+	private static final int BATCH_SIZE = 100;
+
+	//defaults if not specified in sakai.properties
+	private static final int DEFAULT_THREADS = 1;
+	private static final int DEFAULT_QUEUE_SIZE = 1000;
+	private static final int DEFAULT_FEED_SIZE = 500;
+
+	private ThreadPoolExecutor executor;
+	private int feedSize;
+
+	public void init() {
+		int threads = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.feed.threads", null), DEFAULT_THREADS);
+		int queueSize = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.feed.queue.size", null), DEFAULT_QUEUE_SIZE);
+		feedSize = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.feed.size", null), DEFAULT_FEED_SIZE);
+
+		final AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = Executors.defaultThreadFactory().newThread(r);
+				t.setName("Profile2 feed " + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public void destroy() {
+		if(executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Queue a wall item to be added to the feeds of the given users
+	 * @param wallItem		the saved wall item
+	 * @param recipients	uuids of the creator's connections
+	 * @return true if queued, false if the queue was full
+	 */
+	public boolean publish(final WallItem wallItem, List<String> recipients) {
+
+		if(recipients == null || recipients.isEmpty()) {
+			return true;
+		}
+
+		//callers may reuse their list, so take a copy now
+		final List<String> userUuids = new ArrayList<String>(recipients);
+
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						write(wallItem, userUuids);
+					} catch (Exception e) {
+						log.error("Profile2 feed: adding wall item " + wallItem.getId() + " failed: " + e.getClass() + " : " + e.getMessage());
+					}
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			log.warn("Profile2 feed queue is full, wall item " + wallItem.getId() + " will not be added to " + userUuids.size() + " feeds");
+			return false;
+		}
+	}
+
+	/**
+	 * Get a page of the feed for a user, newest first
+	 * @param userUuid			uuid of the user
+	 * @param beforeWallItemId	id of the last wall item on the previous page, or 0 for the first page
+	 * @param limit				maximum number of wall items to return
+	 * @return
+	 */
+	public List<WallItem> getFeed(String userUuid, long beforeWallItemId, int limit) {
+		return dao.getFeedItemsForUser(userUuid, beforeWallItemId, limit);
+	}
+
+	/**
+	 * Write the feed entries for the recipients that can see the creator's wall, a batch at a time
+	 */
+	private void write(WallItem wallItem, List<String> recipients) {
+
+		String creatorUuid = wallItem.getCreatorUuid();
+
+		for(int i = 0; i < recipients.size(); i += BATCH_SIZE) {
+			List<String> batch = recipients.subList(i, Math.min(i + BATCH_SIZE, recipients.size()));
+
+			List<ProfileFeedItem> feedItems = new ArrayList<ProfileFeedItem>();
+			List<String> userUuids = new ArrayList<String>();
+			for(String userUuid : batch) {
+				if(privacyLogic.isActionAllowed(creatorUuid, userUuid, PrivacyType.PRIVACY_OPTION_MYWALL)) {
+					feedItems.add(new ProfileFeedItem(userUuid, wallItem.getId(), creatorUuid, wallItem.getDate()));
+					userUuids.add(userUuid);
+				}
+			}
+
+			if(feedItems.isEmpty()) {
+				continue;
+			}
+
+			try {
+				dao.addNewFeedItems(feedItems);
+			} catch (DataAccessException e) {
+				log.error("Profile2 feed: couldn't add wall item " + wallItem.getId() + " for a batch of " + feedItems.size() + " users. " + e.getClass() + ": " + e.getMessage());
+				continue;
+			}
+			dao.trimFeedItems(userUuids, feedSize);
+		}
+
+		if(log.isDebugEnabled()) {
+			log.debug("Profile2 feed: added wall item " + wallItem.getId() + " for " + recipients.size() + " connections of " + creatorUuid);
+		}
+	}
+
+	@Setter
+	private SakaiProxy sakaiProxy;
+
+	@Setter
+	private ProfileDao dao;
+
+	@Setter
+	private ProfilePrivacyLogic privacyLogic;
+
+}
@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.image;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Setter;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.log4j.Logger;
+import org.sakaiproject.profile2.cache.ImageCache;
+import org.sakaiproject.profile2.logic.SakaiProxy;
+import org.sakaiproject.profile2.model.ImageSource;
+import org.sakaiproject.profile2.model.MimeTypeByteArray;
+import org.sakaiproject.profile2.util.ProfileConstants;
+
+/**
+ * Fetches official images from a URL so they can be sent on to the browser, for when profile2.official.image.url.secure=true.
+ *
+ * <p>Fetches run on a small pool with connect and read timeouts, and the calling thread only waits for a fetch up to
+ * profile2.official.image.fetch.timeout. Concurrent requests for the same URL share one fetch, and fetched images are cached
+ * for profile2.official.image.fetch.cache.ttl seconds. If the pool is busy the fetch is not queued and the caller gets nothing,
+ * so a slow photo server can't tie up every request thread.</p>
+ *
+ * <p>Keep-alive connections are reused by the JDK as long as each response is read fully and closed, which is always done here.</p>
+ *
+ * <p>This is not part of the public API.</p>
+ *
+ */
+public class OfficialImageFetcher {
+
+	private static final Logger log = Logger.getLogger(OfficialImageFetcher.class);
+
+	//defaults, can be overridden by profile2.official.image.fetch.x
+	private static final int DEFAULT_THREADS = 4;
+	private static final int DEFAULT_QUEUE_SIZE = 50;
+	private static final int DEFAULT_CONNECT_TIMEOUT = 2000;
+	private static final int DEFAULT_READ_TIMEOUT = 5000;
+	private static final int DEFAULT_TIMEOUT = 5000;
+	private static final int DEFAULT_CACHE_TTL = 600;
+	private static final int DEFAULT_CACHE_SIZE = 8;
+
+	private ThreadPoolExecutor executor;
+	private ImageCache cache;
+
+	//fetches in progress, by url
+	private final ConcurrentHashMap<String, FutureTask<MimeTypeByteArray>> inProgress = new ConcurrentHashMap<String, FutureTask<MimeTypeByteArray>>();
+
+	private int connectTimeout;
+	private int readTimeout;
+	private int timeout;
+	private long cacheTtl;
+
+	public void init() {
+		int threads = getSetting("threads", DEFAULT_THREADS);
+		int queueSize = getSetting("queue.size", DEFAULT_QUEUE_SIZE);
+		connectTimeout = getSetting("connect.timeout", DEFAULT_CONNECT_TIMEOUT);
+		readTimeout = getSetting("read.timeout", DEFAULT_READ_TIMEOUT);
+		timeout = getSetting("timeout", DEFAULT_TIMEOUT);
+		cacheTtl = getSetting("cache.ttl", DEFAULT_CACHE_TTL) * 1000L;
+		cache = new ImageCache(getSetting("cache.size", DEFAULT_CACHE_SIZE) * 1024L * 1024L);
+
+		final AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = Executors.defaultThreadFactory().newThread(r);
+				t.setName("Profile2 official image fetcher " + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public void destroy() {
+		if(executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Get an ImageSource for an official image URL. Nothing is fetched until the source is used.
+	 * @param url	URL of the image
+	 * @return ImageSource. Writing it throws an IOException if the image could not be fetched in time.
+	 */
+	public ImageSource getSource(final String url) {
+		return new ImageSource() {
+
+			private MimeTypeByteArray image;
+			private boolean fetched;
+
+			private MimeTypeByteArray getImage() {
+				if(!fetched) {
+					image = fetch(url);
+					fetched = true;
+				}
+				return image;
+			}
+			public String getMimeType() {
+				return getImage() == null ? null : image.getMimeType();
+			}
+			public long getLength() {
+				return getImage() == null ? -1 : image.getBytes().length;
+			}
+			public long getLastModified() {
+				return getImage() == null ? 0 : image.getLastModified();
+			}
+			public long writeTo(OutputStream out) throws IOException {
+				if(getImage() == null) {
+					throw new IOException("Could not fetch official image: " + url);
+				}
+				out.write(image.getBytes());
+				return image.getBytes().length;
+			}
+		};
+	}
+
+	/**
+	 * Get an official image, from the cache or by fetching it
+	 * @param url	URL of the image
+	 * @return MimeTypeByteArray, with lastModified set to when it was fetched, or null if it could not be fetched in time
+	 */
+	public MimeTypeByteArray fetch(final String url) {
+
+		MimeTypeByteArray image = cache.get(url);
+		if(image != null && (System.currentTimeMillis() - image.getLastModified()) < cacheTtl) {
+			return image;
+		}
+
+		//join a fetch already in progress for this url, or start one
+		FutureTask<MimeTypeByteArray> task = new FutureTask<MimeTypeByteArray>(new Callable<MimeTypeByteArray>() {
+			public MimeTypeByteArray call() throws IOException {
+				try {
+					MimeTypeByteArray fetched = download(url);
+					cache.put(url, fetched);
+					return fetched;
+				} finally {
+					inProgress.remove(url);
+				}
+			}
+		});
+		FutureTask<MimeTypeByteArray> existing = inProgress.putIfAbsent(url, task);
+		if(existing != null) {
+			task = existing;
+		} else {
+			try {
+				executor.execute(task);
+			} catch (RejectedExecutionException e) {
+				inProgress.remove(url, task);
+				log.warn("Profile2 official image fetcher is busy, not fetching: " + url);
+				return null;
+			}
+		}
+
+		try {
+			return task.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (TimeoutException e) {
+			//the fetch carries on and will be cached for the next request
+			log.warn("Timed out waiting for official image: " + url);
+		} catch (ExecutionException e) {
+			log.error("Failed to retrieve official image: " + url + " : " + e.getCause().getClass() + ": " + e.getCause().getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Download an image
+	 * @param url	URL of the image
+	 * @return MimeTypeByteArray
+	 * @throws IOException if the image could not be fetched or was too large
+	 */
+	private MimeTypeByteArray download(String url) throws IOException {
+		URLConnection uc = new URL(url).openConnection();
+		uc.setConnectTimeout(connectTimeout);
+		uc.setReadTimeout(readTimeout);
+
+		InputStream in = null;
+		try {
+			in = uc.getInputStream();
+
+			long maxBytes = ProfileConstants.MAX_IMAGE_UPLOAD_SIZE * FileUtils.ONE_MB;
+			if(uc.getContentLength() > maxBytes) {
+				throw new IOException("Image too large: " + uc.getContentLength() + " bytes");
+			}
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(uc.getContentLength() > 0 ? uc.getContentLength() : 4096);
+			byte[] buffer = new byte[4096];
+			int n;
+			while((n = in.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+				if(out.size() > maxBytes) {
+					throw new IOException("Image too large: more than " + maxBytes + " bytes");
+				}
+			}
+
+			MimeTypeByteArray image = new MimeTypeByteArray();
+			image.setBytes(out.toByteArray());
+			image.setMimeType(uc.getContentType());
+			image.setLastModified(System.currentTimeMillis());
+			return image;
+		} catch (IOException e) {
+			//release the connection
+			if(uc instanceof HttpURLConnection) {
+				IOUtils.closeQuietly(((HttpURLConnection) uc).getErrorStream());
+			}
+			throw e;
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+	}
+
+	private int getSetting(String name, int defaultValue) {
+		return NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.official.image.fetch." + name, null), defaultValue);
+	}
+
+	@Setter
+	private SakaiProxy sakaiProxy;
+
+}
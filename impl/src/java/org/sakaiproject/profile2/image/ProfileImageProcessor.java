@@ -0,0 +1,209 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.image;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.log4j.Logger;
+import org.imgscalr.Scalr;
+import org.sakaiproject.profile2.logic.SakaiProxy;
+import org.sakaiproject.profile2.util.ProfileConstants;
+import org.sakaiproject.profile2.util.ProfileUtils;
+
+/**
+ * Creates the scaled versions of an uploaded image.
+ *
+ * <p>The original is decoded once, after checking its dimensions against profile2.image.max.pixels. Each smaller version is
+ * scaled from the previous one rather than from the original, and the versions are encoded in parallel on a small pool.</p>
+ *
+ * <p>This is not part of the public API.</p>
+ *
+ */
+public class ProfileImageProcessor {
+
+	private static final Logger log = Logger.getLogger(ProfileImageProcessor.class);
+
+	//number of worker threads, can be overridden by profile2.image.threads
+	private static final int DEFAULT_THREADS = 4;
+
+	//number of images waiting to be encoded before the caller encodes them itself
+	private static final int QUEUE_SIZE = 100;
+
+	private ThreadPoolExecutor executor;
+	private long maxPixels;
+
+	public void init() {
+		int threads = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.image.threads", null), DEFAULT_THREADS);
+		maxPixels = NumberUtils.toLong(sakaiProxy.getServerConfigurationParameter("profile2.image.max.pixels", null), ProfileUtils.MAX_IMAGE_PIXELS);
+
+		final AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = Executors.defaultThreadFactory().newThread(r);
+				t.setName("Profile2 image processor " + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	public void destroy() {
+		if(executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Create the main, thumbnail and avatar images for a profile image
+	 * @param imageBytes	original image
+	 * @param mimeType		mimetype of the original image
+	 * @return ScaledImages or null if the image could not be read or was too large. Any of the versions may be null if they failed.
+	 */
+	public ScaledImages createProfileImages(byte[] imageBytes, String mimeType) {
+		return process(imageBytes, mimeType, ProfileConstants.MAX_IMAGE_XY, ProfileConstants.MAX_THUMBNAIL_IMAGE_XY, true);
+	}
+
+	/**
+	 * Create the main and thumbnail images for a gallery image
+	 * @param imageBytes	original image
+	 * @param mimeType		mimetype of the original image
+	 * @return ScaledImages or null if the image could not be read or was too large. The thumbnail may be null if it failed.
+	 */
+	public ScaledImages createGalleryImages(byte[] imageBytes, String mimeType) {
+		return process(imageBytes, mimeType, ProfileConstants.MAX_GALLERY_IMAGE_XY, ProfileConstants.MAX_GALLERY_THUMBNAIL_IMAGE_XY, false);
+	}
+
+	private ScaledImages process(byte[] imageBytes, final String mimeType, int mainSize, final int thumbnailSize, boolean avatar) {
+
+		if(imageBytes == null || imageBytes.length == 0) {
+			return null;
+		}
+
+		//decode once
+		final BufferedImage original = ProfileUtils.readImage(new ByteArrayInputStream(imageBytes), maxPixels);
+		if(original == null) {
+			return null;
+		}
+
+		final BufferedImage main;
+		try {
+			main = Scalr.resize(original, mainSize);
+		} catch (Exception e) {
+			log.error("Scaling image failed.", e);
+			return null;
+		}
+
+		//encode main, and scale and encode the others, in parallel
+		Future<byte[]> mainFuture = submit(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				return ProfileUtils.writeImage(main, mimeType);
+			}
+		});
+
+		Future<byte[]> thumbnailFuture = submit(new Callable<byte[]>() {
+			public byte[] call() throws Exception {
+				return ProfileUtils.writeImage(Scalr.resize(main, thumbnailSize), mimeType);
+			}
+		});
+
+		Future<byte[]> avatarFuture = null;
+		if(avatar) {
+			avatarFuture = submit(new Callable<byte[]>() {
+				public byte[] call() throws Exception {
+					//crop from main if it is big enough, otherwise the original so we don't scale up
+					BufferedImage source = Math.min(main.getWidth(), main.getHeight()) >= ProfileUtils.AVATAR_IMAGE_XY ? main : original;
+					return ProfileUtils.writeImage(ProfileUtils.cropToAvatar(source), mimeType);
+				}
+			});
+		}
+
+		ScaledImages images = new ScaledImages();
+		images.main = get(mainFuture);
+		if(images.main == null) {
+			return null;
+		}
+		images.thumbnail = get(thumbnailFuture);
+		images.avatar = get(avatarFuture);
+		return images;
+	}
+
+	/**
+	 * Run the task on the pool, or in this thread if the pool is busy
+	 */
+	private Future<byte[]> submit(Callable<byte[]> task) {
+		try {
+			return executor.submit(task);
+		} catch (RejectedExecutionException e) {
+			log.debug("Image processor is busy, processing in the calling thread.");
+			return new ImmediateFuture(task);
+		}
+	}
+
+	private byte[] get(Future<byte[]> future) {
+		if(future == null) {
+			return null;
+		}
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.cancel(true);
+		} catch (ExecutionException e) {
+			log.error("Processing image failed.", e.getCause());
+		}
+		return null;
+	}
+
+	/**
+	 * A Future for a task that is run straight away
+	 */
+	private static class ImmediateFuture extends FutureTask<byte[]> {
+		ImmediateFuture(Callable<byte[]> task) {
+			super(task);
+			run();
+		}
+	}
+
+	/**
+	 * The scaled and encoded versions of an image
+	 */
+	public static class ScaledImages {
+		@Getter private byte[] main;
+		@Getter private byte[] thumbnail;
+		@Getter private byte[] avatar;
+	}
+
+	@Setter
+	private SakaiProxy sakaiProxy;
+
+}
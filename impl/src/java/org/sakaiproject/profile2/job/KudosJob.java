@@ -17,25 +17,31 @@ package org.sakaiproject.profile2.job;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import lombok.Setter;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.quartz.SchedulerException;
 import org.quartz.StatefulJob;
-import org.sakaiproject.profile2.logic.ProfileConnectionsLogic;
-import org.sakaiproject.profile2.logic.ProfileExternalIntegrationLogic;
+import org.sakaiproject.profile2.dao.ProfileDao;
+import org.sakaiproject.profile2.hbm.model.ProfileKudos;
 import org.sakaiproject.profile2.logic.ProfileImageLogic;
 import org.sakaiproject.profile2.logic.ProfileKudosLogic;
 import org.sakaiproject.profile2.logic.ProfileLogic;
-import org.sakaiproject.profile2.logic.ProfileMessagingLogic;
-import org.sakaiproject.profile2.logic.ProfileStatusLogic;
 import org.sakaiproject.profile2.logic.SakaiProxy;
 import org.sakaiproject.profile2.model.ExternalIntegrationInfo;
 import org.sakaiproject.profile2.model.Person;
@@ -54,6 +60,10 @@ import org.sakaiproject.tool.api.SessionManager;
  * to give the total kudos ranking for the user.
  * </p>
  * 
+ * <p>Users are processed in chunks. The data for each chunk is loaded in bulk, the scores are calculated on a pool of
+ * worker threads and then saved together. In incremental mode, only users whose kudos has been invalidated, or who have
+ * never had a kudos rating, are processed.</p>
+ * 
  * @author Steve Swinsburg (steve.swinsburg@gmail.com)
  *
  */
@@ -63,6 +73,12 @@ public class KudosJob implements StatefulJob {
 	
 	private final String BEAN_ID = "org.sakaiproject.profile2.job.KudosJob";
 	
+	//number of users to process at a time
+	private static final int CHUNK_SIZE = 200;
+	
+	//number of worker threads, can be overridden by profile2.kudos.job.threads
+	private static final int DEFAULT_THREADS = 4;
+	
 	
 	/**
 	 * setup the rule map
@@ -148,10 +164,15 @@ public class KudosJob implements StatefulJob {
 	
 	/**
 	 * Calculate the score for this person
-	 * @param person	Person object
+	 * @param person					Person object
+	 * @param numConnections			number of connections the person has
+	 * @param numSentMessages			number of messages the person has sent
+	 * @param numStatusUpdates			number of status updates the person has made
+	 * @param numGalleryPictures		number of pictures in the person's gallery
+	 * @param externalIntegrationInfo	the person's ExternalIntegrationInfo, may be null
 	 * @return
 	 */
-	private BigDecimal getScore(Person person) {
+	private BigDecimal getScore(Person person, int numConnections, int numSentMessages, int numStatusUpdates, int numGalleryPictures, ExternalIntegrationInfo externalIntegrationInfo) {
 		
 		BigDecimal score = new BigDecimal(0);
 		
@@ -338,7 +359,7 @@ public class KudosJob implements StatefulJob {
 		//points for image that isn't the default
 		ProfileImage image = imageLogic.getProfileImage(person, ProfileConstants.PROFILE_IMAGE_MAIN);
 		if(image != null){
-			if(image.getBinary() != null) {
+			if(image.hasBinary()) {
 				score = score.add(val("hasImage"));
 			}
 			if(!StringUtils.equals(image.getUrl(), imageLogic.getUnavailableImageURL())) {
@@ -347,7 +368,6 @@ public class KudosJob implements StatefulJob {
 		}
 		
 		//number of connections
-		int numConnections = connectionsLogic.getConnectionsForUserCount(person.getUuid());
 		if(numConnections >= 1){
 			score = score.add(val("hasOneConnection"));
 		}
@@ -356,7 +376,6 @@ public class KudosJob implements StatefulJob {
 		}
 		
 		//number of sent messages
-		int numSentMessages = messagingLogic.getSentMessagesCount(person.getUuid());
 		if(numSentMessages >= 1){
 			score = score.add(val("hasOneSentMessage"));
 		}
@@ -365,7 +384,6 @@ public class KudosJob implements StatefulJob {
 		}
 		
 		//number of status updates
-		int numStatusUpdates = statusLogic.getStatusUpdatesCount(person.getUuid());
 		if(numStatusUpdates >= 1) {
 			score = score.add(val("hasOneStatusUpdate"));
 		}
@@ -387,7 +405,6 @@ public class KudosJob implements StatefulJob {
 			}
 		}
 		*/
-		ExternalIntegrationInfo externalIntegrationInfo = externalIntegrationLogic.getExternalIntegrationInfo(person.getUuid());
 		if(externalIntegrationInfo != null){
 			if(externalIntegrationInfo.isTwitterAlreadyConfigured()) {
 				score = score.add(val("twitterEnabled"));
@@ -396,7 +413,6 @@ public class KudosJob implements StatefulJob {
 		
 		//if gallery enabled, number of gallery pictures
 		if(sakaiProxy.isProfileGalleryEnabledGlobally()){
-			int numGalleryPictures = imageLogic.getGalleryImagesCount(person.getUuid());
 			if(numGalleryPictures >= 1) {
 				score = score.add(val("hasOneGalleryPicture"));
 			}
@@ -424,10 +440,10 @@ public class KudosJob implements StatefulJob {
 			return;
 		}
 		
-		log.info("KudosJob run");
+		log.info("KudosJob run" + (incremental ? " (incremental)" : ""));
 		
 		//start a session for admin so we can get full profiles
-		Session session = sessionManager.startSession();
+		final Session session = sessionManager.startSession();
         sessionManager.setCurrentSession(session);
         session.setUserEid("admin");
         session.setUserId("admin");
@@ -436,38 +452,139 @@ public class KudosJob implements StatefulJob {
 		BigDecimal total = getTotal();
 		log.info("Total score possible: " + total.setScale(2, RoundingMode.HALF_UP));
 		
-		//get total number of records
-		List<String> profileUuids = profileLogic.getAllSakaiPersonIds();
+		int threads = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.kudos.job.threads", null), DEFAULT_THREADS);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
 		
-		//iterate over list getting a chunk of profiles at a time
-		for(String userUuid: profileUuids) {
-		
-			Person person = profileLogic.getPerson(userUuid);
-			if(person == null){
-				continue;
-			}
-			
-			log.info("Processing user: " + userUuid + " (" + person.getDisplayName() + ")");
+		int processed = 0;
+		try {
+			if(incremental) {
 				
-			//get score for user
-			BigDecimal score = getScore(person);
-			BigDecimal percentage = getScoreAsPercentage(score, total);
-			int adjustedScore = getScoreOutOfTen(score, total);
-
-			//save it
-			if(kudosLogic.updateKudos(userUuid, adjustedScore, percentage)) {
-				log.info("Kudos updated for user: " + userUuid + ", score: " + score.setScale(2, RoundingMode.HALF_UP) + ", percentage: " + percentage + ", adjustedScore: " + adjustedScore);
+				//only those that need it
+				List<String> profileUuids = kudosLogic.getUserIdsForKudosRecalculation();
+				log.info("Users to process: " + profileUuids.size());
+				
+				for(int i = 0; i < profileUuids.size(); i += CHUNK_SIZE) {
+					List<String> chunk = profileUuids.subList(i, Math.min(i + CHUNK_SIZE, profileUuids.size()));
+					processed += processChunk(chunk, total, executor, session);
+				}
+				
+			} else {
+				
+				//iterate over everyone getting a chunk of ids at a time
+				int start = 0;
+				List<String> chunk = dao.getAllSakaiPersonIds(start, CHUNK_SIZE);
+				while(!chunk.isEmpty()) {
+					processed += processChunk(chunk, total, executor, session);
+					
+					start += CHUNK_SIZE;
+					chunk = dao.getAllSakaiPersonIds(start, CHUNK_SIZE);
+				}
 			}
+		} catch (InterruptedException e) {
+			log.warn("KudosJob interrupted, stopping.");
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdownNow();
 			
-			
+			session.setUserId(null);
+			session.setUserEid(null);
 		}
 		
-		session.setUserId(null);
-		session.setUserEid(null);
-		
+		log.info("Kudos updated for " + processed + " users");
 		log.info("KudosJob finished");
 	}
 	
+	/**
+	 * Calculate and save the kudos for a chunk of users
+	 * @param userUuids		uuids of the users in this chunk
+	 * @param total			total possible score
+	 * @param executor		pool to calculate the scores on
+	 * @param session		admin session to use in the worker threads
+	 * @return the number of users that were updated
+	 * @throws InterruptedException
+	 */
+	private int processChunk(List<String> userUuids, final BigDecimal total, ExecutorService executor, final Session session) throws InterruptedException {
+		
+		//load everything for the chunk up front
+		List<Person> persons = profileLogic.getPersons(sakaiProxy.getUsers(userUuids));
+		
+		final Map<String, Integer> connectionsCounts = dao.getConnectionsCounts(userUuids);
+		final Map<String, Integer> sentMessagesCounts = dao.getSentMessagesCounts(userUuids);
+		final Map<String, Integer> statusUpdatesCounts = dao.getStatusUpdatesCounts(userUuids);
+		final Map<String, Integer> galleryImagesCounts = sakaiProxy.isProfileGalleryEnabledGlobally() ? dao.getGalleryImagesCounts(userUuids) : new HashMap<String, Integer>();
+		
+		final Map<String, ExternalIntegrationInfo> externalIntegrationInfos = new HashMap<String, ExternalIntegrationInfo>();
+		for(ExternalIntegrationInfo info : dao.getExternalIntegrationInfos(userUuids)) {
+			externalIntegrationInfos.put(info.getUserUuid(), info);
+		}
+		
+		//score on the pool
+		List<Callable<ProfileKudos>> tasks = new ArrayList<Callable<ProfileKudos>>();
+		for(final Person person : persons) {
+			tasks.add(new Callable<ProfileKudos>() {
+				public ProfileKudos call() {
+					sessionManager.setCurrentSession(session);
+					
+					String userUuid = person.getUuid();
+					try {
+						BigDecimal score = getScore(person, 
+								count(connectionsCounts, userUuid), 
+								count(sentMessagesCounts, userUuid), 
+								count(statusUpdatesCounts, userUuid), 
+								count(galleryImagesCounts, userUuid), 
+								externalIntegrationInfos.get(userUuid));
+						
+						ProfileKudos k = new ProfileKudos();
+						k.setUserUuid(userUuid);
+						k.setScore(getScoreOutOfTen(score, total));
+						k.setPercentage(getScoreAsPercentage(score, total));
+						k.setDateAdded(new Date());
+						
+						if(log.isDebugEnabled()) {
+							log.debug("Kudos calculated for user: " + userUuid + ", score: " + score.setScale(2, RoundingMode.HALF_UP) + ", percentage: " + k.getPercentage() + ", adjustedScore: " + k.getScore());
+						}
+						return k;
+					} catch (Exception e) {
+						log.error("KudosJob failed for user: " + userUuid + ". " + e.getClass() + ": " + e.getMessage());
+						return null;
+					}
+				}
+			});
+		}
+		
+		List<ProfileKudos> kudos = new ArrayList<ProfileKudos>();
+		for(Future<ProfileKudos> f : executor.invokeAll(tasks)) {
+			try {
+				ProfileKudos k = f.get();
+				if(k != null) {
+					kudos.add(k);
+				}
+			} catch (ExecutionException e) {
+				log.error("KudosJob failed. " + e.getClass() + ": " + e.getMessage());
+			}
+		}
+		
+		//save the chunk
+		if(!kudosLogic.updateKudos(kudos)) {
+			log.error("KudosJob failed to save kudos for " + kudos.size() + " users");
+			return 0;
+		}
+		
+		log.info("Kudos updated for " + kudos.size() + " users");
+		return kudos.size();
+	}
+	
+	/**
+	 * Helper to get a count for a user from a map of counts
+	 * @param counts	map of counts
+	 * @param userUuid	uuid of the user
+	 * @return count, or 0 if there is none
+	 */
+	private int count(Map<String, Integer> counts, String userUuid) {
+		Integer c = counts.get(userUuid);
+		return c == null ? 0 : c;
+	}
+	
 	/**
 	 * Are multiples of this job currently running?
 	 * @param context
@@ -563,19 +680,16 @@ public class KudosJob implements StatefulJob {
 	private ProfileImageLogic imageLogic;
 	
 	@Setter
-	private ProfileConnectionsLogic connectionsLogic;
+	private ProfileDao dao;
 	
 	@Setter
-	private ProfileMessagingLogic messagingLogic;
-	
-	@Setter
-	private ProfileStatusLogic statusLogic;
-	
-	@Setter
-	private ProfileExternalIntegrationLogic externalIntegrationLogic;
+	private SessionManager sessionManager;
 	
+	/**
+	 * Only process users whose kudos needs to be recalculated
+	 */
 	@Setter
-	private SessionManager sessionManager;
+	private boolean incremental = false;
 	
 	
 }
@@ -0,0 +1,358 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.logic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Setter;
+
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.email.api.EmailService;
+import org.sakaiproject.emailtemplateservice.model.RenderedTemplate;
+import org.sakaiproject.emailtemplateservice.service.EmailTemplateService;
+import org.sakaiproject.profile2.util.ProfileConstants;
+import org.sakaiproject.user.api.PreferencesService;
+import org.sakaiproject.user.api.User;
+import org.sakaiproject.user.api.UserDirectoryService;
+import org.sakaiproject.user.api.UserNotDefinedException;
+
+/**
+ * Implementation of NotificationDispatcher API
+ *
+ * <p>The number of threads and the queue size can be set via profile2.notification.threads and profile2.notification.queue.size.
+ * The queue size is the number of batches, not recipients. When the queue is full, new notifications are dropped and counted as failed.</p>
+ *
+ */
+public class NotificationDispatcherImpl implements NotificationDispatcher {
+
+	private static final Logger log = Logger.getLogger(NotificationDispatcherImpl.class);
+
+	//number of recipients handled by each task
+	private static final int BATCH_SIZE = 100;
+
+	//defaults if not specified in sakai.properties
+	private static final int DEFAULT_THREADS = 2;
+	private static final int DEFAULT_QUEUE_SIZE = 1000;
+
+	private static final String MULTIPART_BOUNDARY = "======sakai-multi-part-boundary======";
+	private static final String BOUNDARY_LINE = "\n\n--"+MULTIPART_BOUNDARY+"\n";
+	private static final String TERMINATION_LINE = "\n\n--"+MULTIPART_BOUNDARY+"--\n\n";
+	private static final String MIME_ADVISORY = "This message is for MIME-compliant mail readers.";
+	private static final String PLAIN_TEXT_HEADERS= "Content-Type: text/plain\n\n";
+	private static final String HTML_HEADERS = "Content-Type: text/html; charset=ISO-8859-1\n\n";
+	private static final String HTML_END = "\n  </body>\n</html>\n";
+
+	private ThreadPoolExecutor executor;
+
+	private final AtomicLong queued = new AtomicLong();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong totalLatency = new AtomicLong();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean dispatch(List<String> userUuids, String emailTemplateKey, Map<String,String> replacementValues) {
+		Map<String, Map<String,String>> replacementValuesByUser = new LinkedHashMap<String, Map<String,String>>();
+		for(String userUuid: userUuids) {
+			replacementValuesByUser.put(userUuid, replacementValues);
+		}
+		return dispatch(emailTemplateKey, replacementValuesByUser);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean dispatch(String emailTemplateKey, Map<String, Map<String,String>> replacementValuesByUser) {
+
+		boolean accepted = true;
+
+		List<String> userUuids = new ArrayList<String>(replacementValuesByUser.keySet());
+		for(int i = 0; i < userUuids.size(); i += BATCH_SIZE) {
+			List<String> batch = userUuids.subList(i, Math.min(i + BATCH_SIZE, userUuids.size()));
+
+			//callers may reuse their maps, so take a copy of the values now
+			Map<String, Map<String,String>> recipients = new LinkedHashMap<String, Map<String,String>>();
+			for(String userUuid: batch) {
+				recipients.put(userUuid, new HashMap<String,String>(replacementValuesByUser.get(userUuid)));
+			}
+
+			try {
+				executor.execute(new NotificationTask(emailTemplateKey, recipients));
+				queued.addAndGet(recipients.size());
+			} catch (RejectedExecutionException e) {
+				log.warn("NotificationDispatcher queue is full, dropping email: " + emailTemplateKey + " for " + recipients.size() + " users");
+				failed.addAndGet(recipients.size());
+				accepted = false;
+			}
+		}
+
+		return accepted;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean sendEmail(String userUuid, String subject, String message) {
+		try {
+			return send(userDirectoryService.getUser(userUuid), subject, message);
+		} catch (UserNotDefinedException e) {
+			log.error("NotificationDispatcher.sendEmail() failed for userId: " + userUuid + " : " + e.getClass() + " : " + e.getMessage());
+		}
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getQueuedCount() {
+		return queued.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getSentCount() {
+		return sent.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getAverageLatency() {
+		long count = sent.get();
+		return count == 0 ? 0 : totalLatency.get() / count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Renders and sends the email for a batch of recipients
+	 */
+	private class NotificationTask implements Runnable {
+
+		private final String emailTemplateKey;
+		private final Map<String, Map<String,String>> recipients;
+		private final long queuedTime = System.currentTimeMillis();
+
+		public NotificationTask(String emailTemplateKey, Map<String, Map<String,String>> recipients) {
+			this.emailTemplateKey = emailTemplateKey;
+			this.recipients = recipients;
+		}
+
+		public void run() {
+
+			List<User> users = userDirectoryService.getUsers(recipients.keySet());
+			if(users.size() < recipients.size()) {
+				log.error("NotificationDispatcher could not find " + (recipients.size() - users.size()) + " users to send email: " + emailTemplateKey);
+				failed.addAndGet(recipients.size() - users.size());
+			}
+
+			//rendered templates for this batch, keyed by locale and replacement values
+			Map<List<Object>, RenderedTemplate> rendered = new HashMap<List<Object>, RenderedTemplate>();
+
+			for(int i = 0; i < users.size(); i++) {
+				User user = users.get(i);
+				try {
+					Map<String,String> replacementValues = recipients.get(user.getId());
+					Locale locale = preferencesService.getLocale(user.getId());
+
+					List<Object> key = Arrays.<Object>asList(locale, replacementValues);
+					RenderedTemplate template = rendered.get(key);
+					if(template == null) {
+						template = emailTemplateService.getRenderedTemplate(emailTemplateKey, locale, replacementValues);
+						if(template == null) {
+							//same for everyone so give up on the rest
+							log.error("NotificationDispatcher no template with key: " + emailTemplateKey);
+							failed.addAndGet(users.size() - i);
+							return;
+						}
+						rendered.put(key, template);
+					}
+
+					if(send(user, template.getRenderedSubject(), template.getRenderedHtmlMessage())) {
+						totalLatency.addAndGet(System.currentTimeMillis() - queuedTime);
+					}
+				} catch (Exception e) {
+					log.error("NotificationDispatcher error sending email to user: " + user.getId() + " with key: " + emailTemplateKey + " : " + e.getClass() + " : " + e.getMessage());
+					failed.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Format and send a message to a user, updating the counts
+	 * @param user		User to send to
+	 * @param subject	subject of message
+	 * @param message	complete with newlines and any links.
+	 * @return true if sent, false if not
+	 */
+	private boolean send(User user, String subject, String message) {
+
+		if (StringUtils.isBlank(user.getEmail())){
+			log.error("NotificationDispatcher.sendEmail() failed. No email for userId: " + user.getId());
+			failed.incrementAndGet();
+			return false;
+		}
+
+		emailService.sendToUsers(Collections.singleton(user), getHeaders(user.getEmail(), subject), formatMessage(subject, message));
+		sent.incrementAndGet();
+
+		if(log.isDebugEnabled()) {
+			log.debug("Email sent to: " + user.getId());
+		}
+		return true;
+	}
+
+	/** helper methods for formatting the message */
+	private String formatMessage(String subject, String message) {
+		StringBuilder sb = new StringBuilder();
+		sb.append(MIME_ADVISORY);
+		sb.append(BOUNDARY_LINE);
+		sb.append(PLAIN_TEXT_HEADERS);
+		sb.append(StringEscapeUtils.escapeHtml(message));
+		sb.append(BOUNDARY_LINE);
+		sb.append(HTML_HEADERS);
+		sb.append(htmlPreamble(subject));
+		sb.append(message);
+		sb.append(HTML_END);
+		sb.append(TERMINATION_LINE);
+
+		return sb.toString();
+	}
+
+	private String htmlPreamble(String subject) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\"\n");
+		sb.append("\"http://www.w3.org/TR/html4/loose.dtd\">\n");
+		sb.append("<html>\n");
+		sb.append("<head><title>");
+		sb.append(subject);
+		sb.append("</title></head>\n");
+		sb.append("<body>\n");
+
+		return sb.toString();
+	}
+
+	private List<String> getHeaders(String emailTo, String subject){
+		List<String> headers = new ArrayList<String>();
+		headers.add("MIME-Version: 1.0");
+		headers.add("Content-Type: multipart/alternative; boundary=\""+MULTIPART_BOUNDARY+"\"");
+		headers.add(formatSubject(subject));
+		headers.add(getFrom());
+		if (StringUtils.isNotBlank(emailTo)) {
+			headers.add("To: " + emailTo);
+		}
+
+		return headers;
+	}
+
+	private String getFrom(){
+		StringBuilder sb = new StringBuilder();
+		sb.append("From: ");
+		sb.append(serverConfigurationService.getString("ui.service", ProfileConstants.SAKAI_PROP_SERVICE_NAME));
+		sb.append(" <no-reply@");
+		sb.append(serverConfigurationService.getServerName());
+		sb.append(">");
+
+		return sb.toString();
+	}
+
+	private String formatSubject(String subject) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Subject: ");
+		sb.append(subject);
+
+		return sb.toString();
+	}
+
+	public void init() {
+		int threads = serverConfigurationService.getInt("profile2.notification.threads", DEFAULT_THREADS);
+		int queueSize = serverConfigurationService.getInt("profile2.notification.queue.size", DEFAULT_QUEUE_SIZE);
+
+		log.info("Profile2 NotificationDispatcher init() with " + threads + " threads and a queue of " + queueSize);
+
+		executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Profile2 NotificationDispatcher " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	public void destroy() {
+		log.info("Profile2 NotificationDispatcher destroy(). Queued: " + getQueuedCount() + ", sent: " + getSentCount() + ", failed: " + getFailedCount() + ", average latency: " + getAverageLatency() + "ms");
+
+		//finish what is already queued, but don't hold up shutdown for too long
+		executor.shutdown();
+		try {
+			if(!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+				log.warn("Profile2 NotificationDispatcher did not finish sending, " + executor.shutdownNow().size() + " batches dropped");
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Setter
+	private EmailService emailService;
+
+	@Setter
+	private EmailTemplateService emailTemplateService;
+
+	@Setter
+	private UserDirectoryService userDirectoryService;
+
+	@Setter
+	private PreferencesService preferencesService;
+
+	@Setter
+	private ServerConfigurationService serverConfigurationService;
+
+}
@@ -16,21 +16,27 @@
 package org.sakaiproject.profile2.logic;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import lombok.Setter;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
-import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.profile2.cache.CacheLoader;
 import org.sakaiproject.profile2.cache.CacheManager;
+import org.sakaiproject.profile2.cache.ProfileCache;
 import org.sakaiproject.profile2.dao.ProfileDao;
 import org.sakaiproject.profile2.hbm.model.ProfileFriend;
 import org.sakaiproject.profile2.model.BasicConnection;
 import org.sakaiproject.profile2.model.Person;
+import org.sakaiproject.profile2.presence.ProfilePresenceService;
 import org.sakaiproject.profile2.types.EmailType;
 import org.sakaiproject.profile2.types.PrivacyType;
 import org.sakaiproject.profile2.util.ProfileConstants;
@@ -46,9 +52,41 @@ public class ProfileConnectionsLogicImpl implements ProfileConnectionsLogic {
 
 	private static final Logger log = Logger.getLogger(ProfileConnectionsLogicImpl.class);
 
-	private Cache cache;
+	private ProfileCache<String, Set<String>> cache;
 	private final String CACHE_NAME = "org.sakaiproject.profile2.cache.connections";
 	
+	//counts of connections and requests for each user, used for badges and paging
+	private ProfileCache<String, Integer> countCache;
+	private final String COUNT_CACHE_NAME = "org.sakaiproject.profile2.cache.connections.counts";
+	private final String CONNECTIONS_COUNT_KEY = "connections:";
+	private final String REQUESTS_COUNT_KEY = "requests:";
+	
+	//the sets of connections are never modified, when a connection changes a new set is put into the cache in its place
+	private final CacheLoader<String, Set<String>> connectionsLoader = new CacheLoader<String, Set<String>>() {
+		public Set<String> load(String userUuid) {
+			log.debug("Fetching connections from dao for: " + userUuid);
+			List<String> userUuids = dao.getConfirmedConnectionUserIdsForUser(userUuid);
+			
+			//if it is null we dont want to return it like that
+			if(userUuids == null) {
+				return Collections.emptySet();
+			}
+			return Collections.unmodifiableSet(new HashSet<String>(userUuids));
+		}
+	};
+	
+	private final CacheLoader<String, Integer> connectionsCountLoader = new CacheLoader<String, Integer>() {
+		public Integer load(String key) {
+			return dao.getConfirmedConnectionsCountForUser(StringUtils.removeStart(key, CONNECTIONS_COUNT_KEY));
+		}
+	};
+	
+	private final CacheLoader<String, Integer> requestsCountLoader = new CacheLoader<String, Integer>() {
+		public Integer load(String key) {
+			return dao.getRequestedConnectionsCountForUser(StringUtils.removeStart(key, REQUESTS_COUNT_KEY));
+		}
+	};
+	
 	
 	/**
  	 * {@inheritDoc}
@@ -66,12 +104,39 @@ public class ProfileConnectionsLogicImpl implements ProfileConnectionsLogic {
 		return profileLogic.getPersons(users);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<Person> getConnectionsForUser(final String userUuid, final int offset, final int limit) {
+		List<User> users = getConnectedUsers(userUuid);
+		return profileLogic.getPersons(getPageOfUsers(users, offset, limit));
+	}
+	
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<String> getConnectionUserIdsForUser(final String userUuid) {
+		return getConfirmedConnectionUserIdsForUser(userUuid);
+	}
 	
 	/**
  	 * {@inheritDoc}
  	 */	
 	public int getConnectionsForUserCount(final String userId) {
-		return getConnectionsForUser(userId).size();
+		
+		//same rules as the list itself
+		if(!isConnectionListAllowed(userId)) {
+			return 0;
+		}
+		
+		//if we already have the connections, just count them
+		Set<String> connections = cache.get(userId);
+		if(connections != null) {
+			return connections.size();
+		}
+		
+		return countCache.get(CONNECTIONS_COUNT_KEY + userId, connectionsCountLoader);
 	}
 	
 	/**
@@ -82,11 +147,20 @@ public class ProfileConnectionsLogicImpl implements ProfileConnectionsLogic {
 		return profileLogic.getPersons(users);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */	
+	public List<Person> getConnectionRequestsForUser(final String userId, final int offset, final int limit) {
+		List<User> users = sakaiProxy.getUsers(dao.getRequestedConnectionUserIdsForUser(userId));
+		return profileLogic.getPersons(getPageOfUsers(users, offset, limit));
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */	
 	public int getConnectionRequestsForUserCount(final String userId) {
-		return getConnectionRequestsForUser(userId).size();
+		
+		return countCache.get(REQUESTS_COUNT_KEY + userId, requestsCountLoader);
 	}
 
 	/**
@@ -100,16 +174,11 @@ public class ProfileConnectionsLogicImpl implements ProfileConnectionsLogic {
 			return true;
 		}
 		
-		//get friends of current user
-		//TODO change this to be a single lookup rather than iterating over a list
-		List<String> friendUuids = getConfirmedConnectionUserIdsForUser(userY);
+		//get friends of current user, as a set so this is a single lookup
+		Set<String> friendUuids = getConfirmedConnectionUserIdSetForUser(userY);
 		
-		//if list of confirmed friends contains this user, they are a friend
-		if(friendUuids.contains(userX)) {
-			return true;
-		}
-		
-		return false;
+		//if set of confirmed friends contains this user, they are a friend
+		return friendUuids.contains(userX);
 	}
 	
 
@@ -220,6 +289,7 @@ public class ProfileConnectionsLogicImpl implements ProfileConnectionsLogic {
 		if(dao.addNewConnection(profileFriend)) {
 			
 			log.info("User: " + userId + " requested friend: " + friendId);  
+			invalidateCounts(friendId);
 
 			//send email notification
 			sendConnectionEmailNotification(friendId, userId, EmailType.EMAIL_NOTIFICATION_REQUEST);
@@ -275,12 +345,17 @@ public class ProfileConnectionsLogicImpl implements ProfileConnectionsLogic {
 		if(dao.updateConnection(profileFriend)) {
 			
 			log.info("User: " + fromUser + " confirmed friend request from: " + toUser); 
+			invalidateCounts(fromUser, toUser);
+			
 			//send email notification
 			sendConnectionEmailNotification(fromUser, toUser, EmailType.EMAIL_NOTIFICATION_CONFIRM);
 			
-			//invalidate the confirmed connection caches for each user as they are now stale
-			evictFromCache(fromUser);
-			evictFromCache(toUser);
+			//update the confirmed connection caches for each user
+			addToConnectionCache(fromUser, toUser);
+			addToConnectionCache(toUser, fromUser);
+			privacyLogic.clearCachedDecisions();
+			kudosLogic.invalidateKudos(fromUser);
+			kudosLogic.invalidateKudos(toUser);
 			
 			return true;
 		} 
@@ -315,6 +390,7 @@ public class ProfileConnectionsLogicImpl implements ProfileConnectionsLogic {
 		//delete
 		if(dao.removeConnection(profileFriend)) {
 			log.info("User: " + toUser + " ignored friend request from: " + fromUser);  
+			invalidateCounts(toUser);
 			return true;
 		}
 		
@@ -348,10 +424,17 @@ public class ProfileConnectionsLogicImpl implements ProfileConnectionsLogic {
 		//delete
 		if(dao.removeConnection(profileFriend)) {
 			log.info("User: " + userId + " removed friend: " + friendId);  
+			invalidateCounts(userId, friendId);
+			
+			//update the confirmed connection caches for each user
+			removeFromConnectionCache(userId, friendId);
+			removeFromConnectionCache(friendId, userId);
+			privacyLogic.clearCachedDecisions();
+			kudosLogic.invalidateKudos(userId);
+			kudosLogic.invalidateKudos(friendId);
 			
-			//invalidate the confirmed connection caches for each user as they are now stale
-			evictFromCache(userId);
-			evictFromCache(friendId);
+			//they shouldn't see each other's wall items in their feeds any more
+			dao.removeFeedItemsForConnection(userId, friendId);
 			
 			return true;
 		}
@@ -409,59 +492,14 @@ public class ProfileConnectionsLogicImpl implements ProfileConnectionsLogic {
 		
 		//TODO check prefs and privacy for the user. has the user allowed it?
 		
-		
-		//check if user has an active session
-		boolean active = sakaiProxy.isUserActive(userUuid);
-		if(!active) {
-			return ProfileConstants.ONLINE_STATUS_OFFLINE;
-		}
-		
-		//if active, when was their last event
-		Long lastEventTime = sakaiProxy.getLastEventTimeForUser(userUuid);
-		if(lastEventTime == null) {
-			return ProfileConstants.ONLINE_STATUS_OFFLINE;
-		}
-		
-		//if time between now and last event is less than the interval, they are online.
-		long timeNow = new Date().getTime();
-		
-		if((timeNow - lastEventTime.longValue()) < ProfileConstants.ONLINE_INACTIVITY_INTERVAL) {
-			return ProfileConstants.ONLINE_STATUS_ONLINE;
-		}
-		
-		//user is online but inactive
-		return ProfileConstants.ONLINE_STATUS_AWAY;
+		return presenceService.getOnlineStatus(userUuid);
 	}
 	
 	/**
  	 * {@inheritDoc}
  	 */
 	public Map<String, Integer> getOnlineStatus(List<String> userUuids) {
-		
-		//get the list of users that have active sessions
-		List<String> activeUuids = sakaiProxy.getActiveUsers(userUuids);
-		
-		//get last event times for the new list
-		Map<String, Long> lastEventTimes = sakaiProxy.getLastEventTimeForUsers(activeUuids);
-
-		long timeNow = new Date().getTime();
-		
-		//iterate over original list, create the map
-		Map<String, Integer> map = new HashMap<String, Integer>();
-		for(String uuid: userUuids) {
-			if(lastEventTimes.containsKey(uuid)){
-				//calc time, iff less than interval, online, otherwise away
-				if((timeNow - lastEventTimes.get(uuid).longValue()) < ProfileConstants.ONLINE_INACTIVITY_INTERVAL) {
-					map.put(uuid, ProfileConstants.ONLINE_STATUS_ONLINE);
-				} else {
-					map.put(uuid, ProfileConstants.ONLINE_STATUS_AWAY);
-				}
-			} else {
-				//no session/no last event time
-				map.put(uuid, ProfileConstants.ONLINE_STATUS_OFFLINE);
-			}
-		}
-		return map;
+		return presenceService.getOnlineStatus(userUuids);
 	}
 	
 	
@@ -474,50 +512,78 @@ public class ProfileConnectionsLogicImpl implements ProfileConnectionsLogic {
 	 * @return List<User>, will be empty if none or not allowed.
 	 */
 	private List<User> getConnectedUsers(final String userUuid) {
+		
+		//check auth and privacy
+		if(!isConnectionListAllowed(userUuid)) {
+			return new ArrayList<User>();
+		}
+		
+		return sakaiProxy.getUsers(getConfirmedConnectionUserIdsForUser(userUuid));
+	}
+	
+	/**
+	 * Check auth and privacy for viewing the list of users that are connected to this user.
+	 * @param userUuid
+	 * @return true if the current user can see the list
+	 */
+	private boolean isConnectionListAllowed(final String userUuid) {
 		//check auth and get currentUserUuid
 		String currentUserUuid = sakaiProxy.getCurrentUserId();
 		if(currentUserUuid == null) {
 			throw new SecurityException("You must be logged in to get a connection list.");
 		}
 		
-		List<User> users = new ArrayList<User>();
+		return privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_MYFRIENDS);
+	}
+	
+
+	/**
+	 * Sort a list of users by display name, the same order as a sorted list of Persons, and get a page of it.
+	 * Display names live in the user directory so this can't be done in the database, 
+	 * but it means only the users on the page need to be turned into Persons.
+	 * 
+	 * @param users		list of users, will be sorted
+	 * @param offset	index of the first user to return
+	 * @param limit		maximum number of users to return
+	 * @return the page of users, empty if the offset is past the end of the list
+	 */
+	private List<User> getPageOfUsers(List<User> users, int offset, int limit) {
 		
-		//check privacy
-		if(!privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_MYFRIENDS)) {
-			return users;
+		if(offset >= users.size()) {
+			return new ArrayList<User>();
 		}
 		
-		users = sakaiProxy.getUsers(getConfirmedConnectionUserIdsForUser(userUuid));
-		return users;
+		Collections.sort(users, new Comparator<User>() {
+			public int compare(User u1, User u2) {
+				int result = StringUtils.defaultString(u1.getDisplayName()).compareTo(StringUtils.defaultString(u2.getDisplayName()));
+				return result != 0 ? result : u1.getId().compareTo(u2.getId());
+			}
+		});
+		
+		return new ArrayList<User>(users.subList(offset, (int)Math.min((long)offset + limit, users.size())));
 	}
 	
-
 	/**
 	 * Helper method to get the list of confirmed connections for a user as a List<String> of uuids.
 	 * 
-	 * <p>First checks the cache and then goes to the dao if necessary.</p>
-	 * 
 	 * @param userUuid
 	 * @return List<String> of uuids, empty if none.
 	 */
 	private List<String> getConfirmedConnectionUserIdsForUser(final String userUuid) {
-
-		List<String> userUuids = new ArrayList<String>();
-		
-		if(cache.containsKey(userUuid)){
-			log.debug("Fetching connections from cache for: " + userUuid);
-			userUuids = (List<String>)cache.get(userUuid);
-		} else {
-			userUuids = dao.getConfirmedConnectionUserIdsForUser(userUuid);
-			if(userUuids != null){
-				log.debug("Adding connections to cache for: " + userUuid);
-				cache.put(userUuid, userUuids);
-			} else {
-				//if it is null we dont want to return it like that
-				userUuids = new ArrayList<String>();
-			}
-		}
-		return userUuids;
+		return new ArrayList<String>(getConfirmedConnectionUserIdSetForUser(userUuid));
+	}
+	
+	/**
+	 * Helper method to get the confirmed connections for a user as an immutable Set<String> of uuids.
+	 * 
+	 * <p>First checks the cache and then goes to the dao if necessary. The sets in the cache are never modified, 
+	 * when a connection changes a new set is put into the cache in its place.</p>
+	 * 
+	 * @param userUuid
+	 * @return Set<String> of uuids, empty if none.
+	 */
+	private Set<String> getConfirmedConnectionUserIdSetForUser(final String userUuid) {
+		return cache.get(userUuid, connectionsLoader);
 	}
 	
 	
@@ -572,17 +638,58 @@ public class ProfileConnectionsLogicImpl implements ProfileConnectionsLogic {
 	}
 	
 	/**
-	 * Helper to evict an item from a cache. 
-	 * @param cacheKey	the id for the data in the cache
+	 * Helper to add a connection to the cached set of connections for a user. 
+	 * If the user's connections are not cached they will be loaded in full when next needed.
+	 * @param userUuid		the user whose connections have changed
+	 * @param friendUuid	the user that is now connected
+	 */
+	private synchronized void addToConnectionCache(String userUuid, String friendUuid) {
+		Set<String> cached = cache.get(userUuid);
+		if(cached != null) {
+			Set<String> connections = new HashSet<String>(cached);
+			connections.add(friendUuid);
+			cache.put(userUuid, Collections.unmodifiableSet(connections));
+			log.debug("Added connection " + friendUuid + " to cache for: " + userUuid);
+		} else {
+			//stop any load in progress from caching what it read before the change
+			cache.remove(userUuid);
+		}
+	}
+	
+	/**
+	 * Helper to remove a connection from the cached set of connections for a user. 
+	 * If the user's connections are not cached they will be loaded in full when next needed.
+	 * @param userUuid		the user whose connections have changed
+	 * @param friendUuid	the user that is no longer connected
 	 */
-	private void evictFromCache(String cacheKey) {
-		cache.remove(cacheKey);
-		log.info("Evicted data in cache for key: " + cacheKey);
+	private synchronized void removeFromConnectionCache(String userUuid, String friendUuid) {
+		Set<String> cached = cache.get(userUuid);
+		if(cached != null) {
+			Set<String> connections = new HashSet<String>(cached);
+			connections.remove(friendUuid);
+			cache.put(userUuid, Collections.unmodifiableSet(connections));
+			log.debug("Removed connection " + friendUuid + " from cache for: " + userUuid);
+		} else {
+			//stop any load in progress from caching what it read before the change
+			cache.remove(userUuid);
+		}
 	}
 
 	
+	/**
+	 * Helper to remove the cached connection and request counts for some users, after their connections have changed.
+	 * @param userUuids	the users whose connections have changed
+	 */
+	private void invalidateCounts(String... userUuids) {
+		for(String userUuid : userUuids) {
+			countCache.remove(CONNECTIONS_COUNT_KEY + userUuid);
+			countCache.remove(REQUESTS_COUNT_KEY + userUuid);
+		}
+	}
+	
 	public void init() {
-		cache = cacheManager.createCache(CACHE_NAME);
+		cache = cacheManager.createProfileCache(CACHE_NAME);
+		countCache = cacheManager.createProfileCache(COUNT_CACHE_NAME);
 	}
 	
 	@Setter
@@ -603,7 +710,13 @@ public class ProfileConnectionsLogicImpl implements ProfileConnectionsLogic {
 	@Setter
 	private ProfilePreferencesLogic preferencesLogic;
 	
+	@Setter
+	private ProfileKudosLogic kudosLogic;
+	
 	@Setter
 	private CacheManager cacheManager;
+	
+	@Setter
+	private ProfilePresenceService presenceService;
 
 }
@@ -24,13 +24,13 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.sakaiproject.profile2.dao.ProfileDao;
 import org.sakaiproject.profile2.model.ExternalIntegrationInfo;
+import org.sakaiproject.profile2.twitter.TwitterDispatchService;
+import org.sakaiproject.profile2.twitter.TwitterUpdate;
 import org.sakaiproject.profile2.util.ProfileConstants;
 import org.sakaiproject.profile2.util.ProfileUtils;
 
 import twitter4j.Twitter;
 import twitter4j.TwitterException;
-import twitter4j.TwitterFactory;
-import twitter4j.auth.AccessToken;
 
 /**
  * Implementation of ProfileExternalIntegrationLogic API
@@ -100,14 +100,8 @@ public class ProfileExternalIntegrationLogicImpl implements ProfileExternalInteg
 			//global config
 			Map<String,String> config = getTwitterOAuthConsumerDetails();
 
-			//token for user
-			AccessToken accessToken = new AccessToken(token, secret);
-			
 			//setup
-			TwitterFactory factory = new TwitterFactory();
-			Twitter twitter = factory.getInstance();
-			twitter.setOAuthConsumer(config.get("key"), config.get("secret"));
-			twitter.setOAuthAccessToken(accessToken);
+			Twitter twitter = twitterDispatchService.getTwitter(config.get("key"), config.get("secret"), token, secret);
 			
 			//check
 			try {
@@ -130,53 +124,6 @@ public class ProfileExternalIntegrationLogicImpl implements ProfileExternalInteg
  	 * {@inheritDoc}
  	 */
 	public void sendMessageToTwitter(final String userUuid, String message){
-		//setup class thread to call later
-		class TwitterUpdater implements Runnable{
-			private Thread runner;
-			private String userUuid;
-			private String userToken;
-			private String userSecret;
-			private String message;
-
-			public TwitterUpdater(String userUuid, String userToken, String userSecret, String message) {
-				this.userUuid=userUuid;
-				this.userToken=userToken;
-				this.userSecret=userSecret;
-				this.message=message;
-				
-				runner = new Thread(this,"Profile2 TwitterUpdater thread"); 
-				runner.start();
-			}
-			
-
-			//do it!
-			public synchronized void run() {
-				
-				//global config
-				Map<String,String> config = getTwitterOAuthConsumerDetails();
-
-				//token for user
-				AccessToken accessToken = new AccessToken(userToken, userSecret);
-				
-				//setup
-				TwitterFactory factory = new TwitterFactory();
-				Twitter twitter = factory.getInstance();
-				twitter.setOAuthConsumer(config.get("key"), config.get("secret"));
-				twitter.setOAuthAccessToken(accessToken);
-				
-				try {
-					twitter.updateStatus(message);
-					log.info("Twitter status updated for: " + userUuid); 
-					
-					//post update event
-					sakaiProxy.postEvent(ProfileConstants.EVENT_TWITTER_UPDATE, "/profile/"+userUuid, true);
-				}
-				catch (TwitterException e) {
-					log.error("ProfileLogic.sendMessageToTwitter() failed. " + e.getClass() + ": " + e.getMessage());  
-				}
-			}
-		}
-		
 		//is twitter enabled
 		if(!sakaiProxy.isTwitterIntegrationEnabledGlobally()){
 			return;
@@ -194,8 +141,9 @@ public class ProfileExternalIntegrationLogicImpl implements ProfileExternalInteg
 		//Hardcoded limit because 140 is the Twitter requirement so no need to make configurable
 		message = ProfileUtils.truncate(message, 140, false); 
 		
-		//instantiate class to send the data
-		new TwitterUpdater(userUuid, token, secret, message);
+		//send in the background
+		Map<String,String> config = getTwitterOAuthConsumerDetails();
+		twitterDispatchService.send(new TwitterUpdate(userUuid, config.get("key"), config.get("secret"), token, secret, message));
 	}
 	
 	/**
@@ -242,5 +190,8 @@ public class ProfileExternalIntegrationLogicImpl implements ProfileExternalInteg
 	@Setter
 	private SakaiProxy sakaiProxy;
 	
+	@Setter
+	private TwitterDispatchService twitterDispatchService;
+	
 	
 }
@@ -18,23 +18,36 @@ package org.sakaiproject.profile2.logic;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import lombok.Setter;
 
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.apache.log4j.Logger;
+import org.sakaiproject.profile2.cache.ImageCache;
 import org.sakaiproject.profile2.dao.ProfileDao;
 import org.sakaiproject.profile2.hbm.model.ProfileImageExternal;
 import org.sakaiproject.profile2.hbm.model.ProfileImageOfficial;
 import org.sakaiproject.profile2.hbm.model.ProfileImageUploaded;
+import org.sakaiproject.profile2.image.OfficialImageFetcher;
+import org.sakaiproject.profile2.image.ProfileImageProcessor;
+import org.sakaiproject.profile2.image.ProfileImageProcessor.ScaledImages;
 import org.sakaiproject.profile2.model.GalleryImage;
+import org.sakaiproject.profile2.model.ImageSource;
 import org.sakaiproject.profile2.model.MimeTypeByteArray;
 import org.sakaiproject.profile2.model.Person;
 import org.sakaiproject.profile2.model.ProfileImage;
@@ -111,12 +124,7 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 		
 		image.setDefault(false); //will be overridden if it is actually a default image
 		
-		String defaultImageUrl;
-		if (ProfileConstants.PROFILE_IMAGE_THUMBNAIL == size) {
-			defaultImageUrl = getUnavailableImageThumbnailURL();
-		} else {
-			defaultImageUrl = getUnavailableImageURL();
-		}
+		String defaultImageUrl = getDefaultImageUrl(size);
 		
 		//get current user
 		String currentUserUuid = sakaiProxy.getCurrentUserId();
@@ -188,90 +196,183 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 			return image;
 		}
 		
+		ImageSettings settings = getImageSettings();
+		
 		//check if we have an image for this user type (if enabled)
 		//if we have one, return it. otherwise continue to the rest of the checks.
-		String userTypeImageUrl = getUserTypeImageUrl(userUuid);
+		String userTypeImageUrl = settings.userTypeImagesEnabled ? getUserTypeImageUrl(sakaiProxy.getUserType(userUuid), settings) : null;
 		if(StringUtils.isNotBlank(userTypeImageUrl)){
 			image.setExternalImageUrl(userTypeImageUrl);
 			image.setAltText(getAltText(userUuid, isSameUser, true));
 			return image;
 		}
 		
-		//lookup global image setting, this will be used if no preferences were supplied.
-		int imageType = sakaiProxy.getProfilePictureType();
-		
 		//if we have no prefs, try to get one, it won't be considered if it is still null.
 		if(prefs == null){
 			prefs = preferencesLogic.getPreferencesRecordForUser(userUuid);
 		}
 		
-		//if we have prefs and the conditions are set for a user to be able to make a choice, get the pref.
-		if(prefs != null && sakaiProxy.isUsingOfficialImageButAlternateSelectionEnabled()) {
-			if(prefs.isUseOfficialImage()){
-				imageType = ProfileConstants.PICTURE_SETTING_OFFICIAL;
+		int imageType = getImageType(prefs, settings);
+		
+		if(log.isDebugEnabled()){
+			log.debug("image type: " + imageType);
+			log.debug("size requested: " + size);
+		}
+		
+		//get the image based on the global type/preference
+		Map<String, Integer> imageTypes = Collections.singletonMap(userUuid, imageType);
+		setImage(image, userUuid, null, isSameUser, imageType, size, defaultImageUrl, settings, getImageRecords(imageTypes, settings));
+		
+		return image;
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public Map<String, ProfileImage> getProfileImages(Collection<Person> people, int size) {
+		
+		Map<String, ProfileImage> images = new HashMap<String, ProfileImage>();
+		if(people == null || people.isEmpty()) {
+			return images;
+		}
+		
+		//if no current user we are not logged in (could be from entity provider)
+		String currentUserUuid = sakaiProxy.getCurrentUserId();
+		if(StringUtils.isBlank(currentUserUuid)){
+			throw new SecurityException("Must be logged in to request a profile image.");
+		}
+		
+		String defaultImageUrl = getDefaultImageUrl(size);
+		ImageSettings settings = getImageSettings();
+		
+		Map<String, Person> persons = new LinkedHashMap<String, Person>();
+		for(Person person : people) {
+			persons.put(person.getUuid(), person);
+		}
+		List<String> userUuids = new ArrayList<String>(persons.keySet());
+		
+		//check privacy for everyone in one go
+		Map<String, Boolean> allowed = privacyLogic.isActionAllowedForUsers(userUuids, currentUserUuid, PrivacyType.PRIVACY_OPTION_PROFILEIMAGE);
+		
+		//preferences only matter if users can choose their image. get any that weren't supplied in one go
+		Map<String, ProfilePreferences> preferences = new HashMap<String, ProfilePreferences>();
+		if(settings.officialSelectionEnabled || settings.gravatarEnabled) {
+			List<String> missing = new ArrayList<String>();
+			for(Person person : persons.values()) {
+				if(person.getPreferences() != null) {
+					preferences.put(person.getUuid(), person.getPreferences());
+				} else {
+					missing.add(person.getUuid());
+				}
+			}
+			if(!missing.isEmpty()) {
+				preferences.putAll(preferencesLogic.getPreferencesRecordsForUsers(missing));
 			}
 		}
 		
-		//prefs for gravatar, only if enabled
-		if(prefs != null && sakaiProxy.isGravatarImageEnabledGlobally()) {
-			if(prefs.isUseGravatar()){
-				imageType = ProfileConstants.PICTURE_SETTING_GRAVATAR;
+		//work out the type of image for each user. display names and user types come from the Person, so need no lookups
+		Map<String, Integer> imageTypes = new HashMap<String, Integer>();
+		for(Person person : persons.values()) {
+			String userUuid = person.getUuid();
+			boolean isSameUser = StringUtils.equals(userUuid, currentUserUuid);
+			
+			ProfileImage image = new ProfileImage();
+			image.setDefault(false);
+			images.put(userUuid, image);
+			
+			if(!Boolean.TRUE.equals(allowed.get(userUuid))) {
+				image.setExternalImageUrl(defaultImageUrl);
+				image.setAltText(getAltText(userUuid, person.getDisplayName(), isSameUser, false));
+				image.setDefault(true);
+				continue;
 			}
+			
+			String userTypeImageUrl = getUserTypeImageUrl(person.getType(), settings);
+			if(StringUtils.isNotBlank(userTypeImageUrl)){
+				image.setExternalImageUrl(userTypeImageUrl);
+				image.setAltText(getAltText(userUuid, person.getDisplayName(), isSameUser, true));
+				continue;
+			}
+			
+			imageTypes.put(userUuid, getImageType(preferences.get(userUuid), settings));
 		}
 		
-		if(log.isDebugEnabled()){
-			log.debug("image type: " + imageType);
-			log.debug("size requested: " + size);
+		//get the records for each type of image in one go
+		ImageRecords records = getImageRecords(imageTypes, settings);
+		
+		for(Map.Entry<String, Integer> entry : imageTypes.entrySet()) {
+			String userUuid = entry.getKey();
+			setImage(images.get(userUuid), userUuid, persons.get(userUuid).getDisplayName(), StringUtils.equals(userUuid, currentUserUuid), 
+					entry.getValue(), size, defaultImageUrl, settings, records);
 		}
 		
-		//get the image based on the global type/preference
+		return images;
+	}
+	
+	/**
+	 * Fill in a ProfileImage for a user, once privacy has been checked and the type of image worked out
+	 * 
+	 * @param image				the ProfileImage to fill in
+	 * @param userUuid			uuid of the user
+	 * @param displayName		display name of the user for the alt text, or null to look it up
+	 * @param isSameUser		if the user is the current user
+	 * @param imageType			the type of image, from ProfileConstants.PICTURE_SETTING_x
+	 * @param size				the size requested
+	 * @param defaultImageUrl	url to use if there is no image
+	 * @param settings			image settings
+	 * @param records			records for the users, see getImageRecords
+	 */
+	private void setImage(ProfileImage image, String userUuid, String displayName, boolean isSameUser, int imageType, int size, 
+			String defaultImageUrl, ImageSettings settings, ImageRecords records) {
+		
 		switch (imageType) {
 			case ProfileConstants.PICTURE_SETTING_UPLOAD:
-				MimeTypeByteArray mtba = getUploadedProfileImage(userUuid, size);
+				ImageSource source = getUploadedProfileImage(records.uploaded.get(userUuid), userUuid, size);
 				
 				//if no uploaded image, use the default image url
-				if(mtba == null || mtba.getBytes() == null) {
+				if(source == null) {
 					image.setExternalImageUrl(defaultImageUrl);
 					image.setDefault(true);
 				} else {
-					image.setUploadedImage(mtba.getBytes());
-					image.setMimeType(mtba.getMimeType());
+					image.setSource(source);
+					image.setMimeType(source.getMimeType());
+					image.setLastModified(source.getLastModified());
 				}
-				image.setAltText(getAltText(userUuid, isSameUser, true));
+				image.setAltText(getAltText(userUuid, displayName, isSameUser, true));
 			break;
 			
 			case ProfileConstants.PICTURE_SETTING_URL: 
-				image.setExternalImageUrl(getExternalProfileImageUrl(userUuid, size));
+				image.setExternalImageUrl(getExternalProfileImageUrl(records.external.get(userUuid), userUuid, size));
 				if(StringUtils.equals(image.getExternalImageUrl(), defaultImageUrl)){
 					image.setDefault(true);
 				}
-				image.setAltText(getAltText(userUuid, isSameUser, true));
+				image.setAltText(getAltText(userUuid, displayName, isSameUser, true));
 			break;
 			
 			case ProfileConstants.PICTURE_SETTING_OFFICIAL: 
-				image = getOfficialImage(userUuid,image,defaultImageUrl,isSameUser);
+				setOfficialImage(image, userUuid, size, defaultImageUrl, settings, records);
+				image.setAltText(getAltText(userUuid, displayName, isSameUser, true));
 			break;
 			
 			case ProfileConstants.PICTURE_SETTING_GRAVATAR:
-				String gravatarUrl = getGravatarUrl(userUuid);
+				User user = records.users.get(userUuid);
+				String gravatarUrl = user == null ? null : getGravatarUrlForEmail(user.getEmail());
 				if(StringUtils.isBlank(gravatarUrl)) {
 					image.setExternalImageUrl(defaultImageUrl);
-					image.setAltText(getAltText(userUuid, isSameUser, false));
+					image.setAltText(getAltText(userUuid, displayName, isSameUser, false));
 					image.setDefault(true);
 				} else {
 					image.setExternalImageUrl(gravatarUrl);
-					image.setAltText(getAltText(userUuid, isSameUser, true));
+					image.setAltText(getAltText(userUuid, displayName, isSameUser, true));
 				}
 			break;
 			
 			default:
 				image.setExternalImageUrl(defaultImageUrl);
-				image.setAltText(getAltText(userUuid, isSameUser, false));
+				image.setAltText(getAltText(userUuid, displayName, isSameUser, false));
 				image.setDefault(true);
 			break;
 		}
-		
-		return image;
 	}
 	
 	/**
@@ -284,57 +385,170 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 	 */
 	private ProfileImage getOfficialImage(String userUuid, ProfileImage image,String defaultImageUrl, boolean isSameUser) {
 		
-		String officialImageSource = sakaiProxy.getOfficialImageSource();
+		ImageSettings settings = getImageSettings();
+		Map<String, Integer> imageTypes = Collections.singletonMap(userUuid, ProfileConstants.PICTURE_SETTING_OFFICIAL);
+		
+		setOfficialImage(image, userUuid, ProfileConstants.PROFILE_IMAGE_MAIN, defaultImageUrl, settings, getImageRecords(imageTypes, settings));
+		image.setAltText(getAltText(userUuid, isSameUser, true));
+				
+		return image;
+	}
+	
+	/**
+	 * Fill in the official image for a user from the records that have already been fetched. See getOfficialImage.
+	 */
+	private void setOfficialImage(ProfileImage image, String userUuid, int size, String defaultImageUrl, ImageSettings settings, ImageRecords records) {
+		
+		String officialImageSource = settings.officialImageSource;
 		
 		log.debug("Fetching official image. userUuid: " + userUuid + ", officialImageSource: " + officialImageSource);
 				
 		//check source and get appropriate value
 		if(StringUtils.equals(officialImageSource, ProfileConstants.OFFICIAL_IMAGE_SETTING_URL)){
-			image.setOfficialImageUrl(getOfficialImageUrl(userUuid));
+			image.setOfficialImageUrl(getOfficialImageUrl(records.official.get(userUuid), userUuid));
 			
 			//PRFL-790 if URL security is required, get and set bytes and remove url
-			boolean urlSecurityEnabled = Boolean.valueOf(sakaiProxy.getServerConfigurationParameter("profile2.official.image.url.secure", "false"));
-			if(urlSecurityEnabled && StringUtils.isNotBlank(image.getOfficialImageUrl())) {
+			if(settings.officialUrlSecurityEnabled && StringUtils.isNotBlank(image.getOfficialImageUrl())) {
 				
 				log.debug("URL Security is active");
-				byte[] imageUrlBytes = this.getUrlAsBytes(image.getOfficialImageUrl());
-				image.setUploadedImage(imageUrlBytes);
+				image.setSource(officialImageFetcher.getSource(image.getOfficialImageUrl()));
 				image.setOfficialImageUrl(null);
 			}
 						
 		} else if(StringUtils.equals(officialImageSource, ProfileConstants.OFFICIAL_IMAGE_SETTING_PROVIDER)){
-			String data = getOfficialImageEncoded(userUuid);
+			String data = getOfficialImageEncoded(records.users.get(userUuid));
 			if(StringUtils.isBlank(data)) {
 				image.setExternalImageUrl(defaultImageUrl);
 				image.setDefault(true);
 			} else {
-				image.setOfficialImageEncoded(data);
+				ImageSource source = getEncodedOfficialImage(userUuid, data, size);
+				image.setSource(source);
+				image.setMimeType(source.getMimeType());
+				image.setLastModified(source.getLastModified());
 			}
 		} else if(StringUtils.equals(officialImageSource, ProfileConstants.OFFICIAL_IMAGE_SETTING_FILESYSTEM)){
 			
 			//get the path based on the config from sakai.properties, basedir, pattern etc
-			String filename = getOfficialImageFileSystemPath(userUuid);
-
-			File file = new File(filename);
-
-			try {
-				byte[] data = getBytesFromFile(file);
-				if(data != null) {
-					image.setUploadedImage(data);
-				} else {
-					image.setExternalImageUrl(defaultImageUrl);
-					image.setDefault(true);
-				}
+			User user = records.users.get(userUuid);
+			ImageSource source = null;
+			if(user != null) {
+				source = getFileOfficialImage(new File(getOfficialImageFileSystemPath(user)), size);
 			}
-			catch (IOException e) {
-				log.error("Could not find/read official profile image file: " + filename + ". The default profile image will be used instead.");
+			
+			if(source != null) {
+				image.setSource(source);
+				image.setMimeType(source.getMimeType());
+				image.setLastModified(source.getLastModified());
+			} else {
 				image.setExternalImageUrl(defaultImageUrl);
 				image.setDefault(true);
 			}
 		}
-		image.setAltText(getAltText(userUuid, isSameUser, true));
-				
-		return image;
+	}
+	
+	/**
+	 * Get the settings that control which image is used. These are read once for each request for images.
+	 */
+	private ImageSettings getImageSettings() {
+		ImageSettings settings = new ImageSettings();
+		settings.pictureType = sakaiProxy.getProfilePictureType();
+		settings.officialSelectionEnabled = sakaiProxy.isUsingOfficialImageButAlternateSelectionEnabled();
+		settings.gravatarEnabled = sakaiProxy.isGravatarImageEnabledGlobally();
+		settings.userTypeImagesEnabled = Boolean.valueOf(sakaiProxy.getServerConfigurationParameter("profile2.user.type.image.enabled", "false"));
+		settings.officialImageSource = sakaiProxy.getOfficialImageSource();
+		settings.officialUrlSecurityEnabled = Boolean.valueOf(sakaiProxy.getServerConfigurationParameter("profile2.official.image.url.secure", "false"));
+		return settings;
+	}
+	
+	/**
+	 * Work out the type of image for a user from the global setting and their preferences
+	 * @param prefs		preferences for the user, may be null in which case the global setting is used
+	 * @param settings	image settings
+	 * @return type of image, from ProfileConstants.PICTURE_SETTING_x
+	 */
+	private int getImageType(ProfilePreferences prefs, ImageSettings settings) {
+		
+		//global image setting, this will be used if no preferences were supplied.
+		int imageType = settings.pictureType;
+		
+		//if we have prefs and the conditions are set for a user to be able to make a choice, get the pref.
+		if(prefs != null && settings.officialSelectionEnabled) {
+			if(prefs.isUseOfficialImage()){
+				imageType = ProfileConstants.PICTURE_SETTING_OFFICIAL;
+			}
+		}
+		
+		//prefs for gravatar, only if enabled
+		if(prefs != null && settings.gravatarEnabled) {
+			if(prefs.isUseGravatar()){
+				imageType = ProfileConstants.PICTURE_SETTING_GRAVATAR;
+			}
+		}
+		
+		return imageType;
+	}
+	
+	/**
+	 * Get the records needed to build the images for a set of users, with one lookup for each kind of record
+	 * @param imageTypes	map of uuid to the type of image for that user
+	 * @param settings		image settings
+	 * @return
+	 */
+	private ImageRecords getImageRecords(Map<String, Integer> imageTypes, ImageSettings settings) {
+		
+		List<String> uploaded = new ArrayList<String>();
+		List<String> external = new ArrayList<String>();
+		List<String> official = new ArrayList<String>();
+		List<String> users = new ArrayList<String>();
+		
+		for(Map.Entry<String, Integer> entry : imageTypes.entrySet()) {
+			switch (entry.getValue()) {
+				case ProfileConstants.PICTURE_SETTING_UPLOAD:
+					uploaded.add(entry.getKey());
+				break;
+				case ProfileConstants.PICTURE_SETTING_URL:
+					external.add(entry.getKey());
+				break;
+				case ProfileConstants.PICTURE_SETTING_OFFICIAL:
+					if(StringUtils.equals(settings.officialImageSource, ProfileConstants.OFFICIAL_IMAGE_SETTING_URL)) {
+						official.add(entry.getKey());
+					} else {
+						users.add(entry.getKey());
+					}
+				break;
+				case ProfileConstants.PICTURE_SETTING_GRAVATAR:
+					users.add(entry.getKey());
+				break;
+			}
+		}
+		
+		ImageRecords records = new ImageRecords();
+		
+		if(!uploaded.isEmpty()) {
+			//if there are multiple current records for a user, the latest comes first
+			for(ProfileImageUploaded record : dao.getCurrentProfileImageRecordsForUsers(uploaded)) {
+				if(!records.uploaded.containsKey(record.getUserUuid())) {
+					records.uploaded.put(record.getUserUuid(), record);
+				}
+			}
+		}
+		if(!external.isEmpty()) {
+			for(ProfileImageExternal record : dao.getExternalImageRecordsForUsers(external)) {
+				records.external.put(record.getUserUuid(), record);
+			}
+		}
+		if(!official.isEmpty()) {
+			for(ProfileImageOfficial record : dao.getOfficialImageRecordsForUsers(official)) {
+				records.official.put(record.getUserUuid(), record);
+			}
+		}
+		if(!users.isEmpty()) {
+			for(User user : sakaiProxy.getUsers(users)) {
+				records.users.put(user.getId(), user);
+			}
+		}
+		
+		return records;
 	}
 	
 	/**
@@ -374,11 +588,17 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 			return false;
 		}
 		
+		//scale all versions from a single decode of the image
+		ScaledImages scaledImages = imageProcessor.createProfileImages(imageBytes, mimeType);
+		if(scaledImages == null) {
+			log.error("Couldn't process image for user: " + userUuid + ". Aborting.");
+			return false;
+		}
+		
 		/*
 		 * MAIN PROFILE IMAGE
 		 */
-		//scale image
-		byte[] mainImageBytes = ProfileUtils.scaleImage(imageBytes, ProfileConstants.MAX_IMAGE_XY, mimeType);
+		byte[] mainImageBytes = scaledImages.getMain();
 		 
 		//create resource ID
 		String mainResourceId = sakaiProxy.getProfileImageResourcePath(userUuid, ProfileConstants.PROFILE_IMAGE_MAIN);
@@ -392,15 +612,14 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 		/*
 		 * THUMBNAIL PROFILE IMAGE
 		 */
-		//scale image
-		byte[] thumbnailImageBytes = ProfileUtils.scaleImage(imageBytes, ProfileConstants.MAX_THUMBNAIL_IMAGE_XY, mimeType);
+		byte[] thumbnailImageBytes = scaledImages.getThumbnail();
 		 
 		//create resource ID
 		String thumbnailResourceId = sakaiProxy.getProfileImageResourcePath(userUuid, ProfileConstants.PROFILE_IMAGE_THUMBNAIL);
 		log.debug("Profile.ChangeProfilePicture.onSubmit thumbnailResourceId: " + thumbnailResourceId);
 		
 		//save, if error, warn, erase thumbnail reference, and continue (we really only need the main image)
-		if(!sakaiProxy.saveFile(thumbnailResourceId, userUuid, fileName, mimeType, thumbnailImageBytes)) {
+		if(thumbnailImageBytes == null || !sakaiProxy.saveFile(thumbnailResourceId, userUuid, fileName, mimeType, thumbnailImageBytes)) {
 			log.warn("Couldn't add thumbnail image to CHS. Main image will be used instead.");
 			thumbnailResourceId = null;
 		}
@@ -408,15 +627,14 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 		/*
 		 * AVATAR PROFILE IMAGE
 		 */
-		//scale image
-		byte[] avatarImageBytes = ProfileUtils.createAvatar(imageBytes, mimeType);
+		byte[] avatarImageBytes = scaledImages.getAvatar();
 		 
 		//create resource ID
 		String avatarResourceId = sakaiProxy.getProfileImageResourcePath(userUuid, ProfileConstants.PROFILE_IMAGE_AVATAR);
 		log.debug("Profile.ChangeProfilePicture.onSubmit avatarResourceId: " + avatarResourceId);
 		
 		//save, if error, warn, erase avatar reference, and continue (we really only need the main image)
-		if(!sakaiProxy.saveFile(avatarResourceId, userUuid, fileName, mimeType, avatarImageBytes)) {
+		if(avatarImageBytes == null || !sakaiProxy.saveFile(avatarResourceId, userUuid, fileName, mimeType, avatarImageBytes)) {
 			log.warn("Couldn't add avatar image to CHS. Main image will be used instead.");
 			avatarResourceId = null;
 		}
@@ -503,18 +721,25 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 		// create resource ID
 		String mainResourcePath = sakaiProxy.getProfileGalleryImagePath(userUuid, imageId);
 
-		byte[] scaledImageBytes = ProfileUtils.scaleImage(imageBytes, ProfileConstants.MAX_GALLERY_IMAGE_XY, mimeType);
+		// scale both versions from a single decode of the image
+		ScaledImages scaledImages = imageProcessor.createGalleryImages(imageBytes, mimeType);
+		if (scaledImages == null) {
+			log.error("Couldn't process gallery image for user: " + userUuid + ". Aborting.");
+			return false;
+		}
 		
 		// save image
-		if (!sakaiProxy.saveFile(mainResourcePath, userUuid, fileName, mimeType,scaledImageBytes)) {
+		if (!sakaiProxy.saveFile(mainResourcePath, userUuid, fileName, mimeType, scaledImages.getMain())) {
 			log.error("Couldn't add gallery image to CHS. Aborting.");
 			return false;
 		}
 
 		// create thumbnail
-		byte[] thumbnailBytes = ProfileUtils.scaleImage(imageBytes, ProfileConstants.MAX_GALLERY_THUMBNAIL_IMAGE_XY, mimeType);
+		byte[] thumbnailBytes = scaledImages.getThumbnail();
 		String thumbnailResourcePath = sakaiProxy.getProfileGalleryThumbnailPath(userUuid, imageId);
-		sakaiProxy.saveFile(thumbnailResourcePath, userUuid, fileName, mimeType,thumbnailBytes);
+		if (thumbnailBytes != null) {
+			sakaiProxy.saveFile(thumbnailResourcePath, userUuid, fileName, mimeType, thumbnailBytes);
+		}
 		
 		//save
 		GalleryImage galleryImage = new GalleryImage(userUuid,mainResourcePath, thumbnailResourcePath, fileName);
@@ -540,6 +765,20 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 		return dao.getGalleryImages(userUuid);
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<GalleryImage> getGalleryImages(String userUuid, int offset, int limit) {
+
+		// check auth and get currentUserUuid
+		String currentUserUuid = sakaiProxy.getCurrentUserId();
+		if (currentUserUuid == null) {
+			throw new SecurityException("You must be logged in to make a request for a user's gallery images.");
+		}
+
+		return dao.getGalleryImages(userUuid, offset, limit);
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -600,7 +839,15 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
  	 */
 	public String getGravatarUrl(final String userUuid) {
 		
-		String email = sakaiProxy.getUserEmail(userUuid);
+		return getGravatarUrlForEmail(sakaiProxy.getUserEmail(userUuid));
+	}
+	
+	/**
+	 * Get the gravatar url for an email address
+	 * @param email	email address, may be blank
+	 * @return url or null if no email
+	 */
+	private String getGravatarUrlForEmail(final String email) {
 		if(StringUtils.isBlank(email)){
 			return null;
 		}
@@ -654,6 +901,18 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 		return getUnavailableImageURL(ProfileConstants.UNAVAILABLE_IMAGE_THUMBNAIL);
 	}
 	
+	/**
+	 * Get the url to the default image for the given size
+	 * @param size	comes from ProfileConstants
+	 * @return
+	 */
+	private String getDefaultImageUrl(int size) {
+		if (ProfileConstants.PROFILE_IMAGE_THUMBNAIL == size) {
+			return getUnavailableImageThumbnailURL();
+		}
+		return getUnavailableImageURL();
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -681,19 +940,17 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 	/**
 	 * Get the profile image for the given user, allowing fallback if no thumbnail exists.
 	 * 
+	 * @param profileImage	the current ProfileImageUploaded record for the user, may be null
 	 * @param userUuid 		the uuid of the user we are querying
 	 * @param size			comes from ProfileConstants, main or thumbnail, also maps to a directory in ContentHosting
-	 * @return MimeTypeByteArray or null
+	 * @return ImageSource or null
 	 * 
 	 * <p>Note: if thumbnail is requested and none exists, the main image will be returned instead. It can be scaled in the markup.</p>
 	 *
 	 */
-	private MimeTypeByteArray getUploadedProfileImage(String userUuid, int size) {
+	private ImageSource getUploadedProfileImage(ProfileImageUploaded profileImage, String userUuid, int size) {
 		
-		MimeTypeByteArray mtba = new MimeTypeByteArray();
-		
-		//get record from db
-		ProfileImageUploaded profileImage = dao.getCurrentProfileImageRecord(userUuid);
+		ImageSource source = null;
 		
 		if(profileImage == null) {
 			log.debug("ProfileLogic.getUploadedProfileImage() null for userUuid: " + userUuid);
@@ -702,31 +959,226 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 		
 		//get main image
 		if(size == ProfileConstants.PROFILE_IMAGE_MAIN) {
-			mtba = sakaiProxy.getResource(profileImage.getMainResource());
+			source = getCachedResource(profileImage.getMainResource());
 		}
 		
 		//or get thumbnail
 		if(size == ProfileConstants.PROFILE_IMAGE_THUMBNAIL) {
-			mtba = sakaiProxy.getResource(profileImage.getThumbnailResource());
+			source = getCachedResource(profileImage.getThumbnailResource());
 			//PRFL-706, if the file is deleted, catch any possible NPE
-			if(mtba == null || mtba.getBytes() == null) {
-				mtba = sakaiProxy.getResource(profileImage.getMainResource());
+			if(source == null) {
+				source = getCachedResource(profileImage.getMainResource());
 			}
 		}
 		
 		if(size == ProfileConstants.PROFILE_IMAGE_AVATAR) {
-			mtba = sakaiProxy.getResource(profileImage.getAvatarResource());
+			source = getCachedResource(profileImage.getAvatarResource());
 			//PRFL-706, if the file is deleted, catch any possible NPE
-			if(mtba == null || mtba.getBytes() == null) {
-				mtba = sakaiProxy.getResource(profileImage.getMainResource());
+			if(source == null) {
+				source = getCachedResource(profileImage.getMainResource());
+			}
+		}
+		
+		return source;
+	}
+	
+	/**
+	 * Get a resource from the image cache, or from ContentHosting if it isn't there.
+	 * Resources small enough to be cached are read and added to the cache, larger ones are returned as a stream from ContentHosting.
+	 * Resource ids for profile images are unique for each upload so never need to be invalidated.
+	 * 
+	 * @param resourceId	id of the resource
+	 * @return ImageSource or null
+	 */
+	private ImageSource getCachedResource(String resourceId) {
+		if(StringUtils.isBlank(resourceId)) {
+			return null;
+		}
+		
+		MimeTypeByteArray mtba = imageCache.get(resourceId);
+		if(mtba != null) {
+			log.debug("Fetching image from cache: " + resourceId);
+			return getByteSource(mtba);
+		}
+		
+		ImageSource source = sakaiProxy.getResourceSource(resourceId);
+		if(source == null || !imageCache.isCacheable(source.getLength())) {
+			return source;
+		}
+		
+		try {
+			mtba = new MimeTypeByteArray();
+			mtba.setBytes(source.getBytes());
+			mtba.setMimeType(source.getMimeType());
+			mtba.setLastModified(source.getLastModified());
+		} catch (IOException e) {
+			log.error("Could not read image resource: " + resourceId + " : " + e.getMessage());
+			return null;
+		}
+		imageCache.put(resourceId, mtba);
+		return getByteSource(mtba);
+	}
+	
+	/**
+	 * Get the official image from a base64 encoded user attribute. The decoded image is cached, keyed on a hash of the attribute
+	 * so a new photo from the provider gets a new entry. The provider doesn't say when the photo changed, so the entry is
+	 * stamped with the time it was first cached and that is used to validate the browser's copy.
+	 * 
+	 * @param userUuid	uuid of the user
+	 * @param data		base64 encoded image data
+	 * @param size		comes from ProfileConstants, main, thumbnail or avatar
+	 * @return ImageSource
+	 */
+	private ImageSource getEncodedOfficialImage(String userUuid, String data, int size) {
+		String key = "provider:" + userUuid + ":" + data.length() + ":" + Integer.toHexString(data.hashCode());
+		
+		ImageSource source = getCachedOfficialImage(key, size);
+		if(source == null) {
+			source = cacheOfficialImage(key, Base64.decodeBase64(data), null, System.currentTimeMillis(), size);
+		}
+		return source;
+	}
+	
+	/**
+	 * Get the official image from a file. The image is cached, keyed on the path, modification time and length of the file
+	 * so a replaced file gets a new entry. Files too large to cache are streamed as before.
+	 * 
+	 * @param file	the image file
+	 * @param size	comes from ProfileConstants, main, thumbnail or avatar
+	 * @return ImageSource or null if the file can't be read
+	 */
+	private ImageSource getFileOfficialImage(File file, int size) {
+		
+		//file.lastModified and file.length are 0 if the file doesn't exist, so that falls through to getFileSource to be logged
+		long length = file.length();
+		long lastModified = file.lastModified();
+		if(length > 0 && officialImageCache.isCacheable(length)) {
+			String key = "file:" + file.getPath() + ":" + lastModified + ":" + length;
+			
+			ImageSource source = getCachedOfficialImage(key, size);
+			if(source != null) {
+				return source;
+			}
+			
+			try {
+				return cacheOfficialImage(key, FileUtils.readFileToByteArray(file), ProfileConstants.MIMETYPE_JPEG, lastModified, size);
+			} catch (IOException e) {
+				log.error("Could not read official profile image file: " + file.getPath() + " : " + e.getMessage());
+			}
+		}
+		
+		return getFileSource(file);
+	}
+	
+	/**
+	 * Get an official image from the cache. If variants are enabled and a thumbnail or avatar is requested, that is returned,
+	 * and it is created again from the main image if it has been evicted.
+	 * 
+	 * @param key	key for the main image
+	 * @param size	comes from ProfileConstants, main, thumbnail or avatar
+	 * @return ImageSource or null if not in the cache
+	 */
+	private ImageSource getCachedOfficialImage(String key, int size) {
+		boolean variant = officialImageVariantsEnabled && size != ProfileConstants.PROFILE_IMAGE_MAIN;
+		
+		if(variant) {
+			MimeTypeByteArray mtba = officialImageCache.get(key + ":" + size);
+			if(mtba != null) {
+				return getByteSource(mtba);
 			}
 		}
 		
-		return mtba;
+		MimeTypeByteArray mtba = officialImageCache.get(key);
+		if(mtba == null) {
+			return null;
+		}
+		if(variant) {
+			return cacheOfficialImage(key, mtba.getBytes(), mtba.getMimeType(), mtba.getLastModified(), size);
+		}
+		return getByteSource(mtba);
+	}
+	
+	/**
+	 * Add an official image to the cache, along with its thumbnail and avatar if variants are enabled
+	 * 
+	 * @param key			key for the main image
+	 * @param bytes			the image data
+	 * @param mimeType		mimetype of the image, or null if not known
+	 * @param lastModified	when the image was last modified, 0 if not known
+	 * @param size			comes from ProfileConstants, main, thumbnail or avatar
+	 * @return ImageSource for the requested size, or the main image if that size could not be created
+	 */
+	private ImageSource cacheOfficialImage(String key, byte[] bytes, String mimeType, long lastModified, int size) {
+		
+		MimeTypeByteArray main = new MimeTypeByteArray();
+		main.setBytes(bytes);
+		main.setMimeType(mimeType);
+		main.setLastModified(lastModified);
+		officialImageCache.put(key, main);
+		
+		if(!officialImageVariantsEnabled || size == ProfileConstants.PROFILE_IMAGE_MAIN) {
+			return getByteSource(main);
+		}
+		
+		//variants are always written as jpegs
+		ScaledImages scaledImages = imageProcessor.createProfileImages(bytes, ProfileConstants.MIMETYPE_JPEG);
+		if(scaledImages == null) {
+			return getByteSource(main);
+		}
+		
+		MimeTypeByteArray requested = main;
+		if(scaledImages.getThumbnail() != null) {
+			MimeTypeByteArray thumbnail = new MimeTypeByteArray();
+			thumbnail.setBytes(scaledImages.getThumbnail());
+			thumbnail.setMimeType(ProfileConstants.MIMETYPE_JPEG);
+			thumbnail.setLastModified(lastModified);
+			officialImageCache.put(key + ":" + ProfileConstants.PROFILE_IMAGE_THUMBNAIL, thumbnail);
+			if(size == ProfileConstants.PROFILE_IMAGE_THUMBNAIL) {
+				requested = thumbnail;
+			}
+		}
+		if(scaledImages.getAvatar() != null) {
+			MimeTypeByteArray avatar = new MimeTypeByteArray();
+			avatar.setBytes(scaledImages.getAvatar());
+			avatar.setMimeType(ProfileConstants.MIMETYPE_JPEG);
+			avatar.setLastModified(lastModified);
+			officialImageCache.put(key + ":" + ProfileConstants.PROFILE_IMAGE_AVATAR, avatar);
+			if(size == ProfileConstants.PROFILE_IMAGE_AVATAR) {
+				requested = avatar;
+			}
+		}
+		return getByteSource(requested);
+	}
+	
+	/**
+	 * Get an ImageSource for image data that is already in memory
+	 * @param mtba	MimeTypeByteArray with the image data
+	 * @return ImageSource
+	 */
+	private ImageSource getByteSource(final MimeTypeByteArray mtba) {
+		return new ImageSource() {
+			public String getMimeType() {
+				return mtba.getMimeType();
+			}
+			public long getLength() {
+				return mtba.getBytes().length;
+			}
+			public long getLastModified() {
+				return mtba.getLastModified();
+			}
+			public long writeTo(OutputStream out) throws IOException {
+				out.write(mtba.getBytes());
+				return mtba.getBytes().length;
+			}
+			public byte[] getBytes() {
+				return mtba.getBytes();
+			}
+		};
 	}
 	
 	/**
 	 * Get the URL to an image that a user has specified as their profile image
+	 * @param externalImage	the ProfileImageExternal record for the user, may be null
 	 * @param userId		uuid of user
 	 * @param size			comes from ProfileConstants. main or thumbnail.
 	 *
@@ -734,11 +1186,8 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 	 * 
 	 * @return url to the image, or a default image if none.
 	 */
-	private String getExternalProfileImageUrl(final String userUuid, final int size) {
+	private String getExternalProfileImageUrl(final ProfileImageExternal externalImage, final String userUuid, final int size) {
 	
-		//get external image record for this user
-		ProfileImageExternal externalImage = dao.getExternalImageRecordForUser(userUuid);
-		
 		//setup default
 		String defaultImageUrl = getUnavailableImageURL();
 		
@@ -790,14 +1239,12 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 	
 	/**
 	 * Get the URL to a user's official profile image
+	 * @param official		the ProfileImageOfficial record for the user, may be null
 	 * @param userUuid		uuid of user
 	 * 
 	 * @return url or a default image if none
 	 */
-	private String getOfficialImageUrl(final String userUuid) {
-		
-		//get external image record for this user
-		ProfileImageOfficial official = dao.getOfficialImageRecordForUser(userUuid);
+	private String getOfficialImageUrl(final ProfileImageOfficial official, final String userUuid) {
 		
 		//setup default
 		String defaultImageUrl = getUnavailableImageURL();
@@ -817,11 +1264,13 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 	
 	/**
 	 * Get the official image data from the user properties, encoded in BASE64
-	 * @param userUuid	uuid of user
+	 * @param u		the user, may be null
 	 * @return base64 encoded data, or null.
 	 */
-	private String getOfficialImageEncoded(final String userUuid) {
-		User u = sakaiProxy.getUserById(userUuid);
+	private String getOfficialImageEncoded(final User u) {
+		if(u == null) {
+			return null;
+		}
 		return u.getProperties().getProperty(sakaiProxy.getOfficialImageAttribute());
 	}
 	
@@ -833,6 +1282,18 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 	 * @return
 	 */
 	private String getAltText(String userUuid, boolean isOwner, boolean hasImage) {
+		return getAltText(userUuid, null, isOwner, hasImage);
+	}
+	
+	/**
+	 * Helper to get the altText to be used for the image, when the display name may already be known
+	 * @param userUuid
+	 * @param displayName	display name of the user, or null to look it up
+	 * @param isOwner
+	 * @param hasImage
+	 * @return
+	 */
+	private String getAltText(String userUuid, String displayName, boolean isOwner, boolean hasImage) {
 		
 		//owner and has an image
 		if(isOwner && hasImage){
@@ -846,7 +1307,9 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 		
 		//not owner so get name
 		if(!isOwner) {
-			String displayName = sakaiProxy.getUserDisplayName(userUuid);
+			if(displayName == null) {
+				displayName = sakaiProxy.getUserDisplayName(userUuid);
+			}
 			return Messages.getString("profile.image.other.alt", new Object[] { displayName });
 		}
 		
@@ -859,17 +1322,15 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 	 *<p>This first checks if the option is enabled (profile2.user.type.image.enabled=true). 
 	 *<p>If so, it attempts to get the value for profile.user.type.image.&lt;usertype&gt; which should be an absolute URL.
 	 *<p>If there is one, it is returned, if not, return null. Also returns null if userType is undefined.
-	 * @param userUuid	uuid of the user to get the image for
+	 * @param userType	type of the user to get the image for
+	 * @param settings	image settings
 	 * @return url or null.
 	 */
-	private String getUserTypeImageUrl(String userUuid) {
-		
-		boolean enabled = Boolean.valueOf(sakaiProxy.getServerConfigurationParameter("profile2.user.type.image.enabled", "false"));
+	private String getUserTypeImageUrl(String userType, ImageSettings settings) {
 		
 		String imageUrl = null;
 		
-		if(enabled) {
-			String userType = sakaiProxy.getUserType(userUuid);
+		if(settings.userTypeImagesEnabled) {
 			if(StringUtils.isNotBlank(userType)) {
 				imageUrl = sakaiProxy.getServerConfigurationParameter("profile.user.type.image."+userType, null);
 			}
@@ -878,32 +1339,68 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 	}
 	
 	/**
-	 * Read a file to a byte array.
+	 * Get an ImageSource for a file. The file is sent with FileChannel.transferTo so is never held in memory.
 	 * 
 	 * @param file
-	 * @return byte[] if file ok, or null if its too big
-	 * @throws IOException
+	 * @return ImageSource if file ok, or null if it can't be read or is too big
 	 */
-	private byte[] getBytesFromFile(File file) throws IOException {
+	private ImageSource getFileSource(final File file) {
     
+		if (!file.isFile() || !file.canRead()) {
+			log.error("Could not find/read official profile image file: " + file.getPath() + ". The default profile image will be used instead.");
+			return null;
+		}
+		
 		// Get the size of the file
-		long length = file.length();
+		final long length = file.length();
 		
 		if (length > (ProfileConstants.MAX_IMAGE_UPLOAD_SIZE * FileUtils.ONE_MB)) {
-			log.error("File too large: " + file.getCanonicalPath());  
+			log.error("File too large: " + file.getPath());  
 			return null;
 		}
 		
-		// return file contents
-		return FileUtils.readFileToByteArray(file);
+		final long lastModified = file.lastModified();
+		
+		return new ImageSource() {
+			public String getMimeType() {
+				//official photos are always jpgs, see getOfficialImageFileSystemPath
+				return ProfileConstants.MIMETYPE_JPEG;
+			}
+			public long getLength() {
+				return length;
+			}
+			public long getLastModified() {
+				return lastModified;
+			}
+			public long writeTo(OutputStream out) throws IOException {
+				FileInputStream in = new FileInputStream(file);
+				try {
+					FileChannel channel = in.getChannel();
+					WritableByteChannel target = Channels.newChannel(out);
+					long size = channel.size();
+					long position = 0;
+					while(position < size) {
+						long transferred = channel.transferTo(position, size - position, target);
+						//transferTo returns 0 at the end of the file, so stop if it was truncated while we were sending it
+						if(transferred <= 0) {
+							throw new IOException("File changed while it was being sent: " + file.getPath());
+						}
+						position += transferred;
+					}
+					return position;
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
+			}
+		};
    }
 	
 	/**
 	 * Helper to get the path to the official image on the filesystem. This could be in one of several patterns.
-	 * @param userUuid
+	 * @param user
 	 * @return
 	 */
-	private String getOfficialImageFileSystemPath(String userUuid) {
+	private String getOfficialImageFileSystemPath(User user) {
 		
 		//get basepath, common to all
 		String basepath = sakaiProxy.getOfficialImagesDirectory();
@@ -911,8 +1408,6 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 		//get the pattern
 		String pattern = sakaiProxy.getOfficialImagesFileSystemPattern();
 		
-		//get user, common for all
-		User user = sakaiProxy.getUserById(userUuid);
 		String userEid = user.getEid();
 		
 		String filename = null;
@@ -940,27 +1435,41 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 		return filename;
 	}
 	
+	public void init() {
+		int cacheSize = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.image.cache.size", null), ProfileConstants.DEFAULT_IMAGE_CACHE_SIZE);
+		imageCache = new ImageCache(cacheSize * 1024L * 1024L);
+		
+		//decoded official images, and optionally thumbnails and avatars created from them
+		int officialCacheSize = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.official.image.cache.size", null), ProfileConstants.DEFAULT_OFFICIAL_IMAGE_CACHE_SIZE);
+		officialImageCache = new ImageCache(officialCacheSize * 1024L * 1024L);
+		officialImageVariantsEnabled = Boolean.valueOf(sakaiProxy.getServerConfigurationParameter("profile2.official.image.variants", "false"));
+	}
+	
+	private ImageCache imageCache;
+	private ImageCache officialImageCache;
+	private boolean officialImageVariantsEnabled;
+	
 	/**
-	 * Get a URL resource as a byte[]
-	 * @param url URL to fetch
-	 * @return
+	 * The settings that control which image is used for a user
 	 */
-	private byte[] getUrlAsBytes(String url) {
-		byte[] data = null;
-		try {
-			URL u = new URL(url);
-			URLConnection uc = u.openConnection();
-			uc.setReadTimeout(5000); //5 sec timeout
-			InputStream inputStream = uc.getInputStream();
-			
-			data = IOUtils.toByteArray(inputStream);
-
-		} catch (Exception e) {
-			log.error("Failed to retrieve url bytes: " + e.getClass() + ": " + e.getMessage());
-		} 
-		return data;
+	private static class ImageSettings {
+		int pictureType;
+		boolean officialSelectionEnabled;
+		boolean gravatarEnabled;
+		boolean userTypeImagesEnabled;
+		String officialImageSource;
+		boolean officialUrlSecurityEnabled;
 	}
 	
+	/**
+	 * The records needed to build the images for a set of users, keyed by uuid
+	 */
+	private static class ImageRecords {
+		Map<String, ProfileImageUploaded> uploaded = new HashMap<String, ProfileImageUploaded>();
+		Map<String, ProfileImageExternal> external = new HashMap<String, ProfileImageExternal>();
+		Map<String, ProfileImageOfficial> official = new HashMap<String, ProfileImageOfficial>();
+		Map<String, User> users = new HashMap<String, User>();
+	}
 	
 	@Setter
 	private SakaiProxy sakaiProxy;
@@ -977,4 +1486,10 @@ public class ProfileImageLogicImpl implements ProfileImageLogic {
 	@Setter
 	private ProfileDao dao;
 	
+	@Setter
+	private ProfileImageProcessor imageProcessor;
+	
+	@Setter
+	private OfficialImageFetcher officialImageFetcher;
+	
 }
@@ -16,13 +16,19 @@
 package org.sakaiproject.profile2.logic;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 import lombok.Setter;
 
 import org.apache.log4j.Logger;
-import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.profile2.cache.CacheLoader;
 import org.sakaiproject.profile2.cache.CacheManager;
+import org.sakaiproject.profile2.cache.ProfileCache;
 import org.sakaiproject.profile2.dao.ProfileDao;
 import org.sakaiproject.profile2.hbm.model.ProfileKudos;
 
@@ -36,29 +42,26 @@ public class ProfileKudosLogicImpl implements ProfileKudosLogic {
 
 	private static final Logger log = Logger.getLogger(ProfileKudosLogicImpl.class);
 
-	private Cache cache;
+	private ProfileCache<String, ProfileKudos> cache;
 	private final String CACHE_NAME = "org.sakaiproject.profile2.cache.kudos";
 	
+	//seconds to remember that a user has no kudos. updateKudos replaces these when kudos are calculated
+	private static final int NO_KUDOS_TTL = 600;
+	
+	private final CacheLoader<String, ProfileKudos> kudosLoader = new CacheLoader<String, ProfileKudos>() {
+		public ProfileKudos load(String userUuid) {
+			log.debug("Fetching kudos from dao for: " + userUuid);
+			return dao.getKudos(userUuid);
+		}
+	};
+	
 	
 	/**
  	 * {@inheritDoc}
  	 */
 	public int getKudos(String userUuid){
 		
-		ProfileKudos k;
-		
-		if(cache.containsKey(userUuid)){
-			log.debug("Fetching kudos from cache for: " + userUuid);
-			k = (ProfileKudos)cache.get(userUuid);
-		} else {
-			k = dao.getKudos(userUuid);
-			
-			if(k != null){
-				log.debug("Adding kudos to cache for: " + userUuid);
-				cache.put(userUuid, k);
-			}
-		}
-		
+		ProfileKudos k = cache.get(userUuid, kudosLoader);
 		if(k == null) {
 			return 0;
 		}
@@ -94,9 +97,43 @@ public class ProfileKudosLogicImpl implements ProfileKudosLogic {
 		return false;
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public boolean updateKudos(List<ProfileKudos> kudos) {
+		if(kudos.isEmpty()) {
+			return true;
+		}
+		
+		if(dao.updateKudos(kudos)){
+			for(ProfileKudos k: kudos) {
+				cache.put(k.getUserUuid(), k);
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public void invalidateKudos(String userUuid) {
+		dao.invalidateKudos(Collections.singletonList(userUuid));
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<String> getUserIdsForKudosRecalculation() {
+		Set<String> userUuids = new LinkedHashSet<String>();
+		userUuids.addAll(dao.getInvalidatedKudosUserIds());
+		userUuids.addAll(dao.getSakaiPersonIdsWithoutKudos());
+		return new ArrayList<String>(userUuids);
+	}
+	
 	
 	public void init() {
-		cache = cacheManager.createCache(CACHE_NAME);
+		cache = cacheManager.createProfileCache(CACHE_NAME, NO_KUDOS_TTL);
 	}
 	
 	@Setter
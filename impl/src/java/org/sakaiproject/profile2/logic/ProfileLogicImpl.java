@@ -27,7 +27,6 @@ import lombok.Setter;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.sakaiproject.api.common.edu.person.SakaiPerson;
-import org.sakaiproject.profile2.conversion.ProfileConverter;
 import org.sakaiproject.profile2.dao.ProfileDao;
 import org.sakaiproject.profile2.exception.ProfileNotDefinedException;
 import org.sakaiproject.profile2.hbm.model.ProfileImageExternal;
@@ -35,9 +34,12 @@ import org.sakaiproject.profile2.hbm.model.ProfileImageUploaded;
 import org.sakaiproject.profile2.model.BasicPerson;
 import org.sakaiproject.profile2.model.CompanyProfile;
 import org.sakaiproject.profile2.model.Person;
+import org.sakaiproject.profile2.model.ProfilePreferences;
 import org.sakaiproject.profile2.model.ProfilePrivacy;
+import org.sakaiproject.profile2.model.ProfileStatus;
 import org.sakaiproject.profile2.model.SocialNetworkingInfo;
 import org.sakaiproject.profile2.model.UserProfile;
+import org.sakaiproject.profile2.search.ProfileSearchIndex;
 import org.sakaiproject.profile2.types.EmailType;
 import org.sakaiproject.profile2.types.PrivacyType;
 import org.sakaiproject.profile2.util.ProfileConstants;
@@ -107,76 +109,17 @@ public class ProfileLogicImpl implements ProfileLogic {
 			return p;
 		}
 		
-		//REMOVE the birth year if not allowed
-		if(!privacyLogic.isBirthYearVisible(userUuid)){
-			if(p.getDateOfBirth() != null) {
-				p.setDateOfBirth(ProfileUtils.stripYear(p.getDateOfBirth()));
-			} else {
-				p.setDateOfBirth(null);
-			}
-		}
-		
-		//REMOVE basic info if not allowed
-		if(!privacyLogic.isActionAllowed(userUuid,currentUserUuid, PrivacyType.PRIVACY_OPTION_BASICINFO)) {
-			p.setNickname(null);
-			p.setDateOfBirth(null);
-			p.setPersonalSummary(null);
-		}
-		
-		//ADD email if allowed, REMOVE contact info if not
-		if(privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_CONTACTINFO)) {
-			p.setEmail(u.getEmail());
-        } else if(siteId != null && sakaiProxy.isUserAllowedInSite(currentUserUuid, ProfileConstants.ROSTER_VIEW_EMAIL, siteId)) {
-			p.setEmail(u.getEmail());
-        } else {
-			p.setEmail(null);
-			p.setHomepage(null);
-			p.setHomephone(null);
-			p.setWorkphone(null);
-			p.setMobilephone(null);
-			p.setFacsimile(null);
-		}
-		
-		//REMOVE staff info if not allowed
-		if(!privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_STAFFINFO)) {
-			p.setDepartment(null);
-			p.setPosition(null);
-			p.setSchool(null);
-			p.setRoom(null);
-			p.setStaffProfile(null);
-			p.setAcademicProfileUrl(null);
-			p.setUniversityProfileUrl(null);
-			p.setPublications(null);
-		}
-		
-		//REMOVE student info if not allowed
-		if(!privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_STUDENTINFO)) {
-			p.setCourse(null);
-			p.setSubjects(null);
-		}
-		
-		//REMOVE personal info if not allowed
-		if(!privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_PERSONALINFO)) {
-			p.setFavouriteBooks(null);
-			p.setFavouriteTvShows(null);
-			p.setFavouriteMovies(null);
-			p.setFavouriteQuotes(null);
-		}
+		//REMOVE anything that is not allowed
+		applyPrivacySettings(p, u, currentUserUuid, siteId);
 		
 		//ADD social networking info if allowed
 		if(privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_SOCIALINFO)) {
 			p.setSocialInfo(getSocialNetworkingInfo(userUuid));
 		}
 		
-		//ADD company info if activated and allowed, REMOVE business bio if not
-		if(sakaiProxy.isBusinessProfileEnabled()) {
-			if(privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_BUSINESSINFO)) {
-				p.setCompanyProfiles(getCompanyProfiles(userUuid));
-			} else {
-				p.setBusinessBiography(null);
-			}
-		} else {
-			p.setBusinessBiography(null);
+		//ADD company info if activated and allowed
+		if(isBusinessInfoAllowed(userUuid, currentUserUuid)) {
+			p.setCompanyProfiles(getCompanyProfiles(userUuid));
 		}
 		
 		//ADD profile status if allowed
@@ -193,7 +136,9 @@ public class ProfileLogicImpl implements ProfileLogic {
 	public boolean saveUserProfile(SakaiPerson sp) {
 		
 		if(sakaiProxy.updateSakaiPerson(sp)) {
+			searchIndex.index(sp);
 			sendProfileChangeEmailNotification(sp.getAgentUuid());
+			kudosLogic.invalidateKudos(sp.getAgentUuid());
 			
 			return true;
 		}
@@ -353,8 +298,26 @@ public class ProfileLogicImpl implements ProfileLogic {
  	 */
 	public List<Person> getPersons(List<User> users) {
 		List<Person> list = new ArrayList<Person>();
+		if(users == null || users.isEmpty()) {
+			return list;
+		}
+		
+		//fetch everything for the whole list up front rather than once per user
+		List<String> userUuids = sakaiProxy.getUuids(users);
+		Map<String, ProfilePreferences> preferences = preferencesLogic.getPreferencesRecordsForUsers(userUuids);
+		Map<String, ProfilePrivacy> privacy = privacyLogic.getPrivacyRecordsForUsers(userUuids);
+		Map<String, UserProfile> profiles = getUserProfiles(users);
+		
 		for(User u:users){
-			list.add(getPerson(u));
+			String userUuid = u.getId();
+			Person p = new Person();
+			p.setUuid(userUuid);
+			p.setDisplayName(u.getDisplayName());
+			p.setType(u.getType());
+			p.setPreferences(preferences.get(userUuid));
+			p.setPrivacy(privacy.get(userUuid));
+			p.setProfile(profiles.get(userUuid));
+			list.add(p);
 		}
 		return list;
 	}
@@ -379,31 +342,186 @@ public class ProfileLogicImpl implements ProfileLogic {
 		
 		log.info("Profile2: init()"); 
 		
-		//do we need to run the image conversion utility?
-		if(sakaiProxy.isProfileConversionEnabled()) {
-			//run the profile image converter
-			converter.convertProfileImages();
+		//any conversions and imports are run in the background by ProfileConversionService
+	}
+	
+	
+	
+	/**
+	 * Get the UserProfiles for a list of users. This is the bulk equivalent of {@link #getUserProfile(String)} and applies the same privacy rules,
+	 * however all of the underlying records are fetched for the whole list at once so the number of lookups does not depend on the size of the list.
+	 * 
+	 * @param users		list of Users
+	 * @return Map of uuid to UserProfile
+	 */
+	private Map<String, UserProfile> getUserProfiles(final List<User> users) {
+		
+		//check auth and get currentUserUuid
+		String currentUserUuid = sakaiProxy.getCurrentUserId();
+		if(currentUserUuid == null) {
+			throw new SecurityException("Must be logged in to get a UserProfile.");
 		}
+		boolean superUser = sakaiProxy.isSuperUser();
 		
-		// Should we import profile image URLs to be uploaded profile images?
-		if (sakaiProxy.isProfileImageImportEnabled()) {
-			if (sakaiProxy.getProfilePictureType() != ProfileConstants.PICTURE_SETTING_UPLOAD) {
-				log.warn("I'm set to import images but profile2.picture.type=upload is not set. Not importing.");
-			} else {
-				converter.importProfileImages();
+		List<String> userUuids = sakaiProxy.getUuids(users);
+		
+		Map<String, SakaiPerson> sakaiPersons = sakaiProxy.getSakaiPersons(userUuids);
+		Map<String, ProfileStatus> statuses = statusLogic.getUserStatuses(userUuids);
+		
+		Map<String, SocialNetworkingInfo> socialInfos = new HashMap<String, SocialNetworkingInfo>();
+		for(SocialNetworkingInfo socialInfo: dao.getSocialNetworkingInfos(userUuids)) {
+			socialInfos.put(socialInfo.getUserUuid(), socialInfo);
+		}
+		
+		Map<String, List<CompanyProfile>> companyProfiles = new HashMap<String, List<CompanyProfile>>();
+		for(CompanyProfile companyProfile: dao.getCompanyProfilesForUsers(userUuids)) {
+			List<CompanyProfile> list = companyProfiles.get(companyProfile.getUserUuid());
+			if(list == null) {
+				list = new ArrayList<CompanyProfile>();
+				companyProfiles.put(companyProfile.getUserUuid(), list);
 			}
+			list.add(companyProfile);
 		}
 		
-		//do we need to import profiles?
-		if(sakaiProxy.isProfileImportEnabled()) {
+		Map<String, UserProfile> profiles = new HashMap<String, UserProfile>();
+		for(User u: users) {
+			
+			String userUuid = u.getId();
+			
+			//setup obj
+			UserProfile p = new UserProfile();
+			p.setUserUuid(userUuid);
+			p.setDisplayName(u.getDisplayName());
+			p.setImageUrl(imageLogic.getProfileImageEntityUrl(userUuid, ProfileConstants.PROFILE_IMAGE_MAIN));
+			p.setImageThumbUrl(imageLogic.getProfileImageEntityUrl(userUuid, ProfileConstants.PROFILE_IMAGE_THUMBNAIL));
+			profiles.put(userUuid, p);
+			
+			//no profile, basic info only.
+			SakaiPerson sakaiPerson = sakaiPersons.get(userUuid);
+			if(sakaiPerson == null) {
+				continue;
+			}
 			
-			String csv = sakaiProxy.getProfileImportCsvPath();
-			//run the profile importer
-			converter.importProfiles(csv);
+			p = transformSakaiPersonToUserProfile(p, sakaiPerson);
+			
+			//status is already privacy checked
+			p.setStatus(statuses.get(userUuid));
+			
+			SocialNetworkingInfo socialInfo = socialInfos.get(userUuid);
+			if(socialInfo == null) {
+				socialInfo = new SocialNetworkingInfo(userUuid);
+			}
+			List<CompanyProfile> companies = companyProfiles.get(userUuid);
+			if(companies == null) {
+				companies = new ArrayList<CompanyProfile>();
+			}
+			
+			//own profile or superuser, no need for privacy checks
+			if(userUuid.equals(currentUserUuid) || superUser) {
+				p.setEmail(u.getEmail());
+				p.setSocialInfo(socialInfo);
+				p.setCompanyProfiles(companies);
+				continue;
+			}
+			
+			applyPrivacySettings(p, u, currentUserUuid, null);
+			
+			if(privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_SOCIALINFO)) {
+				p.setSocialInfo(socialInfo);
+			}
+			
+			if(isBusinessInfoAllowed(userUuid, currentUserUuid)) {
+				p.setCompanyProfiles(companies);
+			}
 		}
+		
+		return profiles;
 	}
 	
+	/**
+	 * Removes the fields from a UserProfile that the requesting user is not allowed to see, and adds the email address if they are.
+	 * Social networking info, company profiles and status are not touched, callers add those if allowed.
+	 * 
+	 * @param p					UserProfile, already populated from the SakaiPerson
+	 * @param u					User the profile belongs to
+	 * @param currentUserUuid	uuid of the requesting user
+	 * @param siteId			optional site id to check the roster.viewemail permission against, may be null
+	 */
+	private void applyPrivacySettings(UserProfile p, User u, String currentUserUuid, String siteId) {
+		
+		String userUuid = u.getId();
+		
+		//REMOVE the birth year if not allowed
+		if(!privacyLogic.isBirthYearVisible(userUuid)){
+			if(p.getDateOfBirth() != null) {
+				p.setDateOfBirth(ProfileUtils.stripYear(p.getDateOfBirth()));
+			} else {
+				p.setDateOfBirth(null);
+			}
+		}
+		
+		//REMOVE basic info if not allowed
+		if(!privacyLogic.isActionAllowed(userUuid,currentUserUuid, PrivacyType.PRIVACY_OPTION_BASICINFO)) {
+			p.setNickname(null);
+			p.setDateOfBirth(null);
+			p.setPersonalSummary(null);
+		}
+		
+		//ADD email if allowed, REMOVE contact info if not
+		if(privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_CONTACTINFO)) {
+			p.setEmail(u.getEmail());
+        } else if(siteId != null && sakaiProxy.isUserAllowedInSite(currentUserUuid, ProfileConstants.ROSTER_VIEW_EMAIL, siteId)) {
+			p.setEmail(u.getEmail());
+        } else {
+			p.setEmail(null);
+			p.setHomepage(null);
+			p.setHomephone(null);
+			p.setWorkphone(null);
+			p.setMobilephone(null);
+			p.setFacsimile(null);
+		}
+		
+		//REMOVE staff info if not allowed
+		if(!privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_STAFFINFO)) {
+			p.setDepartment(null);
+			p.setPosition(null);
+			p.setSchool(null);
+			p.setRoom(null);
+			p.setStaffProfile(null);
+			p.setAcademicProfileUrl(null);
+			p.setUniversityProfileUrl(null);
+			p.setPublications(null);
+		}
+		
+		//REMOVE student info if not allowed
+		if(!privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_STUDENTINFO)) {
+			p.setCourse(null);
+			p.setSubjects(null);
+		}
+		
+		//REMOVE personal info if not allowed
+		if(!privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_PERSONALINFO)) {
+			p.setFavouriteBooks(null);
+			p.setFavouriteTvShows(null);
+			p.setFavouriteMovies(null);
+			p.setFavouriteQuotes(null);
+		}
+		
+		//REMOVE business bio if not activated or not allowed
+		if(!isBusinessInfoAllowed(userUuid, currentUserUuid)) {
+			p.setBusinessBiography(null);
+		}
+	}
 	
+	/**
+	 * Is the business profile enabled and the requesting user allowed to see the business info for this user?
+	 * @param userUuid			uuid of the user whose profile is being viewed
+	 * @param currentUserUuid	uuid of the requesting user
+	 * @return
+	 */
+	private boolean isBusinessInfoAllowed(String userUuid, String currentUserUuid) {
+		return sakaiProxy.isBusinessProfileEnabled() && privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_BUSINESSINFO);
+	}
 	
 	/**
 	 * Convenience method to map a SakaiPerson object onto a UserProfile object
@@ -518,9 +636,12 @@ public class ProfileLogicImpl implements ProfileLogic {
 	private ProfileImageLogic imageLogic;
 	
 	@Setter
-	private ProfileConverter converter;
+	private ProfileLinkLogic linkLogic;
 	
 	@Setter
-	private ProfileLinkLogic linkLogic;
+	private ProfileKudosLogic kudosLogic;
+	
+	@Setter
+	private ProfileSearchIndex searchIndex;
 	
 }
@@ -168,13 +168,49 @@ public class ProfileMessagingLogicImpl implements ProfileMessagingLogic {
  	 * {@inheritDoc}
  	 */
 	public List<MessageThread> getMessageThreads(final String userId) {
+		return getMessageThreads(userId, 0, Integer.MAX_VALUE);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<MessageThread> getMessageThreads(final String userId, final int offset, final int limit) {
 		
-		List<MessageThread> threads = dao.getMessageThreads(userId);
-	  	
-	  	//get latest message for each thread
-	  	for(MessageThread thread : threads) {
-	  		thread.setMostRecentMessage(dao.getLatestMessageInThread(thread.getId()));
-	  	}
+		//get the page of thread ids, already in order
+		List<String> threadIds = dao.getMessageThreadIds(userId, offset, limit);
+		if(threadIds.isEmpty()) {
+			return new ArrayList<MessageThread>();
+		}
+		
+		//get the threads, latest messages and unread counts for the whole page at once
+		Map<String, MessageThread> threadsById = new HashMap<String, MessageThread>();
+		for(MessageThread thread : dao.getMessageThreads(threadIds)) {
+			threadsById.put(thread.getId(), thread);
+		}
+		
+		Map<String, Message> latestMessages = new HashMap<String, Message>();
+		for(Message message : dao.getLatestMessagesInThreads(threadIds)) {
+			//if two were posted at the same time, just take one
+			if(!latestMessages.containsKey(message.getThread())) {
+				latestMessages.put(message.getThread(), message);
+			}
+		}
+		
+		Map<String, Integer> unreadCounts = dao.getUnreadMessagesCounts(userId, threadIds);
+		
+		List<MessageThread> threads = new ArrayList<MessageThread>();
+		for(String threadId : threadIds) {
+			MessageThread thread = threadsById.get(threadId);
+			if(thread == null) {
+				continue;
+			}
+			thread.setMostRecentMessage(latestMessages.get(threadId));
+			
+			Integer unreadCount = unreadCounts.get(threadId);
+			thread.setUnreadMessagesCount(unreadCount != null ? unreadCount : 0);
+			
+			threads.add(thread);
+		}
 	  	
 	  	return threads;
 	}
@@ -193,6 +229,13 @@ public class ProfileMessagingLogicImpl implements ProfileMessagingLogic {
 		return dao.getMessagesInThread(threadId);
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public List<Message> getMessagesInThread(final String threadId, final int offset, final int limit) {
+		return dao.getMessagesInThread(threadId, offset, limit);
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -307,8 +350,9 @@ public class ProfileMessagingLogicImpl implements ProfileMessagingLogic {
 	private void sendMessageEmailNotification(final List<String> toUuids, final String fromUuid, final String directId, final String subject, final String messageStr, final EmailType messageType) {
 		
 		//is email notification enabled for this message type? Reformat the recipient list
+		Map<String, Boolean> enabled = preferencesLogic.isPreferenceEnabled(toUuids, messageType.toPreference());
 		for(Iterator<String> it = toUuids.iterator(); it.hasNext();) {
-			if(!preferencesLogic.isPreferenceEnabled(it.next(), messageType.toPreference())) {
+			if(!enabled.get(it.next())) {
 				it.remove();
 			}
 		}
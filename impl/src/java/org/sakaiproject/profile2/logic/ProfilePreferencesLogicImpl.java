@@ -15,15 +15,25 @@
  */
 package org.sakaiproject.profile2.logic;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import lombok.Setter;
 
 import org.apache.log4j.Logger;
-import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.profile2.cache.CacheLoader;
 import org.sakaiproject.profile2.cache.CacheManager;
+import org.sakaiproject.profile2.cache.ProfileCache;
 import org.sakaiproject.profile2.dao.ProfileDao;
 import org.sakaiproject.profile2.model.ProfilePreferences;
 import org.sakaiproject.profile2.types.PreferenceType;
 import org.sakaiproject.profile2.util.ProfileConstants;
+import org.springframework.dao.DataAccessException;
 
 /**
  * Implementation of ProfilePreferencesLogic API
@@ -35,7 +45,13 @@ public class ProfilePreferencesLogicImpl implements ProfilePreferencesLogic {
 
 	private static final Logger log = Logger.getLogger(ProfilePreferencesLogicImpl.class);
 
-	private Cache cache;
+	private ProfileCache<String, ProfilePreferences> cache;
+	
+	private final CacheLoader<String, ProfilePreferences> preferencesLoader = new CacheLoader<String, ProfilePreferences>() {
+		public ProfilePreferences load(String userId) {
+			return loadPreferencesRecord(userId);
+		}
+	};
 	private final String CACHE_NAME = "org.sakaiproject.profile2.cache.preferences";	
 	
 	/**
@@ -54,14 +70,25 @@ public class ProfilePreferencesLogicImpl implements ProfilePreferencesLogic {
 	  		throw new IllegalArgumentException("Null argument in ProfileLogic.getPreferencesRecordForUser"); 
 	  	}
 		
-		//check cache
+		//check cache, loading it if needed
 		if(useCache){
-			if(cache.containsKey(userId)){
-				log.debug("Fetching preferences record from cache for: " + userId);
-				return (ProfilePreferences)cache.get(userId);
-			}
+			return cache.get(userId, preferencesLoader);
 		}
 		
+		ProfilePreferences prefs = loadPreferencesRecord(userId);
+		if(prefs != null){
+			cache.put(userId, prefs);
+		}
+		return prefs;
+	}
+	
+	/**
+	 * Get the preferences record for a user from the dao, creating a default if they don't have one
+	 * @param userId
+	 * @return ProfilePreferences or null if it could not be retrieved or created
+	 */
+	private ProfilePreferences loadPreferencesRecord(final String userId) {
+		
 		//will stay null if we can't get or create a record
 		ProfilePreferences prefs = null;
 		
@@ -76,12 +103,6 @@ public class ProfilePreferencesLogicImpl implements ProfilePreferencesLogic {
 			}
 		}			
 		
-		//add to cache
-		if(prefs != null){
-			log.debug("Adding preferences record to cache for: " + userId);
-			cache.put(userId, prefs);
-		}
-		
 		//if still null, we can't do much except log an error and wait for an NPE.
 		if(prefs == null) {
 			log.error("Couldn't retrieve or create a preferences record for user: " + userId + " This is an error and you need to fix your installation.");
@@ -90,6 +111,69 @@ public class ProfilePreferencesLogicImpl implements ProfilePreferencesLogic {
 		return prefs;
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public Map<String, ProfilePreferences> getPreferencesRecordsForUsers(final Collection<String> userUuids) {
+		
+		Map<String, ProfilePreferences> records = new HashMap<String, ProfilePreferences>();
+		
+		//check cache, collect those we still need
+		records.putAll(cache.getAll(userUuids));
+		Set<String> uncached = new LinkedHashSet<String>();
+		for(String userUuid: userUuids) {
+			if(!records.containsKey(userUuid)) {
+				uncached.add(userUuid);
+			}
+		}
+		
+		if(uncached.isEmpty()) {
+			return records;
+		}
+		
+		//get the rest in one go
+		log.debug("Fetching preferences records from dao for " + uncached.size() + " users");
+		for(ProfilePreferences prefs: dao.getPreferencesRecordsForUsers(new ArrayList<String>(uncached))) {
+			records.put(prefs.getUserUuid(), prefs);
+			cache.put(prefs.getUserUuid(), prefs);
+		}
+		
+		//anyone left doesn't have a record yet, so create defaults for them all together
+		List<ProfilePreferences> defaults = new ArrayList<ProfilePreferences>();
+		for(String userUuid: uncached) {
+			if(!records.containsKey(userUuid)) {
+				defaults.add(getDefaultPreferencesRecord(userUuid));
+			}
+		}
+		
+		if(defaults.isEmpty()) {
+			return records;
+		}
+		
+		try {
+			dao.addNewPreferencesRecords(defaults);
+		} catch (DataAccessException e) {
+			//the batch has been rolled back. One of them may have been created in the meantime, so fall back to doing them one at a time
+			log.debug("Couldn't create default preferences records for " + defaults.size() + " users, creating them individually. " + e.getClass() + ": " + e.getMessage());
+			for(ProfilePreferences prefs: defaults) {
+				ProfilePreferences p = getPreferencesRecordForUser(prefs.getUserUuid(), false);
+				if(p != null) {
+					records.put(p.getUserUuid(), p);
+				}
+			}
+			return records;
+		}
+		
+		log.info("Created default preferences records for " + defaults.size() + " users"); 
+		for(ProfilePreferences prefs: defaults) {
+			records.put(prefs.getUserUuid(), prefs);
+			cache.put(prefs.getUserUuid(), prefs);
+			sakaiProxy.postEvent(ProfileConstants.EVENT_PREFERENCES_NEW, "/profile/"+prefs.getUserUuid(), true);
+		}
+		
+		return records;
+	}
+	
 	
 	
 	/**
@@ -118,6 +202,35 @@ public class ProfilePreferencesLogicImpl implements ProfilePreferencesLogic {
 		//get preferences record for this user
     	ProfilePreferences prefs = getPreferencesRecordForUser(userUuid);
     	
+    	return isPreferenceEnabled(prefs, type);
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public Map<String, Boolean> isPreferenceEnabled(final Collection<String> userUuids, final PreferenceType type) {
+		
+		Map<String, ProfilePreferences> records = getPreferencesRecordsForUsers(userUuids);
+		
+		Map<String, Boolean> enabled = new HashMap<String, Boolean>();
+		for(String userUuid: userUuids) {
+			enabled.put(userUuid, isPreferenceEnabled(records.get(userUuid), type));
+		}
+		return enabled;
+	}
+	
+	/**
+	 * Check a specific preference in a preferences record
+	 * @param prefs		the record, may be null
+	 * @param type		PreferenceType enum
+	 * @return true if enabled, false if not or if there is no record
+	 */
+	private boolean isPreferenceEnabled(ProfilePreferences prefs, final PreferenceType type) {
+		
+		if(prefs == null) {
+			return false;
+		}
+		
     	boolean result=false;
     	
     	switch (type) {
@@ -132,7 +245,7 @@ public class ProfilePreferencesLogicImpl implements ProfilePreferencesLogic {
     		case EMAIL_NOTIFICATION_WORKSITE_NEW: result = prefs.isWorksiteNewEmailEnabled(); break;
     		default: 
     			//invalid type
-    	    	log.debug("ProfileLogic.isPreferenceEnabled. False for userId: " + userUuid + ", type: " + type);  
+    	    	log.debug("ProfileLogic.isPreferenceEnabled. False for userId: " + prefs.getUserUuid() + ", type: " + type);  
     			result = false; 
     		break;
     	}
@@ -167,7 +280,7 @@ public class ProfilePreferencesLogicImpl implements ProfilePreferencesLogic {
 	
 	
 	public void init() {
-		cache = cacheManager.createCache(CACHE_NAME);
+		cache = cacheManager.createProfileCache(CACHE_NAME);
 	}
 	
 	@Setter
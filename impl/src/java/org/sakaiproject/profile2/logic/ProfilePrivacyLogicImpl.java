@@ -15,17 +15,23 @@
  */
 package org.sakaiproject.profile2.logic;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import lombok.Setter;
 
 import org.apache.log4j.Logger;
-import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.profile2.cache.CacheLoader;
 import org.sakaiproject.profile2.cache.CacheManager;
+import org.sakaiproject.profile2.cache.ProfileCache;
 import org.sakaiproject.profile2.dao.ProfileDao;
 import org.sakaiproject.profile2.model.ProfilePrivacy;
 import org.sakaiproject.profile2.types.PrivacyType;
 import org.sakaiproject.profile2.util.ProfileConstants;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 
 /**
  * Implementation of ProfilePrivacyLogic API
@@ -37,9 +43,20 @@ public class ProfilePrivacyLogicImpl implements ProfilePrivacyLogic {
 
 	private static final Logger log = Logger.getLogger(ProfilePrivacyLogicImpl.class);
 	
-	private Cache cache;
+	private ProfileCache<String, ProfilePrivacy> cache;
+	
+	private final CacheLoader<String, ProfilePrivacy> privacyLoader = new CacheLoader<String, ProfilePrivacy>() {
+		public ProfilePrivacy load(String userId) {
+			return loadPrivacyRecord(userId);
+		}
+	};
 	private final String CACHE_NAME = "org.sakaiproject.profile2.cache.privacy";	
 	
+	//per request store of privacy decisions
+	private final String DECISIONS_KEY = "org.sakaiproject.profile2.privacy.decisions";
+	private static final long DECISIONS_TTL = 30 * 1000;
+	private static final int DECISIONS_MAX = 1000;
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -56,14 +73,25 @@ public class ProfilePrivacyLogicImpl implements ProfilePrivacyLogic {
 	  		throw new IllegalArgumentException("Null argument in ProfileLogic.getPrivacyRecordForUser"); 
 	  	}
 		
-		//check cache
+		//check cache, loading it if needed
 		if(useCache) {
-			if(cache.containsKey(userId)){
-				log.debug("Fetching privacy record from cache for: " + userId);
-				return (ProfilePrivacy)cache.get(userId);
-			}
+			return cache.get(userId, privacyLoader);
 		}
 		
+		ProfilePrivacy privacy = loadPrivacyRecord(userId);
+		if(privacy != null) {
+			cache.put(userId, privacy);
+		}
+		return privacy;
+	}
+	
+	/**
+	 * Get the privacy record for a user from the dao, creating a default if they don't have one
+	 * @param userId
+	 * @return ProfilePrivacy or null if it could not be retrieved or created
+	 */
+	private ProfilePrivacy loadPrivacyRecord(final String userId) {
+		
 		//will stay null if we can't get or create one
 		ProfilePrivacy privacy = null;
 		
@@ -79,12 +107,6 @@ public class ProfilePrivacyLogicImpl implements ProfilePrivacyLogic {
 			}
 		}
 		
-		//add to cache
-		if(privacy != null) {
-			log.debug("Adding privacy record to cache for: " + userId);
-			cache.put(userId, privacy);
-		}
-		
 		//if still null, we can't do much except log an error and wait for an NPE.
 		if(privacy == null) {
 			log.error("Couldn't retrieve or create a privacy record for user: " + userId + " This is an error and you need to fix your installation.");
@@ -93,6 +115,46 @@ public class ProfilePrivacyLogicImpl implements ProfilePrivacyLogic {
 		return privacy;
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public Map<String, ProfilePrivacy> getPrivacyRecordsForUsers(final List<String> userUuids) {
+		
+		Map<String, ProfilePrivacy> records = new HashMap<String, ProfilePrivacy>();
+		
+		//check cache, collect those we still need
+		records.putAll(cache.getAll(userUuids));
+		List<String> uncached = new ArrayList<String>();
+		for(String userUuid: userUuids) {
+			if(!records.containsKey(userUuid)) {
+				uncached.add(userUuid);
+			}
+		}
+		
+		if(uncached.isEmpty()) {
+			return records;
+		}
+		
+		//get the rest in one go
+		log.debug("Fetching privacy records from dao for " + uncached.size() + " users");
+		for(ProfilePrivacy privacy: dao.getPrivacyRecordsForUsers(uncached)) {
+			records.put(privacy.getUserUuid(), privacy);
+			cache.put(privacy.getUserUuid(), privacy);
+		}
+		
+		//anyone left doesn't have a record yet, so go via the normal method which will create a default
+		for(String userUuid: uncached) {
+			if(!records.containsKey(userUuid)) {
+				ProfilePrivacy privacy = getPrivacyRecordForUser(userUuid, false);
+				if(privacy != null) {
+					records.put(userUuid, privacy);
+				}
+			}
+		}
+		
+		return records;
+	}
+	
 	/**
  	 * {@inheritDoc}
  	 */
@@ -111,6 +173,8 @@ public class ProfilePrivacyLogicImpl implements ProfilePrivacyLogic {
 			//update cache
 			log.debug("Updated privacy record in cache for: " + privacy.getUserUuid());
 			cache.put(privacy.getUserUuid(), privacy);
+			clearCachedDecisions();
+			kudosLogic.invalidateKudos(privacy.getUserUuid());
 			
 			return true;
 		} 
@@ -130,21 +194,135 @@ public class ProfilePrivacyLogicImpl implements ProfilePrivacyLogic {
     		return true;
     	}
     	
-    	//get privacy record for this user
+    	if(log.isDebugEnabled()){
+	    	log.debug("ProfilePrivacyLogic.isActionAllowed. userX: " + userX + ", userY: " + userY + ", type: " + type);  
+    	}
+    	
+    	//get all decisions for this pair
+    	Map<PrivacyType, Boolean> decisions = getDecisions(userX, userY);
+    	if(decisions == null) {
+    		return false;
+    	}
+    	
+    	Boolean result = decisions.get(type);
+    	if(result == null) {
+    		//invalid type
+	    	log.error("ProfilePrivacyLogic.isActionAllowed. False for userX: " + userX + ", userY: " + userY + ", type: " + type);  
+    		return false;
+    	}
+	
+    	return result.booleanValue();
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public Map<String, Boolean> isActionAllowedForUsers(final List<String> userXs, final String userY, final PrivacyType type) {
+		
+		Map<String, Boolean> results = new HashMap<String, Boolean>();
+		
+		//get all privacy records in one go, the connections for userY are cached as a set so the checks are just lookups
+		Map<String, ProfilePrivacy> records = getPrivacyRecordsForUsers(userXs);
+		
+		for(String userX: userXs) {
+			
+			//if user is requesting own info, they ARE allowed
+			if(userX.equals(userY)) {
+				results.put(userX, true);
+				continue;
+			}
+			
+			ProfilePrivacy profilePrivacy = records.get(userX);
+			if(profilePrivacy == null) {
+				log.error("ProfilePrivacyLogic.isActionAllowedForUsers. Couldn't get a ProfilePrivacy record for userX: " + userX);   
+				results.put(userX, false);
+				continue;
+			}
+			
+			Boolean result = evaluate(profilePrivacy, connectionsLogic.isUserXFriendOfUserY(userX, userY), type);
+			results.put(userX, result != null && result.booleanValue());
+		}
+		
+		return results;
+	}
+	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public void clearCachedDecisions() {
+		threadLocalManager.set(DECISIONS_KEY, null);
+	}
+	
+	/**
+	 * Get the decisions for every PrivacyType for the given pair of users.
+	 * 
+	 * <p>The privacy record and connection status are only looked up once for the pair, and the result is
+	 * kept for the rest of the request so that repeated checks, eg while building a UserProfile, are just a map lookup.</p>
+	 * 
+	 * @param userX			the uuid of the user that will have the action performed on them
+	 * @param userY			uuid of user requesting to do the action
+	 * @return Map of PrivacyType to decision, or null if there is no privacy record for userX. 
+	 * 	A null decision means the type is not valid.
+	 */
+	private Map<PrivacyType, Boolean> getDecisions(final String userX, final String userY) {
+		
+		//check if we already worked it out during this request
+		RequestDecisions requestDecisions = getRequestDecisions();
+		String key = userX + "/" + userY;
+		
+		Map<PrivacyType, Boolean> decisions = requestDecisions.get(key);
+		if(decisions != null) {
+			return decisions;
+		}
+		
+		//get privacy record for this user
     	ProfilePrivacy profilePrivacy = getPrivacyRecordForUser(userX);
     	if(profilePrivacy == null) {
     		log.error("ProfilePrivacyLogic.isActionAllowed. Couldn't get a ProfilePrivacy record for userX: " + userX);   
-        	return false;
+        	return null;
     	}
     	
     	boolean isConnected = connectionsLogic.isUserXFriendOfUserY(userX, userY);
-		
-    	boolean result=false;
     	
-    	if(log.isDebugEnabled()){
-	    	log.debug("ProfilePrivacyLogic.isActionAllowed. userX: " + userX + ", userY: " + userY + ", type: " + type);  
+    	//work out every type in one go
+    	decisions = new EnumMap<PrivacyType, Boolean>(PrivacyType.class);
+    	for(PrivacyType t: PrivacyType.values()) {
+    		decisions.put(t, evaluate(profilePrivacy, isConnected, t));
     	}
     	
+    	requestDecisions.put(key, decisions);
+    	return decisions;
+	}
+	
+	/**
+	 * Get the holder for the decisions made during this request, creating a new one if there is none or it has expired.
+	 * 
+	 * <p>Sakai clears thread locals at the end of each request. Threads that aren't servicing a request, like jobs, 
+	 * are not cleared so the holder also expires after a short time.</p>
+	 * 
+	 * @return RequestDecisions for the current thread
+	 */
+	private RequestDecisions getRequestDecisions() {
+		RequestDecisions requestDecisions = (RequestDecisions) threadLocalManager.get(DECISIONS_KEY);
+		if(requestDecisions == null || requestDecisions.isExpired()) {
+			requestDecisions = new RequestDecisions();
+			threadLocalManager.set(DECISIONS_KEY, requestDecisions);
+		}
+		return requestDecisions;
+	}
+	
+	/**
+	 * Evaluate a single PrivacyType against a privacy record.
+	 * 
+	 * @param profilePrivacy	the ProfilePrivacy record for the user that will have the action performed on them
+	 * @param isConnected		whether the requesting user is connected to that user
+	 * @param type				PrivacyType enum
+	 * @return true if allowed, false if not, null if the type is not valid
+	 */
+	private Boolean evaluate(final ProfilePrivacy profilePrivacy, final boolean isConnected, final PrivacyType type) {
+		
+    	Boolean result=false;
+    	
     	switch (type) {
 		
 	    	case PRIVACY_OPTION_PROFILEIMAGE:
@@ -443,9 +621,8 @@ public class ProfilePrivacyLogicImpl implements ProfilePrivacyLogic {
 	    		
 			
 			default: 
-				//invalid type
-		    	log.error("ProfilePrivacyLogic.isActionAllowed. False for userX: " + userX + ", userY: " + userY + ", type: " + type);  
-				result = false; 
+				//invalid type, caller will log
+				result = null; 
 			break;
     	}
 	
@@ -494,8 +671,34 @@ public class ProfilePrivacyLogicImpl implements ProfilePrivacyLogic {
 		return privacy;
 	}
 	
+	/**
+	 * Holder for the privacy decisions made during a request, keyed on userX/userY.
+	 * Only ever used by a single thread.
+	 */
+	private static class RequestDecisions {
+		
+		private final long created = System.currentTimeMillis();
+		private final Map<String, Map<PrivacyType, Boolean>> decisions = new HashMap<String, Map<PrivacyType, Boolean>>();
+		
+		public Map<PrivacyType, Boolean> get(String key) {
+			return decisions.get(key);
+		}
+		
+		public void put(String key, Map<PrivacyType, Boolean> value) {
+			//don't let this grow unbounded if we are checking a large number of users
+			if(decisions.size() >= DECISIONS_MAX) {
+				decisions.clear();
+			}
+			decisions.put(key, value);
+		}
+		
+		public boolean isExpired() {
+			return System.currentTimeMillis() - created > DECISIONS_TTL;
+		}
+	}
+	
 	public void init() {
-		cache = cacheManager.createCache(CACHE_NAME);
+		cache = cacheManager.createProfileCache(CACHE_NAME);
 	}
 
 	@Setter
@@ -510,4 +713,10 @@ public class ProfilePrivacyLogicImpl implements ProfilePrivacyLogic {
 	@Setter
 	private ProfileConnectionsLogic connectionsLogic;
 	
+	@Setter
+	private ThreadLocalManager threadLocalManager;
+	
+	@Setter
+	private ProfileKudosLogic kudosLogic;
+	
 }
@@ -20,7 +20,13 @@ package org.sakaiproject.profile2.logic;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -32,11 +38,11 @@ import org.sakaiproject.authz.api.Member;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.profile2.cache.CacheManager;
 import org.sakaiproject.profile2.dao.ProfileDao;
-import org.sakaiproject.profile2.model.BasicConnection;
 import org.sakaiproject.profile2.model.Person;
 import org.sakaiproject.profile2.model.ProfileSearchTerm;
+import org.sakaiproject.profile2.search.ProfileSearchIndex;
+import org.sakaiproject.profile2.search.ProfileSearchIndex.Field;
 import org.sakaiproject.profile2.util.ProfileConstants;
-import org.sakaiproject.profile2.util.ProfileUtils;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.user.api.User;
 
@@ -57,76 +63,53 @@ public class ProfileSearchLogicImpl implements ProfileSearchLogic {
  	 * {@inheritDoc}
  	 */
 	public List<Person> findUsersByNameOrEmail(String search, boolean includeConnections, String worksiteId) {
-				
-		//add users from SakaiPerson (clean list)
-		List<String> sakaiPersonUuids = dao.findSakaiPersonsByNameOrEmail(search);	
-		List<User> users = sakaiProxy.getUsers(sakaiPersonUuids);
-
-		//add local users from UserDirectoryService
-		users.addAll(sakaiProxy.searchUsers(search));
 		
-		//add external users from UserDirectoryService
-		users.addAll(sakaiProxy.searchExternalUsers(search));
+		SearchFilter filter = getSearchFilter(includeConnections, worksiteId);
+		if(filter.acceptsNone()) {
+			return new ArrayList<Person>();
+		}
+		int maxResults = sakaiProxy.getMaxSearchResults();
 		
-		//remove duplicates
-		ProfileUtils.removeDuplicates(users);
+		//matches are collected in order until we have enough, later sources are only searched if we need more
+		Map<String, User> matches = new LinkedHashMap<String, User>();
 		
-		//remove connections if requested
-		if (false == includeConnections) {
-			removeConnectionsFromUsers(users);
-		}
+		//add users from SakaiPerson
+		addUsersByUuid(matches, findSakaiPersonsByNameOrEmail(search), filter, maxResults);
 		
-		//if worksite id is specified
-		if (null != worksiteId) {
-			//remove any matches that are not in specified worksite
-			users = removeNonWorksiteMembersFromUsers(users, worksiteId);
+		//add local users from UserDirectoryService
+		if(matches.size() < maxResults) {
+			addUsers(matches, sakaiProxy.searchUsers(search), filter, maxResults);
 		}
 		
-		log.debug("Found " + users.size() + " results for search: " + search);
-		
-		//restrict to only return the max number. UI will print message
-		int maxResults = sakaiProxy.getMaxSearchResults();
-		if(users.size() >= maxResults) {
-			users = users.subList(0, maxResults);
+		//add external users from UserDirectoryService
+		if(matches.size() < maxResults) {
+			addUsers(matches, sakaiProxy.searchExternalUsers(search), filter, maxResults);
 		}
 		
-		//remove invisible
-		users = removeInvisibleUsers(users);
+		log.debug("Found " + matches.size() + " results for search: " + search);
 		
-		return profileLogic.getPersons(users);
+		//only the results we are returning are turned into Persons. If we hit the max, the UI will print a message
+		return profileLogic.getPersons(new ArrayList<User>(matches.values()));
 	}
 	
 	/**
  	 * {@inheritDoc}
  	 */
 	public List<Person> findUsersByInterest(String search, boolean includeConnections, String worksiteId) {
-				
-		//add users from SakaiPerson		
-		List<String> sakaiPersonUuids = dao.findSakaiPersonsByInterest(search, sakaiProxy.isBusinessProfileEnabled());
 		
-		//remove connections if requested
-		if (false == includeConnections) {
-			removeConnectionsFromUserIds(sakaiPersonUuids);
-		}
-		
-		//if worksite id is specified
-		if (null != worksiteId) {
-			//remove any matches that are not in specified worksite
-			sakaiPersonUuids = removeNonWorksiteMembersFromUserIds(sakaiPersonUuids, worksiteId);
+		SearchFilter filter = getSearchFilter(includeConnections, worksiteId);
+		if(filter.acceptsNone()) {
+			return new ArrayList<Person>();
 		}
-		
-		List<User> users = sakaiProxy.getUsers(sakaiPersonUuids);
-		
-		//restrict to only return the max number. UI will print message
 		int maxResults = sakaiProxy.getMaxSearchResults();
-		if(users.size() >= maxResults) {
-			users = users.subList(0, maxResults);
-		}
 		
-		//remove invisible
-		users = removeInvisibleUsers(users);
+		//add users from SakaiPerson
+		Map<String, User> matches = new LinkedHashMap<String, User>();
+		addUsersByUuid(matches, findSakaiPersonsByInterest(search, sakaiProxy.isBusinessProfileEnabled()), filter, maxResults);
+		
+		log.debug("Found " + matches.size() + " results for search: " + search);
 		
-		return profileLogic.getPersons(users);
+		return profileLogic.getPersons(new ArrayList<User>(matches.values()));
 	}
 	
 	/**
@@ -210,120 +193,157 @@ public class ProfileSearchLogicImpl implements ProfileSearchLogic {
 	}
 	
 	/**
-	 * Remove invisible users from the list
-	 * @param users
-	 * @return cleaned list
+	 * Find users whose SakaiPerson nickname or email matches the search, using the search index if it is ready
+	 * @param search
+	 * @return list of uuids, best match first if the index was used
 	 */
-	private List<User> removeInvisibleUsers(List<User> users){
-		
-		//if superuser return list unchanged.
-		if(sakaiProxy.isSuperUser()){
-			return users;
+	private List<String> findSakaiPersonsByNameOrEmail(String search) {
+		if(searchIndex.isReady()) {
+			return searchIndex.search(search, EnumSet.of(Field.NAME_EMAIL));
 		}
-		
-		//get list of invisible users as Users
-		List<User> invisibleUsers = sakaiProxy.getUsers(sakaiProxy.getInvisibleUsers());
-		if(invisibleUsers.isEmpty()) {
-			return users;
+		return dao.findSakaiPersonsByNameOrEmail(search);
+	}
+	
+	/**
+	 * Find users whose SakaiPerson interests match the search, using the search index if it is ready
+	 * @param search
+	 * @param includeBusinessBio
+	 * @return list of uuids, best match first if the index was used
+	 */
+	private List<String> findSakaiPersonsByInterest(String search, boolean includeBusinessBio) {
+		if(searchIndex.isReady()) {
+			return searchIndex.search(search, includeBusinessBio ? EnumSet.of(Field.INTERESTS, Field.BUSINESS) : EnumSet.of(Field.INTERESTS));
 		}
-		
-		//remove
-		users.removeAll(invisibleUsers);
-		
-		return users;
+		return dao.findSakaiPersonsByInterest(search, includeBusinessBio);
 	}
 	
 	/**
-	 * Remove any connections from list of users.
-	 * 
+	 * Sort users into the same order as the list of uuids they were looked up from, since getUsers does not keep the order.
 	 * @param users
+	 * @param rankedUuids
 	 */
-	private void removeConnectionsFromUsers(List<User> users) {
-
-		List<BasicConnection> connections = connectionsLogic.getBasicConnectionsForUser(sakaiProxy.getCurrentUserId());
-		for (BasicConnection connection : connections) {
-			for (User user : users) {
-				if (user.getId().equals(connection.getUuid())) {
-					users.remove(user);
-					break;
+	private void sortByRank(List<User> users, List<String> rankedUuids) {
+		final Map<String, Integer> ranks = new HashMap<String, Integer>();
+		for(int i = 0; i < rankedUuids.size(); i++) {
+			ranks.put(rankedUuids.get(i), i);
+		}
+		Collections.sort(users, new Comparator<User>() {
+			public int compare(User u1, User u2) {
+				Integer r1 = ranks.get(u1.getId());
+				Integer r2 = ranks.get(u2.getId());
+				return (r1 == null ? Integer.MAX_VALUE : r1) - (r2 == null ? Integer.MAX_VALUE : r2);
+			}
+		});
+	}
+	
+	/**
+	 * Add matching users to the results, in order, until there are max results. 
+	 * Users are only looked up for uuids that pass the filter, and only as many as we still need.
+	 * 
+	 * @param matches		results so far, keyed on uuid
+	 * @param userUuids		uuids of the candidate users, best match first
+	 * @param filter		the users to leave out
+	 * @param max			maximum number of results
+	 */
+	private void addUsersByUuid(Map<String, User> matches, List<String> userUuids, SearchFilter filter, int max) {
+		
+		Iterator<String> candidates = userUuids.iterator();
+		while(matches.size() < max && candidates.hasNext()) {
+			
+			//take the next lot of candidates that could be used
+			Set<String> chunk = new LinkedHashSet<String>();
+			while(chunk.size() < max - matches.size() && candidates.hasNext()) {
+				String userUuid = candidates.next();
+				if(filter.accepts(userUuid) && !matches.containsKey(userUuid)) {
+					chunk.add(userUuid);
 				}
 			}
-
+			
+			//getUsers drops any that no longer exist, so we may go round again
+			List<String> chunkUuids = new ArrayList<String>(chunk);
+			List<User> users = sakaiProxy.getUsers(chunkUuids);
+			sortByRank(users, chunkUuids);
+			for(User user : users) {
+				matches.put(user.getId(), user);
+			}
 		}
 	}
 	
 	/**
-	 * Remove any connections from list of user ids.
+	 * Add matching users to the results, in order, until there are max results.
 	 * 
-	 * @param userIds
+	 * @param matches		results so far, keyed on uuid
+	 * @param users			candidate users
+	 * @param filter		the users to leave out
+	 * @param max			maximum number of results
 	 */
-	private void removeConnectionsFromUserIds(List<String> userIds) {
-
-		List<BasicConnection> connections = connectionsLogic.getBasicConnectionsForUser(sakaiProxy.getCurrentUserId());
-		for (BasicConnection connection : connections) {
-			if (userIds.contains(connection.getUuid())) {
-				userIds.remove(connection.getUuid());
+	private void addUsers(Map<String, User> matches, List<User> users, SearchFilter filter, int max) {
+		for(User user : users) {
+			if(matches.size() >= max) {
+				break;
+			}
+			if(filter.accepts(user.getId()) && !matches.containsKey(user.getId())) {
+				matches.put(user.getId(), user);
 			}
-
 		}
 	}
 	
 	/**
-	 * Remove any non-worksite members from list of users.
+	 * Work out which users should be left out of the search results for the current user.
 	 * 
-	 * @param users
-	 * @param worksiteId
-	 * @return a list of matching worksite member users.
+	 * @param includeConnections	should connections be returned in results
+	 * @param worksiteId			if set, only members of this site are returned
+	 * @return
 	 */
-	private List<User> removeNonWorksiteMembersFromUsers(List<User> users, String worksiteId) {
+	private SearchFilter getSearchFilter(boolean includeConnections, String worksiteId) {
 		
-		List<User> worksiteMembers = new ArrayList<User>();
+		SearchFilter filter = new SearchFilter();
 		
-		Site site = sakaiProxy.getSite(worksiteId);
-		if (null == site) {
-			log.error("Unable to receive worksite with id: " + worksiteId);
-		} else {
-			Set<Member> members = sakaiProxy.getSite(worksiteId).getMembers();
-			for (Member member : members) {
-				for (User user : users) {
-					if (user.getId().equals(member.getUserId())) {
-						worksiteMembers.add(user);
-						break;
-					}
+		//invisible users, unless superuser
+		if(!sakaiProxy.isSuperUser()) {
+			filter.excluded.addAll(sakaiProxy.getInvisibleUsers());
+		}
+		
+		//connections if requested
+		if (false == includeConnections) {
+			filter.excluded.addAll(connectionsLogic.getConnectionUserIdsForUser(sakaiProxy.getCurrentUserId()));
+		}
+		
+		//if worksite id is specified, only its members
+		if (null != worksiteId) {
+			filter.allowed = new HashSet<String>();
+			
+			Site site = sakaiProxy.getSite(worksiteId);
+			if (null == site) {
+				log.error("Unable to receive worksite with id: " + worksiteId);
+			} else {
+				for (Member member : site.getMembers()) {
+					filter.allowed.add(member.getUserId());
 				}
 			}
 		}
 		
-		return worksiteMembers;
+		return filter;
 	}
 	
 	/**
-	 * Remove any non-worksite members from list of user ids.
-	 * 
-	 * @param userIds
-	 * @param worksiteId
-	 * @return a list of matching worksite member user ids.
+	 * The users to leave out of a set of search results
 	 */
-	private List<String> removeNonWorksiteMembersFromUserIds(List<String> userIds, String worksiteId) {
+	private static class SearchFilter {
 		
-		List<String> worksiteMemberIds = new ArrayList<String>();
+		//never returned
+		private final Set<String> excluded = new HashSet<String>();
 		
-		Site site = sakaiProxy.getSite(worksiteId);
-		if (null == site) {
-			log.error("Unable to receive worksite with id: " + worksiteId);
-		} else {
-			Set<Member> members = sakaiProxy.getSite(worksiteId).getMembers();
-			for (Member member : members) {
-				for (String userId : userIds) {
-					if (userId.equals(member.getUserId())) {
-						worksiteMemberIds.add(userId);
-						break;
-					}
-				}
-			}
+		//if set, only these are returned
+		private Set<String> allowed;
+		
+		boolean accepts(String userUuid) {
+			return !excluded.contains(userUuid) && (allowed == null || allowed.contains(userUuid));
+		}
+		
+		boolean acceptsNone() {
+			return allowed != null && allowed.isEmpty();
 		}
-
-		return worksiteMemberIds;
 	}
 	
 	public void init() {
@@ -345,4 +365,7 @@ public class ProfileSearchLogicImpl implements ProfileSearchLogic {
 	@Setter
 	private CacheManager cacheManager;
 	
+	@Setter
+	private ProfileSearchIndex searchIndex;
+	
 }
@@ -15,8 +15,12 @@
  */
 package org.sakaiproject.profile2.logic;
 
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import lombok.Setter;
 
@@ -60,13 +64,8 @@ public class ProfileStatusLogicImpl implements ProfileStatusLogic {
         	}
         }
 		
-		// compute oldest date for status 
-		Calendar cal = Calendar.getInstance(); 
-		cal.add(Calendar.DAY_OF_YEAR, -7); 
-		final Date oldestStatusDate = cal.getTime(); 
-		
 		//get data
-		ProfileStatus status = dao.getUserStatus(userUuid, oldestStatusDate);
+		ProfileStatus status = dao.getUserStatus(userUuid, getOldestStatusDate());
 		if(status == null){
 			return null;
 		}
@@ -86,6 +85,38 @@ public class ProfileStatusLogicImpl implements ProfileStatusLogic {
 		return getUserStatus(userUuid, privacyLogic.getPrivacyRecordForUser(userUuid));
 	}
 	
+	/**
+ 	 * {@inheritDoc}
+ 	 */
+	public Map<String, ProfileStatus> getUserStatuses(final List<String> userUuids) {
+		
+		Map<String, ProfileStatus> statuses = new HashMap<String, ProfileStatus>();
+		
+		String currentUserUuid = sakaiProxy.getCurrentUserId();
+		
+		//only fetch those we are allowed to see
+		List<String> allowedUuids = new ArrayList<String>();
+		for(String userUuid: userUuids) {
+			if(StringUtils.equals(userUuid, currentUserUuid) || privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_MYSTATUS)) {
+				allowedUuids.add(userUuid);
+			}
+		}
+		
+		if(allowedUuids.isEmpty()) {
+			return statuses;
+		}
+		
+		for(ProfileStatus status: dao.getUserStatuses(allowedUuids, getOldestStatusDate())) {
+			//format the date field
+			if(status.getDateAdded() != null){
+				status.setDateFormatted(ProfileUtils.convertDateForStatus(status.getDateAdded()));
+			}
+			statuses.put(status.getUserUuid(), status);
+		}
+		
+		return statuses;
+	}
+	
 	
 	
 	/**
@@ -155,6 +186,16 @@ public class ProfileStatusLogicImpl implements ProfileStatusLogic {
 		return dao.getStatusUpdatesCount(userUuid);
 	}
 	
+	/**
+	 * Compute the oldest date that a status can have and still be shown
+	 * @return Date one week ago
+	 */
+	private Date getOldestStatusDate() {
+		Calendar cal = Calendar.getInstance(); 
+		cal.add(Calendar.DAY_OF_YEAR, -7); 
+		return cal.getTime();
+	}
+	
 	
 	
 	@Setter
@@ -27,7 +27,7 @@ import lombok.Setter;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.sakaiproject.profile2.dao.ProfileDao;
-import org.sakaiproject.profile2.model.Person;
+import org.sakaiproject.profile2.feed.ProfileFeedService;
 import org.sakaiproject.profile2.model.ProfilePrivacy;
 import org.sakaiproject.profile2.model.WallItem;
 import org.sakaiproject.profile2.model.WallItemComment;
@@ -51,7 +51,7 @@ public class ProfileWallLogicImpl implements ProfileWallLogic {
 		
 	}
 	
-	private boolean addNewItemToWall(int itemType, String itemText, final String userUuid) {
+	private WallItem addNewItemToWall(int itemType, String itemText, final String userUuid) {
 		
 		final WallItem wallItem = new WallItem();
 
@@ -62,8 +62,10 @@ public class ProfileWallLogicImpl implements ProfileWallLogic {
 		// this string is mapped to a localized resource string in GUI
 		wallItem.setText(itemText);
 		
-		return dao.addNewWallItemForUser(userUuid, wallItem);
-		
+		if (dao.addNewWallItemForUser(userUuid, wallItem)) {
+			return wallItem;
+		}
+		return null;
 	}
 	
 	/**
@@ -73,15 +75,21 @@ public class ProfileWallLogicImpl implements ProfileWallLogic {
 		return dao.addNewCommentToWallItem(wallItemComment);
 	}
 	
-	private void notifyConnections(int itemType, String itemText, final String userUuid) {
+	private void notifyConnections(WallItem wallItem) {
+		
+		final int itemType = wallItem.getType();
+		final String userUuid = wallItem.getCreatorUuid();
 		
 		// get the connections of the creator of this content
-		final List<Person> connections = connectionsLogic.getConnectionsForUser(userUuid);
+		final List<String> connections = connectionsLogic.getConnectionUserIdsForUser(userUuid);
 
-		if (null == connections || 0 == connections.size()) {
+		if (connections.isEmpty()) {
 			// there are therefore no walls to post event to
 			return;
 		}
+		
+		// add to the news feeds of the connections
+		feedService.publish(wallItem, connections);
 
 		// set corresponding message type and exit if type unknown
 		final EmailType itemMessageType;
@@ -97,31 +105,39 @@ public class ProfileWallLogicImpl implements ProfileWallLogic {
 				return;
 		}
 		
-		Thread thread = new Thread() {
-			public void run() {
-
-				List<String> uuidsToEmail = new ArrayList<String>();
-
-				for (Person connection : connections) {
-
-					// only send email if user has preference set
-					if (true == preferencesLogic.isPreferenceEnabled(connection.getUuid(), itemMessageType.toPreference())) {
-						uuidsToEmail.add(connection.getUuid());
-					}
-				}
-
-				sendWallNotificationEmailToConnections(uuidsToEmail, userUuid, itemMessageType);
+		sendWallNotificationEmailToConnections(getUuidsToEmail(connections, itemMessageType), userUuid, itemMessageType);
+	}
+	
+	/**
+	 * Get the uuids of the connections that want to be emailed about new wall items.
+	 * The preferences are fetched in bulk rather than once per connection.
+	 * 
+	 * @param connectionUuids	uuids of the connections to check
+	 * @param messageType		the type of wall item
+	 * @return List of uuids, empty if none.
+	 */
+	private List<String> getUuidsToEmail(List<String> connectionUuids, EmailType messageType) {
+		
+		Map<String, Boolean> enabled = preferencesLogic.isPreferenceEnabled(connectionUuids, messageType.toPreference());
+		
+		List<String> uuidsToEmail = new ArrayList<String>();
+		for (String connectionUuid : connectionUuids) {
+			
+			// only send email if user has preference set
+			if (enabled.get(connectionUuid)) {
+				uuidsToEmail.add(connectionUuid);
 			}
-		};
-		thread.start();
+		}
+		return uuidsToEmail;
 	}
 	
 	/**
 	 * {@inheritDoc}
 	 */
 	public void addNewEventToWall(String event, final String userUuid) {
-		if (addNewItemToWall(ProfileConstants.WALL_ITEM_TYPE_EVENT, event, userUuid)) {
-			notifyConnections(ProfileConstants.WALL_ITEM_TYPE_EVENT, event, userUuid);
+		WallItem wallItem = addNewItemToWall(ProfileConstants.WALL_ITEM_TYPE_EVENT, event, userUuid);
+		if (null != wallItem) {
+			notifyConnections(wallItem);
 		}
 	}
 	
@@ -129,8 +145,9 @@ public class ProfileWallLogicImpl implements ProfileWallLogic {
 	 * {@inheritDoc}
 	 */
 	public void addNewStatusToWall(String status, String userUuid) {
-		if (addNewItemToWall(ProfileConstants.WALL_ITEM_TYPE_STATUS, status, userUuid)) {
-			notifyConnections(ProfileConstants.WALL_ITEM_TYPE_STATUS, status, userUuid);
+		WallItem wallItem = addNewItemToWall(ProfileConstants.WALL_ITEM_TYPE_STATUS, status, userUuid);
+		if (null != wallItem) {
+			notifyConnections(wallItem);
 		}
 	}
 	
@@ -150,27 +167,11 @@ public class ProfileWallLogicImpl implements ProfileWallLogic {
 		// and if they have posted on their own wall, let connections know
 		else {
 			// get the connections of the user associated with the wall
-			final List<Person> connections = connectionsLogic.getConnectionsForUser(userUuid);
-
-			if (null != connections) {
+			final List<String> connections = connectionsLogic.getConnectionUserIdsForUser(userUuid);
 
-				Thread thread = new Thread() {
-					public void run() {
-
-						List<String> uuidsToEmail = new ArrayList<String>();
-
-						for (Person connection : connections) {
-
-							// only send email if user has preference set
-							if (preferencesLogic.isPreferenceEnabled(connection.getUuid(), EmailType.EMAIL_NOTIFICATION_WALL_POST_CONNECTION_NEW.toPreference())) {
-								uuidsToEmail.add(connection.getUuid());
-							}
-						}
-
-						sendWallNotificationEmailToConnections(uuidsToEmail, userUuid, EmailType.EMAIL_NOTIFICATION_WALL_POST_CONNECTION_NEW);
-					}
-				};
-				thread.start();
+			if (!connections.isEmpty()) {
+				feedService.publish(wallItem, connections);
+				sendWallNotificationEmailToConnections(getUuidsToEmail(connections, EmailType.EMAIL_NOTIFICATION_WALL_POST_CONNECTION_NEW), userUuid, EmailType.EMAIL_NOTIFICATION_WALL_POST_CONNECTION_NEW);
 			}
 		}
 
@@ -181,6 +182,7 @@ public class ProfileWallLogicImpl implements ProfileWallLogic {
 	 * {@inheritDoc}
 	 */
 	public boolean removeWallItemFromWall(WallItem wallItem) {
+		dao.removeFeedItemsForWallItem(wallItem.getId());
 		return dao.removeWallItemFromWall(wallItem);
 	}
 	
@@ -238,6 +240,30 @@ public class ProfileWallLogicImpl implements ProfileWallLogic {
 				.getPrivacyRecordForUser(userUuid));
 	}
 	
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<WallItem> getWallItemsForUser(String userUuid, int offset, int limit) {
+
+		if (null == userUuid) {
+			throw new IllegalArgumentException("must provide user id");
+		}
+
+		final String currentUserUuid = sakaiProxy.getCurrentUserId();
+		if (null == currentUserUuid) {
+			throw new SecurityException(
+					"You must be logged in to make a request for a user's wall items.");
+		}
+		
+		List<String> excludedCreators = getExcludedCreators(userUuid, currentUserUuid);
+		if (null == excludedCreators) {
+			return new ArrayList<WallItem>();
+		}
+		
+		// sorted and paged in the database
+		return dao.getWallItemsForUser(userUuid, excludedCreators, offset, limit);
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 */
@@ -261,29 +287,68 @@ public class ProfileWallLogicImpl implements ProfileWallLogic {
 			return 0;
 		}
 
-		if (false == StringUtils.equals(userUuid, currentUserUuid) && false == sakaiProxy.isSuperUser()) {
+		List<String> excludedCreators = getExcludedCreators(userUuid, currentUserUuid);
+		if (null == excludedCreators) {
+			return 0;
+		}
+		
+		return dao.getWallItemsCount(userUuid, excludedCreators);
+	}
+	
+	/**
+	 * {@inheritDoc}
+	 */
+	public List<WallItem> getFeedForUser(String userUuid, long cursor, int limit) {
 
-			if (false == privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_MYWALL)) {
-				return 0;
-			}
+		if (null == userUuid) {
+			throw new IllegalArgumentException("must provide user id");
+		}
+
+		final String currentUserUuid = sakaiProxy.getCurrentUserId();
+		if (null == currentUserUuid) {
+			throw new SecurityException(
+					"You must be logged in to make a request for a user's feed.");
 		}
-				
-		List<WallItem> wallItems = dao.getWallItemsForUser(userUuid);
 		
-		// filter wall items
-		List<WallItem> filteredWallItems = new ArrayList<WallItem>();
-		for (WallItem wallItem : wallItems) {
-			// current user is always allowed to see their wall items
-			if (true == StringUtils.equals(userUuid, currentUserUuid) || 
-					true == sakaiProxy.isSuperUser()) {
-				filteredWallItems.add(wallItem);
+		// privacy was checked for each connection when the feed was written
+		if (false == StringUtils.equals(userUuid, currentUserUuid) && false == sakaiProxy.isSuperUser()) {
+			throw new SecurityException(
+					"You are not allowed to view the feed for another user.");
+		}
+		
+		// sorted and paged in the database
+		return feedService.getFeed(userUuid, cursor, limit);
+	}
+	
+	/**
+	 * Works out which creators' wall items the current user is not allowed to
+	 * see on the specified user's wall.
+	 * 
+	 * @param userUuid the owner of the wall.
+	 * @param currentUserUuid the user viewing the wall.
+	 * @return the creators whose wall items must be skipped, or <code>null</code>
+	 * if the current user is not allowed to see the wall at all.
+	 */
+	private List<String> getExcludedCreators(String userUuid, String currentUserUuid) {
+		
+		// current user is always allowed to see their wall items
+		if (true == StringUtils.equals(userUuid, currentUserUuid) || 
+				true == sakaiProxy.isSuperUser()) {
+			return new ArrayList<String>();
+		}
+		
+		if (false == privacyLogic.isActionAllowed(userUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_MYWALL)) {
+			return null;
+		}
+		
+		List<String> excludedCreators = new ArrayList<String>();
+		for (String creatorUuid : dao.getWallItemCreators(userUuid)) {
 			// don't allow friend-of-a-friend if not connected
-			} else if (privacyLogic.isActionAllowed(wallItem.getCreatorUuid(), currentUserUuid, PrivacyType.PRIVACY_OPTION_MYWALL)) {
-				filteredWallItems.add(wallItem);
+			if (false == privacyLogic.isActionAllowed(creatorUuid, currentUserUuid, PrivacyType.PRIVACY_OPTION_MYWALL)) {
+				excludedCreators.add(creatorUuid);
 			}
 		}
-		
-		return filteredWallItems.size();
+		return excludedCreators;
 	}
 	
 	private void sendWallNotificationEmailToConnections(List<String> toUuids, final String fromUuid, final EmailType messageType) {
@@ -307,12 +372,14 @@ public class ProfileWallLogicImpl implements ProfileWallLogic {
 		}
 		
 		if (null != emailTemplateKey) {
-			// send individually to personalize email
+			// personalize email for each user, these are all sent in the background together
+			Map<String, Map<String, String>> replacementValuesByUser = new HashMap<String, Map<String, String>>();
 			for (String toUuid : toUuids) {
-				// this just keeps overwriting profileLink with current toUuid
-				replacementValues.put("wallLink", linkLogic.getEntityLinkToProfileWall(toUuid));
-				sakaiProxy.sendEmail(toUuid, emailTemplateKey, replacementValues);
+				Map<String, String> userReplacementValues = new HashMap<String, String>(replacementValues);
+				userReplacementValues.put("wallLink", linkLogic.getEntityLinkToProfileWall(toUuid));
+				replacementValuesByUser.put(toUuid, userReplacementValues);
 			}
+			notificationDispatcher.dispatch(emailTemplateKey, replacementValuesByUser);
 		} else {
 			log.warn("not sending email, unknown message type for sendWallNotificationEmailToConnections: " + messageType);
 		}
@@ -366,4 +433,10 @@ public class ProfileWallLogicImpl implements ProfileWallLogic {
 	@Setter
 	private SakaiProxy sakaiProxy;
 	
+	@Setter
+	private NotificationDispatcher notificationDispatcher;
+	
+	@Setter
+	private ProfileFeedService feedService;
+	
 }
@@ -370,28 +370,24 @@ public class ProfileWorksiteLogicImpl implements ProfileWorksiteLogic {
 			final Site site) {
 		
 		if (true == notifyByEmail) {
-			
-			Thread thread = new Thread() {
-				public void run() {
-					emailSiteMembers(siteTitle, site.getUrl(), ownerId, members);		
-				}
-			};
-			thread.start();
+			emailSiteMembers(siteTitle, site.getUrl(), ownerId, members);
 		}
 	}
 	
 	private void emailSiteMembers(String siteTitle, String siteUrl, String ownerId,
 			Collection<Person> members) {
 		
+		List<String> uuidsToEmail = new ArrayList<String>();
 		for (Person member : members) {
 			if (true == member.getPreferences().isWorksiteNewEmailEnabled()) {
-				emailSiteMember(siteTitle, siteUrl, ownerId, member);
+				uuidsToEmail.add(member.getUuid());
 			}
 		}
-	}
-
-	private void emailSiteMember(String siteTitle, String siteUrl, String ownerId, Person member) {
 		
+		if (uuidsToEmail.isEmpty()) {
+			return;
+		}
+
 		// create the map of replacement values for this email template
 		Map<String, String> replacementValues = new HashMap<String, String>();
 		replacementValues.put("senderDisplayName", sakaiProxy.getUserDisplayName(ownerId));
@@ -401,7 +397,8 @@ public class ProfileWorksiteLogicImpl implements ProfileWorksiteLogic {
 		replacementValues.put("localSakaiUrl", sakaiProxy.getPortalUrl());
 		replacementValues.put("toolName", sakaiProxy.getCurrentToolTitle());
 		
-		sakaiProxy.sendEmail(member.getUuid(),
+		// sent in the background
+		sakaiProxy.sendEmail(uuidsToEmail,
 				ProfileConstants.EMAIL_TEMPLATE_KEY_WORKSITE_NEW, replacementValues);
 	}
 
@@ -16,17 +16,21 @@
 package org.sakaiproject.profile2.logic;
 
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
 import lombok.Setter;
 
-import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.sakaiproject.api.common.edu.person.SakaiPerson;
@@ -38,8 +42,6 @@ import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.content.api.ContentHostingService;
 import org.sakaiproject.content.api.ContentResource;
 import org.sakaiproject.content.api.ContentResourceEdit;
-import org.sakaiproject.email.api.EmailService;
-import org.sakaiproject.emailtemplateservice.model.RenderedTemplate;
 import org.sakaiproject.emailtemplateservice.service.EmailTemplateService;
 import org.sakaiproject.entity.api.Entity;
 import org.sakaiproject.entity.api.ResourceProperties;
@@ -50,7 +52,9 @@ import org.sakaiproject.exception.IdInvalidException;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.IdUsedException;
 import org.sakaiproject.exception.PermissionException;
+import org.sakaiproject.exception.ServerOverloadException;
 import org.sakaiproject.id.api.IdManager;
+import org.sakaiproject.profile2.model.ImageSource;
 import org.sakaiproject.profile2.model.MimeTypeByteArray;
 import org.sakaiproject.profile2.util.ProfileConstants;
 import org.sakaiproject.profile2.util.ProfileUtils;
@@ -59,6 +63,7 @@ import org.sakaiproject.site.api.SiteService;
 import org.sakaiproject.site.api.SiteService.SelectionType;
 import org.sakaiproject.site.api.SiteService.SortType;
 import org.sakaiproject.site.api.ToolConfiguration;
+import org.sakaiproject.time.api.Time;
 import org.sakaiproject.tool.api.SessionManager;
 import org.sakaiproject.tool.api.Tool;
 import org.sakaiproject.tool.api.ToolManager;
@@ -123,6 +128,24 @@ public class SakaiProxyImpl implements SakaiProxy {
 		}
 		return userUuid;
 	}
+	
+	/**
+ 	* {@inheritDoc}
+ 	*/
+	public Map<String, String> getUserIdsForEids(List<String> eids) {
+		Map<String, String> userUuids = new HashMap<String, String>();
+		if(eids == null || eids.isEmpty()) {
+			return userUuids;
+		}
+		try {
+			for(User u : userDirectoryService.getUsersByEids(eids)) {
+				userUuids.put(u.getEid(), u.getId());
+			}
+		} catch (Exception e) {
+			log.warn("Cannot get ids for eids: " + e.getClass() + " : " + e.getMessage());
+		}
+		return userUuids;
+	}
 
 
 	/**
@@ -318,6 +341,28 @@ public class SakaiProxyImpl implements SakaiProxy {
 		}
 		return sakaiPerson;
 	}
+	
+	/**
+ 	* {@inheritDoc}
+ 	*/
+	public Map<String, SakaiPerson> getSakaiPersons(List<String> userIds) {
+		
+		Map<String, SakaiPerson> sakaiPersons = new HashMap<String, SakaiPerson>();
+		
+		if(userIds == null || userIds.isEmpty()) {
+			return sakaiPersons;
+		}
+		
+		try {
+			Map<String, SakaiPerson> found = sakaiPersonManager.getSakaiPersons(new HashSet<String>(userIds), sakaiPersonManager.getUserMutableType());
+			if(found != null) {
+				sakaiPersons.putAll(found);
+			}
+		} catch (Exception e) {
+			log.error("SakaiProxy.getSakaiPersons(): Couldn't get SakaiPersons for: " + userIds.size() + " users : " + e.getClass() + " : " + e.getMessage());
+		}
+		return sakaiPersons;
+	}
   
 	/**
  	* {@inheritDoc}
@@ -564,6 +609,7 @@ public class SakaiProxyImpl implements SakaiProxy {
 				}
 				mtba.setBytes(resource.getContent());
 				mtba.setMimeType(resource.getContentType());
+				mtba.setLastModified(getModifiedTime(resource));
 				return mtba;
 			}
 			catch(Exception e){
@@ -579,6 +625,74 @@ public class SakaiProxyImpl implements SakaiProxy {
 		return null;
 	}
 	
+	/**
+ 	* {@inheritDoc}
+ 	*/
+	public ImageSource getResourceSource(String resourceId) {
+		
+		if(StringUtils.isBlank(resourceId)) {
+			return null;
+		}
+		
+		try {
+			enableSecurityAdvisor();
+			
+			final ContentResource resource = contentHostingService.getResource(resourceId);
+			if(resource == null){
+				return null;
+			}
+			final long lastModified = getModifiedTime(resource);
+			
+			//content is only read when the source is written
+			return new ImageSource() {
+				public String getMimeType() {
+					return resource.getContentType();
+				}
+				public long getLength() {
+					return resource.getContentLength();
+				}
+				public long getLastModified() {
+					return lastModified;
+				}
+				public long writeTo(OutputStream out) throws IOException {
+					InputStream in = null;
+					try {
+						in = resource.streamContent();
+						return IOUtils.copyLarge(in, out);
+					} catch (ServerOverloadException e) {
+						throw new IOException("Could not stream resource: " + resource.getId() + " : " + e.getMessage());
+					} finally {
+						IOUtils.closeQuietly(in);
+					}
+				}
+			};
+		} catch (Exception e) {
+			log.error("SakaiProxy.getResourceSource() failed for resourceId: " + resourceId + " : " + e.getClass() + " : " + e.getMessage());
+		} finally {
+			disableSecurityAdvisor();
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Get the modified date of a resource
+	 * @param resource	the ContentResource
+	 * @return time in milliseconds or 0 if it doesn't have one
+	 */
+	private long getModifiedTime(ContentResource resource) {
+		//not all resources have a modified date
+		try {
+			Time modified = resource.getProperties().getTimeProperty(ResourceProperties.PROP_MODIFIED_DATE);
+			if(modified != null) {
+				return modified.getTime();
+			}
+		} catch (Exception e) {
+			log.debug("SakaiProxy.getModifiedTime() no modified date for resourceId: " + resource.getId());
+		}
+		return 0;
+	}
+	
 	
 	
 	/**
@@ -631,114 +745,7 @@ public class SakaiProxyImpl implements SakaiProxy {
  	* {@inheritDoc}
  	*/
 	public void sendEmail(final String userId, final String subject, String message) {
-		
-		class EmailSender {
-			private String userId;
-			private String subject;
-			private String message;
-			
-			public final String MULTIPART_BOUNDARY = "======sakai-multi-part-boundary======";
-			public final String BOUNDARY_LINE = "\n\n--"+MULTIPART_BOUNDARY+"\n";
-			public final String TERMINATION_LINE = "\n\n--"+MULTIPART_BOUNDARY+"--\n\n";
-			public final String MIME_ADVISORY = "This message is for MIME-compliant mail readers.";
-			public final String PLAIN_TEXT_HEADERS= "Content-Type: text/plain\n\n";
-			public final String HTML_HEADERS = "Content-Type: text/html; charset=ISO-8859-1\n\n";
-			public final String HTML_END = "\n  </body>\n</html>\n";
-
-			public EmailSender(String userId, String subject, String message) {
-				this.userId = userId;
-				this.subject = subject;
-				this.message = message;
-			}
-
-			//do it!
-			public void send() {
-				try {
-
-					//get User to send to
-					User user = userDirectoryService.getUser(userId);
-					
-					if (StringUtils.isBlank(user.getEmail())){
-						log.error("SakaiProxy.sendEmail() failed. No email for userId: " + userId);
-						return;
-					}
-					
-					//do it
-					emailService.sendToUsers(Collections.singleton(user), getHeaders(user.getEmail(), subject), formatMessage(subject, message));
-					
-					log.info("Email sent to: " + userId);
-				} catch (UserNotDefinedException e) {
-					log.error("SakaiProxy.sendEmail() failed for userId: " + userId + " : " + e.getClass() + " : " + e.getMessage());
-				}
-			}
-			
-			/** helper methods for formatting the message */
-			private String formatMessage(String subject, String message) {
-				StringBuilder sb = new StringBuilder();
-				sb.append(MIME_ADVISORY);
-				sb.append(BOUNDARY_LINE);
-				sb.append(PLAIN_TEXT_HEADERS);
-				sb.append(StringEscapeUtils.escapeHtml(message));
-				sb.append(BOUNDARY_LINE);
-				sb.append(HTML_HEADERS);
-				sb.append(htmlPreamble(subject));
-				sb.append(message);
-				sb.append(HTML_END);
-				sb.append(TERMINATION_LINE);
-				
-				return sb.toString();
-			}
-			
-			private String htmlPreamble(String subject) {
-				StringBuilder sb = new StringBuilder();
-				sb.append("<!DOCTYPE html PUBLIC \"-//W3C//DTD HTML 4.01 Transitional//EN\"\n");
-				sb.append("\"http://www.w3.org/TR/html4/loose.dtd\">\n");
-				sb.append("<html>\n");
-				sb.append("<head><title>");
-				sb.append(subject);
-				sb.append("</title></head>\n");
-				sb.append("<body>\n");
-				
-				return sb.toString();
-			}
-			
-			private List<String> getHeaders(String emailTo, String subject){
-				List<String> headers = new ArrayList<String>();
-				headers.add("MIME-Version: 1.0");
-				headers.add("Content-Type: multipart/alternative; boundary=\""+MULTIPART_BOUNDARY+"\"");
-				headers.add(formatSubject(subject));
-				headers.add(getFrom());
-				if (StringUtils.isNotBlank(emailTo)) {
-					headers.add("To: " + emailTo);
-				}
-				
-				return headers;
-			}
-			
-			private String getFrom(){
-				StringBuilder sb = new StringBuilder();
-				sb.append("From: ");
-				sb.append(getServiceName());
-				sb.append(" <no-reply@");
-				sb.append(getServerName());
-				sb.append(">");
-				
-				return sb.toString();
-			}
-			
-			private String formatSubject(String subject) {
-				StringBuilder sb = new StringBuilder();
-				sb.append("Subject: ");
-				sb.append(subject);
-				
-				return sb.toString();
-			}
-			
-			
-		}
-		
-		//instantiate class to format, then send the mail
-		new EmailSender(userId, subject, message).send();
+		notificationDispatcher.sendEmail(userId, subject, message);
 	}
 	
 	/**
@@ -746,36 +753,8 @@ public class SakaiProxyImpl implements SakaiProxy {
  	*/
 	public void sendEmail(List<String> userIds, final String emailTemplateKey, final Map<String,String> replacementValues) {
 		
-		//get list of Users
-		final List<User> users = new ArrayList<User>(getUsers(userIds));
-		
-		//only ever use one thread whether sending to one user or many users
-		Thread sendMailThread = new Thread() {
-			
-			public void run() {
-				//get the rendered template for each user
-				RenderedTemplate template = null;
-				
-				for(User user : users) {
-					log.info("SakaiProxy.sendEmail() attempting to send email to: " + user.getId());
-					try { 
-						template = emailTemplateService.getRenderedTemplateForUser(emailTemplateKey, user.getReference(), replacementValues); 
-						if (template == null) {
-							log.error("SakaiProxy.sendEmail() no template with key: " + emailTemplateKey);
-							return;	//no template
-						}
-					}
-					catch (Exception e) {
-						log.error("SakaiProxy.sendEmail() error retrieving template for user: " + user.getId() + " with key: " + emailTemplateKey + " : " + e.getClass() + " : " + e.getMessage());
-						continue; //try next user
-					}
-					
-					//send
-					sendEmail(user.getId(), template.getRenderedSubject(), template.getRenderedHtmlMessage());
-				}
-			}
-		};
-		sendMailThread.start();
+		//queued and sent in the background
+		notificationDispatcher.dispatch(userIds, emailTemplateKey, replacementValues);
 	}
 	
 	/**
@@ -1601,7 +1580,7 @@ public class SakaiProxyImpl implements SakaiProxy {
 	private EventTrackingService eventTrackingService;
 	
 	@Setter
-	private EmailService emailService;
+	private NotificationDispatcher notificationDispatcher;
 	
 	@Setter
 	private ServerConfigurationService serverConfigurationService;
@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.presence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import lombok.Setter;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.log4j.Logger;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.profile2.logic.SakaiProxy;
+import org.sakaiproject.profile2.util.ProfileConstants;
+
+/**
+ * Keeps the time of the last activity for each user in memory, so that the online status of any number of users
+ * can be worked out without going to the session and event services.
+ *
+ * <p>The times are updated from the event stream, which includes events from the other nodes in the cluster. A user is online if
+ * their last event was within {@link ProfileConstants#ONLINE_INACTIVITY_INTERVAL}, away if it was within the session timeout and
+ * offline otherwise, or once they log out.</p>
+ *
+ * <p>Users are expired using a timer wheel with one slot per minute, so each tick only looks at the users that were last seen a
+ * session timeout ago, rather than everyone.</p>
+ *
+ * <p>Until the service has been running for a full session timeout, it may not have seen an event for users that are still logged in.
+ * During that time, users it doesn't know about are looked up via the activity service.</p>
+ *
+ * <p>Can be turned off with profile2.presence.enabled=false, in which case every lookup goes to the activity service.</p>
+ *
+ */
+public class ProfilePresenceService implements Observer {
+
+	private static final Logger log = Logger.getLogger(ProfilePresenceService.class);
+
+	//size of each slot in the timer wheel
+	private static final long TICK = 60 * 1000;
+
+	//default session timeout in seconds, if inactiveInterval@org.sakaiproject.tool.api.SessionManager is not set
+	private static final int DEFAULT_SESSION_TIMEOUT = 5400;
+
+	private static final String EVENT_LOGOUT = "user.logout";
+
+	//uuid to time of last activity
+	private final ConcurrentHashMap<String, Long> lastActivity = new ConcurrentHashMap<String, Long>();
+
+	//the users seen during each tick
+	private List<Set<String>> wheel;
+
+	private ScheduledExecutorService timer;
+
+	private boolean enabled;
+	private long expiry;
+	private long startTime;
+
+	/**
+	 * Get the online status for a user
+	 * @param userUuid	uuid of the user
+	 * @return	int of status, according to ProfileConstants.ONLINE_STATUS_x
+	 */
+	public int getOnlineStatus(String userUuid) {
+		return getOnlineStatus(Collections.singletonList(userUuid)).get(userUuid);
+	}
+
+	/**
+	 * Get the online status for a list of users
+	 * @param userUuids	uuids of the users
+	 * @return	Map of userUuid to the status, according to ProfileConstants.ONLINE_STATUS_x
+	 */
+	public Map<String, Integer> getOnlineStatus(List<String> userUuids) {
+
+		if(!enabled) {
+			return getOnlineStatusFromActivityService(userUuids);
+		}
+
+		long timeNow = System.currentTimeMillis();
+		boolean warm = (timeNow - startTime) >= expiry;
+
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		List<String> unknown = new ArrayList<String>();
+		for(String uuid: userUuids) {
+			Long time = lastActivity.get(uuid);
+			if(time != null && (timeNow - time.longValue()) < expiry) {
+				map.put(uuid, getStatus(timeNow, time));
+			} else if(warm) {
+				map.put(uuid, ProfileConstants.ONLINE_STATUS_OFFLINE);
+			} else {
+				unknown.add(uuid);
+			}
+		}
+
+		//we haven't been running long enough to know about everyone yet
+		if(!unknown.isEmpty()) {
+			map.putAll(getOnlineStatusFromActivityService(unknown));
+		}
+
+		return map;
+	}
+
+	/**
+	 * Records activity for users from events on any node, and removes them when they log out
+	 */
+	public void update(Observable o, Object arg) {
+		if(!(arg instanceof Event)) {
+			return;
+		}
+
+		Event event = (Event) arg;
+		String userUuid = event.getUserId();
+		if(StringUtils.isBlank(userUuid)) {
+			return;
+		}
+
+		if(EVENT_LOGOUT.equals(event.getEvent())) {
+			lastActivity.remove(userUuid);
+		} else {
+			touch(userUuid, System.currentTimeMillis());
+		}
+	}
+
+	/**
+	 * Record activity for a user
+	 * @param userUuid	uuid of the user
+	 * @param time		time of the activity
+	 */
+	private void touch(String userUuid, long time) {
+		lastActivity.put(userUuid, time);
+		wheel.get(slot(time)).add(userUuid);
+	}
+
+	/**
+	 * Expire the users in the oldest slot that haven't been seen since. Users that have been seen since are also in a newer slot,
+	 * so will be checked again when that slot comes round.
+	 */
+	private void tick() {
+		long timeNow = System.currentTimeMillis();
+		Set<String> oldest = wheel.get(slot(timeNow + TICK));
+
+		int expired = 0;
+		for(Iterator<String> i = oldest.iterator(); i.hasNext();) {
+			String uuid = i.next();
+			i.remove();
+
+			Long time = lastActivity.get(uuid);
+			if(time != null && (timeNow - time.longValue()) >= expiry && lastActivity.remove(uuid, time)) {
+				expired++;
+			}
+		}
+
+		if(log.isDebugEnabled()) {
+			log.debug("Profile2 presence: expired " + expired + " users, " + lastActivity.size() + " users active");
+		}
+	}
+
+	private int slot(long time) {
+		return (int) ((time / TICK) % wheel.size());
+	}
+
+	private int getStatus(long timeNow, Long lastEventTime) {
+		if((timeNow - lastEventTime.longValue()) < ProfileConstants.ONLINE_INACTIVITY_INTERVAL) {
+			return ProfileConstants.ONLINE_STATUS_ONLINE;
+		}
+		return ProfileConstants.ONLINE_STATUS_AWAY;
+	}
+
+	/**
+	 * Get the online status from the session and event services
+	 */
+	private Map<String, Integer> getOnlineStatusFromActivityService(List<String> userUuids) {
+
+		//get the list of users that have active sessions
+		List<String> activeUuids = sakaiProxy.getActiveUsers(userUuids);
+
+		//get last event times for the new list
+		Map<String, Long> lastEventTimes = activeUuids.isEmpty() ? new HashMap<String, Long>() : sakaiProxy.getLastEventTimeForUsers(activeUuids);
+
+		long timeNow = System.currentTimeMillis();
+
+		Map<String, Integer> map = new HashMap<String, Integer>();
+		for(String uuid: userUuids) {
+			Long time = lastEventTimes.get(uuid);
+			if(time != null) {
+				map.put(uuid, getStatus(timeNow, time));
+			} else {
+				//no session/no last event time
+				map.put(uuid, ProfileConstants.ONLINE_STATUS_OFFLINE);
+			}
+		}
+		return map;
+	}
+
+	public void init() {
+
+		enabled = Boolean.valueOf(sakaiProxy.getServerConfigurationParameter("profile2.presence.enabled", "true"));
+		if(!enabled) {
+			log.info("Profile2 presence tracking is disabled, online status will be looked up for each request");
+			return;
+		}
+
+		int sessionTimeout = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("inactiveInterval@org.sakaiproject.tool.api.SessionManager", null), DEFAULT_SESSION_TIMEOUT);
+		expiry = sessionTimeout * 1000L;
+		startTime = System.currentTimeMillis();
+
+		//one slot per tick, plus one for the tick in progress
+		int slots = (int) (expiry / TICK) + 2;
+		wheel = new ArrayList<Set<String>>(slots);
+		for(int i = 0; i < slots; i++) {
+			wheel.add(Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()));
+		}
+
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Profile2 presence");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		timer.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				try {
+					tick();
+				} catch (Exception e) {
+					log.error("Profile2 presence: expiring users failed: " + e.getClass() + " : " + e.getMessage());
+				}
+			}
+		}, TICK, TICK, TimeUnit.MILLISECONDS);
+
+		eventTrackingService.addObserver(this);
+	}
+
+	public void destroy() {
+		if(!enabled) {
+			return;
+		}
+		eventTrackingService.deleteObserver(this);
+		timer.shutdownNow();
+	}
+
+	@Setter
+	private SakaiProxy sakaiProxy;
+
+	@Setter
+	private EventTrackingService eventTrackingService;
+}
@@ -0,0 +1,540 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import lombok.Setter;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.sakaiproject.api.common.edu.person.SakaiPerson;
+import org.sakaiproject.api.common.edu.person.SakaiPersonManager;
+import org.sakaiproject.component.api.ServerConfigurationService;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.profile2.dao.ProfileDao;
+import org.sakaiproject.profile2.model.UserProfile;
+import org.sakaiproject.profile2.util.ProfileConstants;
+import org.sakaiproject.profile2.util.ProfileUtils;
+
+/**
+ * An in memory inverted index of the searchable SakaiPerson fields, so that people searches do not need to run
+ * a LIKE '%term%' query over the whole SAKAI_PERSON_T table.
+ *
+ * <p>Text is split into lowercase words. A query matches a user if every word in the query is the start of a word in one of
+ * the fields being searched. Results are ranked by how often the words occur, with whole word matches counting double.</p>
+ *
+ * <p>The index is built in the background at startup. Until it is ready, {@link #isReady()} returns false and callers should fall back
+ * to the database. After that it is kept up to date from profile saves on this node, and from profile update events from any node.</p>
+ *
+ * <p>Can be turned off with profile2.search.index.enabled=false</p>
+ *
+ */
+public class ProfileSearchIndex implements Observer {
+
+	private static final Logger log = Logger.getLogger(ProfileSearchIndex.class);
+
+	/**
+	 * The groups of fields that can be searched
+	 */
+	public enum Field {
+		/** nickname and email */
+		NAME_EMAIL,
+		/** favourite books, tv shows, movies and quotes, and the personal summary */
+		INTERESTS,
+		/** business biography */
+		BUSINESS
+	}
+
+	//number of SakaiPersons to read at a time when building
+	private static final int BATCH_SIZE = 500;
+
+	//a word that matches the query word exactly is worth this many prefix matches
+	private static final int EXACT_MATCH_WEIGHT = 2;
+
+	private static final String REFERENCE_PREFIX = "/profile/";
+
+	//events that mean a profile may have changed
+	private static final Set<String> UPDATE_EVENTS = new HashSet<String>(Arrays.asList(
+			ProfileConstants.EVENT_PROFILE_NEW,
+			ProfileConstants.EVENT_PROFILE_INFO_UPDATE,
+			ProfileConstants.EVENT_PROFILE_CONTACT_UPDATE,
+			ProfileConstants.EVENT_PROFILE_INTERESTS_UPDATE,
+			ProfileConstants.EVENT_PROFILE_BUSINESS_UPDATE));
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private Index index = new Index();
+
+	private volatile boolean ready = false;
+	private volatile boolean building = false;
+	private volatile boolean stopped = false;
+
+	//users that changed while the index was being built
+	private final Set<String> changedWhileBuilding = Collections.synchronizedSet(new HashSet<String>());
+
+	private Thread builder;
+
+	/**
+	 * Is the index built and ready to be searched?
+	 * @return true if ready, false if still building or disabled
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Search the index
+	 *
+	 * @param query		the search text, as entered by the user
+	 * @param fields	the groups of fields to search
+	 * @param start		first result to return, 0 based
+	 * @param limit		maximum number of results to return
+	 * @return uuids of the matching users, best match first. Empty if nothing matched or the query contains no words.
+	 */
+	public List<String> search(String query, Set<Field> fields, int start, int limit) {
+
+		List<String> words = new ArrayList<String>(new LinkedHashSet<String>(tokenize(query)));
+		if(words.isEmpty() || fields.isEmpty()) {
+			return new ArrayList<String>();
+		}
+
+		Map<String, Integer> scores = null;
+
+		lock.readLock().lock();
+		try {
+			for(String word : words) {
+
+				//users matching this word, restricted to those that matched all previous words
+				Map<String, Integer> matches = new HashMap<String, Integer>();
+				for(Field field : fields) {
+					for(Map.Entry<String, Map<String, Integer>> entry : index.getWordsStartingWith(field, word).entrySet()) {
+						int weight = entry.getKey().equals(word) ? EXACT_MATCH_WEIGHT : 1;
+						for(Map.Entry<String, Integer> posting : entry.getValue().entrySet()) {
+							String userUuid = posting.getKey();
+							if(scores == null || scores.containsKey(userUuid)) {
+								Integer score = matches.get(userUuid);
+								matches.put(userUuid, (score == null ? 0 : score) + posting.getValue() * weight);
+							}
+						}
+					}
+				}
+
+				if(scores != null) {
+					for(Map.Entry<String, Integer> match : matches.entrySet()) {
+						match.setValue(match.getValue() + scores.get(match.getKey()));
+					}
+				}
+				scores = matches;
+
+				if(scores.isEmpty()) {
+					break;
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		//rank
+		List<Map.Entry<String, Integer>> ranked = new ArrayList<Map.Entry<String, Integer>>(scores.entrySet());
+		Collections.sort(ranked, RANK_ORDER);
+
+		List<String> results = new ArrayList<String>();
+		int end = (int) Math.min((long) start + limit, ranked.size());
+		for(int i = Math.max(start, 0); i < end; i++) {
+			results.add(ranked.get(i).getKey());
+		}
+
+		if(log.isDebugEnabled()) {
+			log.debug("Search index found " + ranked.size() + " results for: " + query);
+		}
+		return results;
+	}
+
+	/**
+	 * Search the index, returning all results
+	 *
+	 * @see #search(String, Set, int, int)
+	 */
+	public List<String> search(String query, Set<Field> fields) {
+		return search(query, fields, 0, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Add or replace a user in the index from their SakaiPerson
+	 * @param sp	the SakaiPerson that has just been saved
+	 */
+	public void index(SakaiPerson sp) {
+		if(sp == null) {
+			return;
+		}
+
+		UserProfile profile = new UserProfile();
+		profile.setUserUuid(sp.getAgentUuid());
+		profile.setNickname(sp.getNickname());
+		profile.setEmail(sp.getMail());
+		profile.setFavouriteBooks(sp.getFavouriteBooks());
+		profile.setFavouriteTvShows(sp.getFavouriteTvShows());
+		profile.setFavouriteMovies(sp.getFavouriteMovies());
+		profile.setFavouriteQuotes(sp.getFavouriteQuotes());
+		profile.setPersonalSummary(sp.getNotes());
+		profile.setBusinessBiography(sp.getBusinessBiography());
+
+		index(profile);
+	}
+
+	/**
+	 * Re-read a user from the database and update their entry in the index
+	 * @param userUuid	uuid of the user
+	 */
+	public void reindex(String userUuid) {
+		reindex(Collections.singletonList(userUuid));
+	}
+
+	/**
+	 * Remove a user from the index
+	 * @param userUuid	uuid of the user
+	 */
+	public void remove(String userUuid) {
+		lock.writeLock().lock();
+		try {
+			index.remove(userUuid);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if(building) {
+			changedWhileBuilding.add(userUuid);
+		}
+	}
+
+	/**
+	 * Rebuild the whole index from the database, in the current thread. The existing index is used for searches until the new one is complete.
+	 */
+	public void rebuild() {
+
+		long startTime = System.currentTimeMillis();
+
+		Index fresh = new Index();
+		int count = 0;
+
+		building = true;
+		try {
+			List<UserProfile> profiles;
+			do {
+				profiles = dao.getUserProfilesForSearchIndex(getTypeUuid(), count, BATCH_SIZE);
+				for(UserProfile profile : profiles) {
+					fresh.add(profile.getUserUuid(), analyse(profile));
+				}
+				count += profiles.size();
+			} while (profiles.size() == BATCH_SIZE && !stopped);
+
+			if(stopped) {
+				return;
+			}
+
+			lock.writeLock().lock();
+			try {
+				index = fresh;
+			} finally {
+				lock.writeLock().unlock();
+			}
+			ready = true;
+
+		} catch (Exception e) {
+			log.error("Profile2 search index could not be built, searches will use the database: " + e.getClass() + " : " + e.getMessage());
+			return;
+		} finally {
+			building = false;
+		}
+
+		//pick up anything that was saved while we were reading
+		List<String> changed;
+		synchronized(changedWhileBuilding) {
+			changed = new ArrayList<String>(changedWhileBuilding);
+			changedWhileBuilding.clear();
+		}
+		if(!changed.isEmpty()) {
+			reindex(changed);
+		}
+
+		log.info("Profile2 search index built for " + count + " profiles in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	/**
+	 * Keeps the index up to date when profiles are changed, on this node or elsewhere in the cluster
+	 */
+	public void update(Observable o, Object arg) {
+		if(!(arg instanceof Event)) {
+			return;
+		}
+
+		Event event = (Event) arg;
+		if(!UPDATE_EVENTS.contains(event.getEvent()) || StringUtils.isBlank(event.getResource())) {
+			return;
+		}
+
+		//most events use /profile/uuid, profile.new just has the uuid
+		String userUuid = StringUtils.removeStart(event.getResource(), REFERENCE_PREFIX);
+
+		try {
+			reindex(userUuid);
+		} catch (Exception e) {
+			log.warn("Could not update search index for user: " + userUuid + " : " + e.getClass() + " : " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Add or replace a user in the index
+	 * @param profile	UserProfile containing at least the searchable fields
+	 */
+	private void index(UserProfile profile) {
+
+		Map<Field, Map<String, Integer>> document = analyse(profile);
+
+		lock.writeLock().lock();
+		try {
+			index.add(profile.getUserUuid(), document);
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if(building) {
+			changedWhileBuilding.add(profile.getUserUuid());
+		}
+	}
+
+	/**
+	 * Re-read a list of users from the database and update their entries in the index.
+	 * Used when profiles are written without posting an update event for each user, eg by the import.
+	 * @param userUuids	uuids of the users
+	 */
+	public void reindex(List<String> userUuids) {
+
+		Set<String> missing = new HashSet<String>(userUuids);
+
+		for(UserProfile profile : dao.getUserProfilesForSearchIndex(getTypeUuid(), userUuids)) {
+			index(profile);
+			missing.remove(profile.getUserUuid());
+		}
+
+		//no SakaiPerson anymore
+		for(String userUuid : missing) {
+			remove(userUuid);
+		}
+	}
+
+	/**
+	 * Split the searchable fields of a profile into words
+	 * @param profile	the profile
+	 * @return map of field to the number of times each word appears in that field
+	 */
+	private Map<Field, Map<String, Integer>> analyse(UserProfile profile) {
+
+		Map<Field, Map<String, Integer>> document = new EnumMap<Field, Map<String, Integer>>(Field.class);
+
+		addWords(document, Field.NAME_EMAIL, profile.getNickname(), profile.getEmail());
+		addWords(document, Field.INTERESTS, profile.getFavouriteBooks(), profile.getFavouriteTvShows(), profile.getFavouriteMovies(),
+				profile.getFavouriteQuotes(), stripHtml(profile.getPersonalSummary()));
+		addWords(document, Field.BUSINESS, stripHtml(profile.getBusinessBiography()));
+
+		return document;
+	}
+
+	/**
+	 * Add the words in the given values to a field of a document
+	 */
+	private void addWords(Map<Field, Map<String, Integer>> document, Field field, String... values) {
+
+		Map<String, Integer> words = new HashMap<String, Integer>();
+		for(String value : values) {
+			for(String word : tokenize(value)) {
+				Integer count = words.get(word);
+				words.put(word, count == null ? 1 : count + 1);
+			}
+		}
+
+		if(!words.isEmpty()) {
+			document.put(field, words);
+		}
+	}
+
+	/**
+	 * Split text into lowercase words made of letters and digits. Everything else is treated as a separator,
+	 * so an email address becomes the words either side of the punctuation.
+	 *
+	 * @param text	text to split, may be null
+	 * @return list of words, in order and including duplicates
+	 */
+	private static List<String> tokenize(String text) {
+
+		List<String> words = new ArrayList<String>();
+		if(StringUtils.isBlank(text)) {
+			return words;
+		}
+
+		String lower = text.toLowerCase();
+		int wordStart = -1;
+		for(int i = 0; i <= lower.length(); i++) {
+			boolean inWord = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+			if(inWord && wordStart < 0) {
+				wordStart = i;
+			} else if(!inWord && wordStart >= 0) {
+				words.add(lower.substring(wordStart, i));
+				wordStart = -1;
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Rich text fields are stored as HTML, we don't want to index the markup
+	 */
+	private String stripHtml(String s) {
+		if(StringUtils.isBlank(s) || s.indexOf('<') < 0) {
+			return s;
+		}
+		return ProfileUtils.stripHtml(s);
+	}
+
+	//highest score first, then by uuid so paging is stable
+	private static final Comparator<Map.Entry<String, Integer>> RANK_ORDER = new Comparator<Map.Entry<String, Integer>>() {
+		public int compare(Map.Entry<String, Integer> e1, Map.Entry<String, Integer> e2) {
+			int result = e2.getValue().compareTo(e1.getValue());
+			return result != 0 ? result : e1.getKey().compareTo(e2.getKey());
+		}
+	};
+
+	/**
+	 * The index data. Not thread safe, access is guarded by the lock.
+	 */
+	private static class Index {
+
+		//for each field, word -> uuid -> number of occurrences. Sorted so we can find all words with a prefix.
+		private final Map<Field, TreeMap<String, Map<String, Integer>>> postings = new EnumMap<Field, TreeMap<String, Map<String, Integer>>>(Field.class);
+
+		//uuid -> what was indexed for that user, so it can be removed again
+		private final Map<String, Map<Field, Map<String, Integer>>> documents = new HashMap<String, Map<Field, Map<String, Integer>>>();
+
+		Index() {
+			for(Field field : Field.values()) {
+				postings.put(field, new TreeMap<String, Map<String, Integer>>());
+			}
+		}
+
+		Map<String, Map<String, Integer>> getWordsStartingWith(Field field, String prefix) {
+			return postings.get(field).subMap(prefix, prefix + Character.MAX_VALUE);
+		}
+
+		void add(String userUuid, Map<Field, Map<String, Integer>> document) {
+			remove(userUuid);
+			if(document.isEmpty()) {
+				return;
+			}
+
+			documents.put(userUuid, document);
+			for(Map.Entry<Field, Map<String, Integer>> entry : document.entrySet()) {
+				TreeMap<String, Map<String, Integer>> words = postings.get(entry.getKey());
+				for(Map.Entry<String, Integer> word : entry.getValue().entrySet()) {
+					Map<String, Integer> users = words.get(word.getKey());
+					if(users == null) {
+						users = new HashMap<String, Integer>(4);
+						words.put(word.getKey(), users);
+					}
+					users.put(userUuid, word.getValue());
+				}
+			}
+		}
+
+		void remove(String userUuid) {
+			Map<Field, Map<String, Integer>> document = documents.remove(userUuid);
+			if(document == null) {
+				return;
+			}
+
+			for(Map.Entry<Field, Map<String, Integer>> entry : document.entrySet()) {
+				TreeMap<String, Map<String, Integer>> words = postings.get(entry.getKey());
+				for(String word : entry.getValue().keySet()) {
+					Map<String, Integer> users = words.get(word);
+					if(users != null) {
+						users.remove(userUuid);
+						if(users.isEmpty()) {
+							words.remove(word);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public void init() {
+
+		if(!serverConfigurationService.getBoolean("profile2.search.index.enabled", true)) {
+			log.info("Profile2 search index is disabled, searches will use the database");
+			return;
+		}
+
+		//register before building so that nothing is missed
+		eventTrackingService.addObserver(this);
+
+		builder = new Thread(new Runnable() {
+			public void run() {
+				rebuild();
+			}
+		}, "Profile2 search index builder");
+		builder.setDaemon(true);
+		builder.start();
+	}
+
+	/**
+	 * Get the uuid of the user mutable SakaiPerson type. Users can also have a system mutable record, but the profile is read from this one.
+	 */
+	private String getTypeUuid() {
+		return sakaiPersonManager.getUserMutableType().getUuid();
+	}
+
+	public void destroy() {
+		stopped = true;
+		eventTrackingService.deleteObserver(this);
+	}
+
+	@Setter
+	private ProfileDao dao;
+
+	@Setter
+	private EventTrackingService eventTrackingService;
+
+	@Setter
+	private ServerConfigurationService serverConfigurationService;
+
+	@Setter
+	private SakaiPersonManager sakaiPersonManager;
+}
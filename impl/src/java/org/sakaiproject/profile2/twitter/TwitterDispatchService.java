@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.twitter;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.Setter;
+
+import org.apache.commons.lang.math.NumberUtils;
+import org.apache.log4j.Logger;
+import org.sakaiproject.profile2.logic.SakaiProxy;
+import org.sakaiproject.profile2.util.ProfileConstants;
+
+import twitter4j.Twitter;
+import twitter4j.TwitterException;
+import twitter4j.TwitterFactory;
+import twitter4j.auth.AccessToken;
+import twitter4j.conf.ConfigurationBuilder;
+
+/**
+ * Sends status updates to Twitter in the background. This is not part of the public API.
+ *
+ * <p>Updates are sent on a small bounded pool rather than a thread each. If a user posts again before their previous update
+ * has been sent, only the latest is sent. Updates that fail because of a network problem, rate limiting or an error at Twitter's
+ * end are retried with an increasing delay, unless a newer update for the user has come in by then.</p>
+ *
+ * <p>A TwitterFactory is kept for each consumer key, so clients share their configuration instead of reading it for each update.</p>
+ *
+ */
+public class TwitterDispatchService {
+
+	private static final Logger log = Logger.getLogger(TwitterDispatchService.class);
+
+	//defaults, can be overridden by profile2.twitter.x
+	private static final int DEFAULT_THREADS = 2;
+	private static final int DEFAULT_QUEUE_SIZE = 500;
+	private static final int DEFAULT_RETRIES = 3;
+	private static final int DEFAULT_RETRY_DELAY = 30;
+
+	//the update waiting to be sent for each user
+	private final ConcurrentHashMap<String, TwitterUpdate> pending = new ConcurrentHashMap<String, TwitterUpdate>();
+
+	//TwitterFactory for each consumer key
+	private final ConcurrentHashMap<String, TwitterFactory> factories = new ConcurrentHashMap<String, TwitterFactory>();
+
+	private ThreadPoolExecutor executor;
+	private ScheduledExecutorService retryTimer;
+
+	private int maxRetries;
+	private long retryDelay;
+
+	//metrics
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong retried = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	public void init() {
+		int threads = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.twitter.threads", null), DEFAULT_THREADS);
+		int queueSize = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.twitter.queue.size", null), DEFAULT_QUEUE_SIZE);
+		maxRetries = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.twitter.retries", null), DEFAULT_RETRIES);
+		retryDelay = NumberUtils.toInt(sakaiProxy.getServerConfigurationParameter("profile2.twitter.retry.delay", null), DEFAULT_RETRY_DELAY) * 1000L;
+
+		final AtomicInteger count = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueSize), new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = Executors.defaultThreadFactory().newThread(r);
+				t.setName("Profile2 TwitterUpdater " + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.allowCoreThreadTimeOut(true);
+
+		retryTimer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Profile2 TwitterUpdater retry");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	public void destroy() {
+		if(executor != null) {
+			executor.shutdownNow();
+		}
+		if(retryTimer != null) {
+			retryTimer.shutdownNow();
+		}
+		log.info("Profile2 Twitter updates: " + getSent() + " sent, " + getFailed() + " failed, " + getRetried() + " retried, "
+				+ getCoalesced() + " replaced by a newer update, " + getDropped() + " dropped.");
+	}
+
+	/**
+	 * Send a status update for a user in the background. If an update for the user is still waiting to be sent, it is replaced by this one.
+	 * @param update	the update to send
+	 */
+	public void send(TwitterUpdate update) {
+		if(pending.put(update.getUserUuid(), update) != null) {
+			coalesced.incrementAndGet();
+			return;
+		}
+		dispatch(update.getUserUuid());
+	}
+
+	/**
+	 * Get a Twitter client for a user
+	 * @param consumerKey		OAuth consumer key for Profile2
+	 * @param consumerSecret	OAuth consumer secret for Profile2
+	 * @param token				the user's access token
+	 * @param secret			the user's access token secret
+	 * @return Twitter
+	 */
+	public Twitter getTwitter(String consumerKey, String consumerSecret, String token, String secret) {
+		TwitterFactory factory = factories.get(consumerKey);
+		if(factory == null) {
+			ConfigurationBuilder config = new ConfigurationBuilder();
+			config.setOAuthConsumerKey(consumerKey);
+			config.setOAuthConsumerSecret(consumerSecret);
+			factory = new TwitterFactory(config.build());
+			TwitterFactory existing = factories.putIfAbsent(consumerKey, factory);
+			if(existing != null) {
+				factory = existing;
+			}
+		}
+		return factory.getInstance(new AccessToken(token, secret));
+	}
+
+	/**
+	 * Queue a task to send whatever update is pending for the user when it runs
+	 */
+	private void dispatch(final String userUuid) {
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					TwitterUpdate update = pending.remove(userUuid);
+					if(update != null) {
+						updateStatus(update);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pending.remove(userUuid);
+			dropped.incrementAndGet();
+			log.warn("Profile2 Twitter updater is busy, not sending update for: " + userUuid);
+		}
+	}
+
+	/**
+	 * Send an update, and schedule a retry if it failed and is worth trying again
+	 */
+	private void updateStatus(final TwitterUpdate update) {
+		try {
+			Twitter twitter = getTwitter(update.getConsumerKey(), update.getConsumerSecret(), update.getToken(), update.getSecret());
+			twitter.updateStatus(update.getMessage());
+			sent.incrementAndGet();
+			log.info("Twitter status updated for: " + update.getUserUuid());
+
+			//post update event
+			sakaiProxy.postEvent(ProfileConstants.EVENT_TWITTER_UPDATE, "/profile/"+update.getUserUuid(), true);
+
+		} catch (TwitterException e) {
+			if(update.getAttempts() < maxRetries && isRetryable(e)) {
+				scheduleRetry(update, e);
+			} else {
+				failed.incrementAndGet();
+				log.error("Twitter status update failed for: " + update.getUserUuid() + ". " + e.getClass() + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Try an update again after a delay that doubles with each attempt, or the time Twitter asked us to wait if longer.
+	 * If a newer update for the user has come in by then, the retry is dropped in favour of it.
+	 */
+	private void scheduleRetry(final TwitterUpdate update, TwitterException e) {
+		long delay = retryDelay << update.getAttempts();
+		if(e.getRetryAfter() > 0) {
+			delay = Math.max(delay, e.getRetryAfter() * 1000L);
+		}
+		update.setAttempts(update.getAttempts() + 1);
+		retried.incrementAndGet();
+
+		log.warn("Twitter status update failed for: " + update.getUserUuid() + ", retrying in " + (delay / 1000) + "s. " + e.getClass() + ": " + e.getMessage());
+
+		try {
+			retryTimer.schedule(new Runnable() {
+				public void run() {
+					if(pending.putIfAbsent(update.getUserUuid(), update) == null) {
+						dispatch(update.getUserUuid());
+					} else {
+						coalesced.incrementAndGet();
+					}
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException ree) {
+			//shutting down
+			dropped.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Network problems, rate limiting and errors at Twitter's end are worth retrying, anything else (eg a revoked token or a duplicate status) is not.
+	 */
+	private boolean isRetryable(TwitterException e) {
+		return e.isCausedByNetworkIssue() || e.exceededRateLimitation() || e.getStatusCode() >= 500;
+	}
+
+	/**
+	 * Number of updates sent
+	 */
+	public long getSent() {
+		return sent.get();
+	}
+
+	/**
+	 * Number of updates that failed and were not retried
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * Number of retries scheduled
+	 */
+	public long getRetried() {
+		return retried.get();
+	}
+
+	/**
+	 * Number of updates that were replaced by a newer update before they were sent
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * Number of updates that were dropped because the queue was full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Number of updates waiting to be sent
+	 */
+	public int getPending() {
+		return pending.size();
+	}
+
+	@Setter
+	private SakaiProxy sakaiProxy;
+
+}
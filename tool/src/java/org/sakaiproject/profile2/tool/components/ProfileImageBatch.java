@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2008-2012 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *             http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.sakaiproject.profile2.tool.components;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wicket.injection.web.InjectorHolder;
+import org.apache.wicket.spring.injection.annot.SpringBean;
+import org.sakaiproject.profile2.logic.ProfileImageLogic;
+import org.sakaiproject.profile2.model.Person;
+import org.sakaiproject.profile2.model.ProfileImage;
+
+/**
+ * Profile2 ProfileImageBatch
+ * 
+ * <p>Collects the people in a list so that their profile images can be looked up together. Create one for the list,
+ * pass it to a ProfileImageRenderer for each person, and the first renderer to be drawn looks up the images for all of them.</p>
+ * 
+ * <p>Each image is handed out once, so the next time the list is drawn the images are looked up again.</p>
+ *
+ */
+public class ProfileImageBatch implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private int size;
+	
+	//people waiting to be looked up, and images waiting to be drawn. these only live for a request
+	private transient List<Person> pending;
+	private transient Map<String, ProfileImage> images;
+	
+	@SpringBean(name="org.sakaiproject.profile2.logic.ProfileImageLogic")
+	private transient ProfileImageLogic imageLogic;
+	
+	/**
+	 * @param size	image size: 1 for main, 2 for thumbnail.
+	 */
+	public ProfileImageBatch(final int size) {
+		this.size = size;
+	}
+	
+	/**
+	 * Add a person to be looked up with the next batch
+	 * @param person
+	 */
+	public void add(Person person) {
+		if(pending == null) {
+			pending = new ArrayList<Person>();
+		}
+		pending.add(person);
+	}
+	
+	/**
+	 * Get the image for a person, looking up everyone that has been added since the last lookup if needed
+	 * @param userUuid	uuid of the person
+	 * @return the image, or null if the person was not added
+	 */
+	public ProfileImage get(String userUuid) {
+		if(images == null) {
+			images = new HashMap<String, ProfileImage>();
+		}
+		
+		if(!images.containsKey(userUuid) && pending != null && !pending.isEmpty()) {
+			if(imageLogic == null) {
+				InjectorHolder.getInjector().inject(this);
+			}
+			images.putAll(imageLogic.getProfileImages(pending, size));
+			pending.clear();
+		}
+		
+		return images.remove(userUuid);
+	}
+	
+	public int getSize() {
+		return size;
+	}
+}
@@ -57,6 +57,7 @@ public class ProfileImageRenderer extends Image implements IResourceListener {
 	private int size;
 	private ProfilePreferences prefs;
 	private ProfilePrivacy privacy;
+	private ProfileImageBatch batch;
 	
 	@SpringBean(name="org.sakaiproject.profile2.logic.ProfileImageLogic")
 	private ProfileImageLogic imageLogic;
@@ -212,6 +213,21 @@ public class ProfileImageRenderer extends Image implements IResourceListener {
 		this.cache = cache;
 	}
 	
+	/**
+	 * Constructor for use in lists of people. The image is looked up along with the rest of the list, see ProfileImageBatch.
+	 *
+	 * @param id		markup ID
+	 * @param person	Person object for the user containing all data
+	 * @param batch		ProfileImageBatch for the list, this also sets the size
+	 * @param cache		if this image is allowed to be cached by the browser or not.
+	 */
+	public ProfileImageRenderer(final String id, final Person person, final ProfileImageBatch batch, final boolean cache) {
+		this(id, person, batch.getSize(), cache);
+		
+		this.batch = batch;
+		batch.add(person);
+	}
+	
 	/**
 	 * @see org.apache.wicket.IResourceListener#onResourceRequested()
 	 */
@@ -226,8 +242,14 @@ public class ProfileImageRenderer extends Image implements IResourceListener {
 	public void onComponentTag(final ComponentTag tag) {
 		super.onComponentTag(tag);
 		
-		//get the image
-		ProfileImage image = imageLogic.getProfileImage(userUuid, prefs, privacy, size);
+		//get the image, from the batch if we are in one
+		ProfileImage image = null;
+		if(batch != null) {
+			image = batch.get(userUuid);
+		}
+		if(image == null) {
+			image = imageLogic.getProfileImage(userUuid, prefs, privacy, size);
+		}
 		
 		//do binary
 		final byte[] bytes = image.getBinary();
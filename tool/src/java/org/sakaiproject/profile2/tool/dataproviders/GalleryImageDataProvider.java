@@ -47,7 +47,7 @@ public class GalleryImageDataProvider implements IDataProvider<GalleryImage> {
 	}
 
 	public Iterator<GalleryImage> iterator(int first, int count) {	
-		return imageLogic.getGalleryImages(userUuid).subList(first, first + count).iterator();
+		return imageLogic.getGalleryImages(userUuid, first, count).iterator();
 	}
 
 	public IModel<GalleryImage> model(GalleryImage object) {
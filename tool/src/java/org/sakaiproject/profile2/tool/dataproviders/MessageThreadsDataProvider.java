@@ -15,9 +15,7 @@
  */
 package org.sakaiproject.profile2.tool.dataproviders;
 
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.List;
 
 import org.apache.wicket.injection.web.InjectorHolder;
 import org.apache.wicket.markup.repeater.data.IDataProvider;
@@ -51,17 +49,12 @@ public class MessageThreadsDataProvider implements IDataProvider<MessageThread>
 	}
 	
 	/**
-	 * retrieve a sublist from the database, for paging
-	 * TODO make it retrieve only the sublist from the DB, this just gets the lot and then returns a sublist.
+	 * retrieve a sublist from the database, for paging. Threads come back sorted, newest first.
 	 * 
 	 * @see org.apache.wicket.markup.repeater.data.IDataProvider#iterator(int, int)
 	 */
 	public Iterator<MessageThread> iterator(int first, int count){
-		
-		List<MessageThread> slice = messagingLogic.getMessageThreads(userUuid).subList(first, first + count);
-		Collections.sort(slice, Collections.reverseOrder());
-		return slice.iterator();
-		
+		return messagingLogic.getMessageThreads(userUuid, first, count).iterator();
 	}
 
 	/**
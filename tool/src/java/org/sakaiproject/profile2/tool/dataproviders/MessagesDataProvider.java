@@ -17,7 +17,6 @@ package org.sakaiproject.profile2.tool.dataproviders;
 
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.List;
 
 import org.apache.wicket.injection.web.InjectorHolder;
 import org.apache.wicket.markup.repeater.data.IDataProvider;
@@ -52,15 +51,14 @@ public class MessagesDataProvider implements IDataProvider<Message> {
 	}
 	
 	/**
-	 * retrieves messages from database, gets the sublist and returns an iterator for that sublist
+	 * retrieves a page of messages from the database and returns an iterator for it
 	 * 
 	 * @see org.apache.wicket.markup.repeater.data.IDataProvider#iterator(int, int)
 	 */
 	public Iterator<Message> iterator(int first, int count){
 		
 		try {
-			List<Message> slice = messagingLogic.getMessagesInThread(threadId).subList(first, first + count);
-			return slice.iterator();
+			return messagingLogic.getMessagesInThread(threadId, first, count).iterator();
 		}
 		catch (Exception e) {
 			e.printStackTrace();
@@ -18,7 +18,6 @@ package org.sakaiproject.profile2.tool.dataproviders;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.List;
 
 import org.apache.wicket.injection.web.InjectorHolder;
 import org.apache.wicket.markup.repeater.data.IDataProvider;
@@ -59,10 +58,8 @@ public class RequestedFriendsDataProvider implements IDataProvider<Person>, Seri
 
 	public Iterator<Person> iterator(int first, int count) {
 		try {
-			List<Person> requests = connectionsLogic.getConnectionRequestsForUser(userUuid);
-			Collections.sort(requests);
-			List<Person> slice = requests.subList(first, first + count);
-			return slice.iterator();
+			//only the page we need, already sorted
+			return connectionsLogic.getConnectionRequestsForUser(userUuid, first, count).iterator();
 		}
 		catch (Exception e) {
 			e.printStackTrace();
@@ -50,8 +50,7 @@ public class WallItemDataProvider implements IDataProvider<WallItem> {
 	@Override
 	public Iterator<? extends WallItem> iterator(int first, int count) {
 
-		return wallLogic.getWallItemsForUser(userUuid).subList(first,
-				first + count).iterator();
+		return wallLogic.getWallItemsForUser(userUuid, first, count).iterator();
 	}
 
 	@Override
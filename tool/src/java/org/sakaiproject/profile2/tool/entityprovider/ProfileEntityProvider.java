@@ -17,9 +17,13 @@ package org.sakaiproject.profile2.tool.entityprovider;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import lombok.Setter;
 import lombok.extern.apachecommons.CommonsLog;
 
@@ -54,6 +58,7 @@ import org.sakaiproject.profile2.logic.ProfileLinkLogic;
 import org.sakaiproject.profile2.logic.ProfileLogic;
 import org.sakaiproject.profile2.logic.SakaiProxy;
 import org.sakaiproject.profile2.model.BasicConnection;
+import org.sakaiproject.profile2.model.ImageSource;
 import org.sakaiproject.profile2.model.ProfileImage;
 import org.sakaiproject.profile2.model.UserProfile;
 import org.sakaiproject.profile2.util.Messages;
@@ -171,9 +176,39 @@ public class ProfileEntityProvider extends AbstractEntityProvider implements Cor
 			throw new EntityNotFoundException("No profile image for " + id, ref.getReference());
 		}
 		
+		//check for a source we can stream, so the image isn't read into memory
+		final ImageSource source = image.getSource();
+		if(source != null) {
+			
+			if(isNotModified(getETag(source), source.getLastModified())) {
+				return null;
+			}
+			
+			HttpServletResponse response = requestGetter.getResponse();
+			if(source.getMimeType() != null) {
+				response.setContentType(source.getMimeType());
+			}
+			if(source.getLength() >= 0 && source.getLength() <= Integer.MAX_VALUE) {
+				response.setContentLength((int)source.getLength());
+			}
+			
+			try {
+				source.writeTo(out);
+				ActionReturn actionReturn = new ActionReturn("BASE64", source.getMimeType(), out);
+				return actionReturn;
+			} catch (IOException e) {
+				throw new EntityException("Error retrieving profile image for " + id + " : " + e.getMessage(), ref.getReference());
+			}
+		}
+		
 		//check for binary
 		final byte[] bytes = image.getBinary();
 		if(bytes != null && bytes.length > 0) {
+			
+			if(isNotModified(getETag(image, bytes), image.getLastModified())) {
+				return null;
+			}
+			
 			try {
 				out.write(bytes);
 				ActionReturn actionReturn = new ActionReturn("BASE64", image.getMimeType(), out);
@@ -198,6 +233,95 @@ public class ProfileEntityProvider extends AbstractEntityProvider implements Cor
 	
 			
 	
+	/**
+	 * Get an ETag for the binary data of an image
+	 * @param image	the ProfileImage
+	 * @param bytes	the binary data for the image
+	 * @return
+	 */
+	private String getETag(ProfileImage image, byte[] bytes) {
+		return "\"" + Long.toHexString(image.getLastModified()) + "-" + Integer.toHexString(bytes.length) + "-" + Integer.toHexString(Arrays.hashCode(bytes)) + "\"";
+	}
+	
+	/**
+	 * Get an ETag for an image source, without reading it
+	 * @param source	the ImageSource
+	 * @return ETag or null if the source doesn't have enough information to make one
+	 */
+	private String getETag(ImageSource source) {
+		if(source.getLastModified() <= 0 || source.getLength() < 0) {
+			return null;
+		}
+		return "\"" + Long.toHexString(source.getLastModified()) + "-" + Long.toHexString(source.getLength()) + "\"";
+	}
+	
+	/**
+	 * Set the caching headers on the response and check the conditional headers in the request to see if the client already has the current image.
+	 * If so, the response status is set to 304.
+	 * 
+	 * @param etag			current ETag for the image, may be null
+	 * @param lastModified	when the image was last modified, 0 if not known
+	 * @return true if the client already has it
+	 */
+	private boolean isNotModified(String etag, long lastModified) {
+		
+		//let the browser cache it, but check back each time since privacy may have changed
+		HttpServletRequest request = requestGetter.getRequest();
+		HttpServletResponse response = requestGetter.getResponse();
+		if(etag != null) {
+			response.setHeader("ETag", etag);
+		}
+		response.setHeader("Cache-Control", "private, no-cache");
+		if(lastModified > 0) {
+			response.setDateHeader("Last-Modified", lastModified);
+		}
+		
+		if(matches(request, etag, lastModified)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Check the conditional headers in the request against the current image
+	 * @param request		the request
+	 * @param etag			current ETag for the image, may be null
+	 * @param lastModified	when the image was last modified, 0 if not known
+	 * @return true if the client already has it
+	 */
+	private boolean matches(HttpServletRequest request, String etag, long lastModified) {
+		
+		//If-None-Match takes precedence
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if(ifNoneMatch != null) {
+			if(etag == null) {
+				return false;
+			}
+			for(String tag: StringUtils.split(ifNoneMatch, ',')) {
+				tag = StringUtils.trim(tag);
+				if(StringUtils.equals(tag, etag) || StringUtils.equals(tag, "*")) {
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		if(lastModified > 0) {
+			try {
+				long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+				//header only has second precision
+				if(ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000) {
+					return true;
+				}
+			} catch (IllegalArgumentException e) {
+				//unparseable date, ignore it
+			}
+		}
+		
+		return false;
+	}
+	
 	@EntityCustomAction(action="connections",viewKey=EntityView.VIEW_SHOW)
 	public Object getConnections(EntityView view, EntityReference ref) {
 		
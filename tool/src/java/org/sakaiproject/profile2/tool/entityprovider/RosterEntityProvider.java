@@ -12,6 +12,7 @@ import lombok.Setter;
 import lombok.extern.apachecommons.CommonsLog;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.math.NumberUtils;
 import org.sakaiproject.authz.api.AuthzGroupService;
 import org.sakaiproject.authz.api.GroupNotDefinedException;
 import org.sakaiproject.authz.api.Member;
@@ -30,11 +31,16 @@ import org.sakaiproject.entitybroker.util.AbstractEntityProvider;
 import org.sakaiproject.entitybroker.util.TemplateParseUtil;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.PermissionException;
-import org.sakaiproject.profile2.logic.ProfileLogic;
+import org.sakaiproject.profile2.logic.ProfileImageLogic;
+import org.sakaiproject.profile2.logic.ProfilePrivacyLogic;
+import org.sakaiproject.profile2.logic.SakaiProxy;
 import org.sakaiproject.profile2.model.Person;
+import org.sakaiproject.profile2.types.PrivacyType;
+import org.sakaiproject.profile2.util.ProfileConstants;
 import org.sakaiproject.site.api.Group;
 import org.sakaiproject.site.api.Site;
 import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.user.api.User;
 
 /**
  * Entity provider for the Roster tool
@@ -46,6 +52,10 @@ public class RosterEntityProvider extends AbstractEntityProvider implements
 
 	private static final String OFFICIAL_IMAGES_PARAM = "officialImages";
 
+	private static final String START_PARAM = "start";
+
+	private static final String LIMIT_PARAM = "limit";
+
 	public final static String ENTITY_PREFIX = "roster";
 
 	public final static String PROFILE_PREFIX = "profile";
@@ -57,7 +67,13 @@ public class RosterEntityProvider extends AbstractEntityProvider implements
 	private SiteService siteService;
 
 	@Setter
-	private ProfileLogic profileLogic;
+	private ProfilePrivacyLogic privacyLogic;
+
+	@Setter
+	private ProfileImageLogic imageLogic;
+
+	@Setter
+	private SakaiProxy sakaiProxy;
 
 	@Override
 	public String getEntityPrefix() {
@@ -108,29 +124,16 @@ public class RosterEntityProvider extends AbstractEntityProvider implements
 					siteId);
 		}
 
-		String paramValue = (String) params.get(OFFICIAL_IMAGES_PARAM);
-		boolean officialImage = Boolean.valueOf(paramValue);
-
-		// get members in site, create list
-		List<RosterItem> rosterList = new ArrayList<RosterItem>();
-
 		try {
 			// Get the member set
 			Set<Member> members = authzGroupService.getAuthzGroup(
 					site.getReference()).getMembers();
-			for (Member member : members) {
-				if (member.isActive()) {
-					Person person = profileLogic.getPerson(member.getUserId());
-					RosterItem item = new RosterItem(person, officialImage);
-					rosterList.add(item);
-				}
-			}
+			return getRoster(members, params);
 		} catch (GroupNotDefinedException e) {
 			log.error("getUsersInAllSections: " + e.getMessage(), e);
 		}
 
-		Collections.sort(rosterList);
-		return rosterList;
+		return new ArrayList<RosterItem>();
 	}
 
 	/**
@@ -161,12 +164,6 @@ public class RosterEntityProvider extends AbstractEntityProvider implements
 					siteId);
 		}
 
-		String paramValue = (String) params.get(OFFICIAL_IMAGES_PARAM);
-		boolean officialImage = Boolean.valueOf(paramValue);
-
-		// get members in site, create list
-		List<RosterItem> rosterList = new ArrayList<RosterItem>();
-
 		// find the group by group id first
 		Group group = site.getGroup(groupId);
 		if (group == null) {
@@ -182,22 +179,90 @@ public class RosterEntityProvider extends AbstractEntityProvider implements
 			// still could not find the group
 			if (group == null) {
 				log.warn("Group " + groupId + " not found");
-				return rosterList;
+				return new ArrayList<RosterItem>();
 			}
 		}
 
 		// Get the member set
-		Set<Member> members = group.getMembers();
+		return getRoster(group.getMembers(), params);
+	}
+
+	/**
+	 * Build the roster for a set of members. Users and their image privacy
+	 * settings are looked up in bulk, rather than getting a full Person for
+	 * each member.
+	 * 
+	 * <p>
+	 * The roster is sorted by display name. If the start and/or limit params
+	 * are given, only that page of the roster is returned.
+	 * </p>
+	 * 
+	 * @param members
+	 *            the members of the site or group
+	 * @param params
+	 *            request params
+	 * @return sorted List of RosterItems
+	 */
+	private List<RosterItem> getRoster(Set<Member> members,
+			Map<String, Object> params) {
+
+		String paramValue = (String) params.get(OFFICIAL_IMAGES_PARAM);
+		boolean officialImage = Boolean.valueOf(paramValue);
+
+		int start = NumberUtils.toInt((String) params.get(START_PARAM), 0);
+		int limit = NumberUtils.toInt((String) params.get(LIMIT_PARAM),
+				Integer.MAX_VALUE);
+		if (start < 0 || limit < 0) {
+			throw new IllegalArgumentException(START_PARAM + " and "
+					+ LIMIT_PARAM + " must not be negative");
+		}
+
+		List<String> userUuids = new ArrayList<String>();
 		for (Member member : members) {
 			if (member.isActive()) {
-				Person person = profileLogic.getPerson(member.getUserId());
-				RosterItem item = new RosterItem(person, officialImage);
-				rosterList.add(item);
+				userUuids.add(member.getUserId());
 			}
 		}
 
+		List<User> users = sakaiProxy.getUsers(userUuids);
+
+		// official images are controlled by site permissions, not privacy
+		Map<String, Boolean> imageAllowed = null;
+		String currentUserUuid = sakaiProxy.getCurrentUserId();
+		if (!officialImage && StringUtils.isNotBlank(currentUserUuid)) {
+			imageAllowed = privacyLogic.isActionAllowedForUsers(
+					sakaiProxy.getUuids(users), currentUserUuid,
+					PrivacyType.PRIVACY_OPTION_PROFILEIMAGE);
+		}
+
+		String blankImageUrl = imageLogic.getProfileImageEntityUrl(
+				ProfileConstants.BLANK, ProfileConstants.PROFILE_IMAGE_MAIN);
+
+		List<RosterItem> rosterList = new ArrayList<RosterItem>();
+		for (User user : users) {
+			String imageUrl;
+			if (officialImage) {
+				imageUrl = imageLogic.getProfileImageEntityUrl(user.getId(),
+						ProfileConstants.PROFILE_IMAGE_MAIN) + "official";
+			} else if (imageAllowed != null
+					&& Boolean.TRUE.equals(imageAllowed.get(user.getId()))) {
+				imageUrl = imageLogic.getProfileImageEntityUrl(user.getId(),
+						ProfileConstants.PROFILE_IMAGE_MAIN);
+			} else {
+				// would only get the default image anyway
+				imageUrl = blankImageUrl;
+			}
+			rosterList.add(new RosterItem(user.getDisplayName(), imageUrl));
+		}
+
 		Collections.sort(rosterList);
-		return rosterList;
+
+		// page
+		if (start >= rosterList.size()) {
+			return new ArrayList<RosterItem>();
+		}
+		int end = (int) Math.min((long) start + limit, rosterList.size());
+		return new ArrayList<RosterItem>(rosterList.subList(start, end));
 	}
 
 	@Data
@@ -208,6 +273,11 @@ public class RosterEntityProvider extends AbstractEntityProvider implements
 		public RosterItem() {
 		}
 
+		public RosterItem(String displayName, String imageUrl) {
+			this.displayName = displayName;
+			this.imageUrl = imageUrl;
+		}
+
 		public RosterItem(Person person, boolean useOfficialImages) {
 			displayName = person.getDisplayName();
 
@@ -61,6 +61,7 @@ import org.sakaiproject.profile2.model.Person;
 import org.sakaiproject.profile2.model.ProfileSearchTerm;
 import org.sakaiproject.profile2.tool.components.HashMapChoiceRenderer;
 import org.sakaiproject.profile2.tool.components.IconWithClueTip;
+import org.sakaiproject.profile2.tool.components.ProfileImageBatch;
 import org.sakaiproject.profile2.tool.components.ProfileImageRenderer;
 import org.sakaiproject.profile2.tool.components.ProfileStatusRenderer;
 import org.sakaiproject.profile2.tool.models.FriendAction;
@@ -275,6 +276,9 @@ public class MySearch extends BasePage {
 			
 			private static final long serialVersionUID = 1L;
 
+			//images for the page are looked up together
+			private final ProfileImageBatch images = new ProfileImageBatch(ProfileConstants.PROFILE_IMAGE_THUMBNAIL);
+
 			protected void populateItem(final ListItem<Person> item) {
 		        
 		    	Person person = (Person)item.getModelObject();
@@ -297,7 +301,7 @@ public class MySearch extends BasePage {
 				};
 				
 				//image
-				friendItem.add(new ProfileImageRenderer("searchResultPhoto", person, ProfileConstants.PROFILE_IMAGE_THUMBNAIL, false));
+				friendItem.add(new ProfileImageRenderer("searchResultPhoto", person, images, false));
 				item.add(friendItem);
 		    	
 		    	//name and link to profile (if allowed or no link)
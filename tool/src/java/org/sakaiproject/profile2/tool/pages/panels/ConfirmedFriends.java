@@ -41,8 +41,7 @@ import org.sakaiproject.profile2.logic.ProfileConnectionsLogic;
 import org.sakaiproject.profile2.logic.ProfilePrivacyLogic;
 import org.sakaiproject.profile2.logic.SakaiProxy;
 import org.sakaiproject.profile2.model.Person;
-import org.sakaiproject.profile2.model.ProfilePreferences;
-import org.sakaiproject.profile2.model.ProfilePrivacy;
+import org.sakaiproject.profile2.tool.components.ProfileImageBatch;
 import org.sakaiproject.profile2.tool.components.ProfileImageRenderer;
 import org.sakaiproject.profile2.tool.components.ProfileStatusRenderer;
 import org.sakaiproject.profile2.tool.dataproviders.ConfirmedFriendsDataProvider;
@@ -173,6 +172,9 @@ public class ConfirmedFriends extends Panel {
 		DataView<Person> confirmedFriendsDataView = new DataView<Person>("connections", provider) {
 			private static final long serialVersionUID = 1L;
 
+			//images for the page are looked up together
+			private final ProfileImageBatch images = new ProfileImageBatch(ProfileConstants.PROFILE_IMAGE_THUMBNAIL);
+
 			protected void populateItem(final Item<Person> item) {
 		        
 				Person person = (Person)item.getDefaultModelObject();
@@ -189,10 +191,6 @@ public class ConfirmedFriends extends Panel {
 		    		friend = connectionsLogic.isUserXFriendOfUserY(userUuid, personUuid); //other person viewing, check if they are friends
 		    	}
 		    	
-				//get other objects
-				ProfilePrivacy privacy = person.getPrivacy();
-				ProfilePreferences prefs = person.getPreferences();
-				
 				//image wrapper, links to profile
 		    	Link<String> friendItem = new Link<String>("connectionPhotoWrap", new Model<String>(personUuid)) {
 					private static final long serialVersionUID = 1L;
@@ -202,7 +200,7 @@ public class ConfirmedFriends extends Panel {
 				};
 				
 				//image
-				friendItem.add(new ProfileImageRenderer("connectionPhoto", personUuid, prefs, privacy, ProfileConstants.PROFILE_IMAGE_THUMBNAIL, true));
+				friendItem.add(new ProfileImageRenderer("connectionPhoto", person, images, true));
 				item.add(friendItem);
 				
 		    	//name and link to profile
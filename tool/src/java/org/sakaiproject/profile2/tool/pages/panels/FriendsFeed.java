@@ -29,6 +29,7 @@ import org.sakaiproject.profile2.logic.ProfilePreferencesLogic;
 import org.sakaiproject.profile2.logic.ProfilePrivacyLogic;
 import org.sakaiproject.profile2.logic.SakaiProxy;
 import org.sakaiproject.profile2.model.Person;
+import org.sakaiproject.profile2.tool.components.ProfileImageBatch;
 import org.sakaiproject.profile2.tool.components.ProfileImageRenderer;
 import org.sakaiproject.profile2.tool.dataproviders.FriendsFeedDataProvider;
 import org.sakaiproject.profile2.tool.pages.MyFriends;
@@ -90,6 +91,9 @@ public class FriendsFeed extends Panel {
 		GridView<Person> dataView = new GridView<Person>("rows", provider) {
 			
 			private static final long serialVersionUID = 1L;
+			
+			//images for the grid are looked up together
+			private final ProfileImageBatch images = new ProfileImageBatch(ProfileConstants.PROFILE_IMAGE_THUMBNAIL);
 
 			@Override
 			protected void populateEmptyItem(Item<Person> item)
@@ -138,7 +142,7 @@ public class FriendsFeed extends Panel {
 				};
 				
 				/* IMAGE */
-				friendItem.add(new ProfileImageRenderer("friendPhoto", friendId, person.getPreferences(), person.getPrivacy(), ProfileConstants.PROFILE_IMAGE_THUMBNAIL, true));
+				friendItem.add(new ProfileImageRenderer("friendPhoto", person, images, true));
 				
 				//name (will be linked also)
 		    	Label friendLinkLabel = new Label("friendName", displayName);
@@ -34,7 +34,6 @@ import org.sakaiproject.profile2.logic.ProfilePreferencesLogic;
 import org.sakaiproject.profile2.logic.ProfilePrivacyLogic;
 import org.sakaiproject.profile2.logic.SakaiProxy;
 import org.sakaiproject.profile2.model.Message;
-import org.sakaiproject.profile2.model.MessageParticipant;
 import org.sakaiproject.profile2.model.MessageThread;
 import org.sakaiproject.profile2.model.ProfilePreferences;
 import org.sakaiproject.profile2.model.ProfilePrivacy;
@@ -99,17 +98,12 @@ public class MessageThreadsView extends Panel {
 				Message message = thread.getMostRecentMessage();
 				String messageFromUuid = message.getFrom();
 				
-				//we need to know if this message has been read or not so we can style it accordingly
+				//we need to know if this thread has unread messages so we can style it accordingly
 				//we only need this if we didn't send the message
-				MessageParticipant participant = null;
-				
 				boolean messageOwner = false;
 				if(StringUtils.equals(messageFromUuid, currentUserUuid)) {
 					messageOwner = true;
 				}
-				if(!messageOwner) {
-					participant = messagingLogic.getMessageParticipant(message.getId(), currentUserUuid);
-				}
 				
 				//prefs and privacy
 				ProfilePreferences prefs = preferencesLogic.getPreferencesRecordForUser(messageFromUuid);
@@ -169,7 +163,7 @@ public class MessageThreadsView extends Panel {
 				item.add(messageUnreadNotice);
 				
 				//highlight if new, also render accessibility notice
-				if(!messageOwner && !participant.isRead()) {
+				if(!messageOwner && thread.getUnreadMessagesCount() > 0) {
 					item.add(new AttributeAppender("class", true, new Model<String>("unread-message"), " "));
 					messageUnreadNotice.setVisible(true);
 				}
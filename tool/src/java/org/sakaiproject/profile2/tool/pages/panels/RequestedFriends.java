@@ -37,8 +37,7 @@ import org.apache.wicket.spring.injection.annot.SpringBean;
 import org.sakaiproject.profile2.logic.ProfilePrivacyLogic;
 import org.sakaiproject.profile2.logic.SakaiProxy;
 import org.sakaiproject.profile2.model.Person;
-import org.sakaiproject.profile2.model.ProfilePreferences;
-import org.sakaiproject.profile2.model.ProfilePrivacy;
+import org.sakaiproject.profile2.tool.components.ProfileImageBatch;
 import org.sakaiproject.profile2.tool.components.ProfileImageRenderer;
 import org.sakaiproject.profile2.tool.components.ProfileStatusRenderer;
 import org.sakaiproject.profile2.tool.dataproviders.RequestedFriendsDataProvider;
@@ -107,6 +106,9 @@ public class RequestedFriends extends Panel {
 		DataView<Person> requestedFriendsDataView = new DataView<Person>("connections", provider) {
 			private static final long serialVersionUID = 1L;
 
+			//images for the page are looked up together
+			private final ProfileImageBatch images = new ProfileImageBatch(ProfileConstants.PROFILE_IMAGE_THUMBNAIL);
+
 			protected void populateItem(final Item<Person> item) {
 		        
 				Person person = (Person)item.getDefaultModelObject();
@@ -115,10 +117,6 @@ public class RequestedFriends extends Panel {
 		    	//get name
 		    	String displayName = person.getDisplayName();
 		    	
-				//get other objects
-				ProfilePrivacy privacy = person.getPrivacy();
-				ProfilePreferences prefs = person.getPreferences();
-		    	
 				//image wrapper, links to profile
 		    	Link<String> friendItem = new Link<String>("connectionPhotoWrap", new Model<String>(personUuid)) {
 					private static final long serialVersionUID = 1L;
@@ -128,7 +126,7 @@ public class RequestedFriends extends Panel {
 				};
 				
 				//image
-				friendItem.add(new ProfileImageRenderer("connectionPhoto", personUuid, prefs, privacy, ProfileConstants.PROFILE_IMAGE_THUMBNAIL, true));
+				friendItem.add(new ProfileImageRenderer("connectionPhoto", person, images, true));
 				item.add(friendItem);
 		    			    	
 		    	//name and link to profile
@@ -30,6 +30,7 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -37,6 +38,8 @@ import java.util.Set;
 import java.util.UUID;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang.StringEscapeUtils;
@@ -52,6 +55,12 @@ import org.sakaiproject.util.ResourceLoader;
 public class ProfileUtils {
 
 	private static final Logger log = Logger.getLogger(ProfileUtils.class);
+	
+	//images with more pixels than this are not decoded. 25 megapixels is about 100MB once decoded.
+	public static final long MAX_IMAGE_PIXELS = 25000000L;
+	
+	//avatars are this size square
+	public static final int AVATAR_IMAGE_XY = 80;
 
 
 	/**
@@ -134,20 +143,17 @@ public class ProfileUtils {
 		
 		byte[] scaledImageBytes = null;
 		try {
-			//convert original image to inputstream
-			
 			//original buffered image
-			BufferedImage originalImage = ImageIO.read(in);
+			BufferedImage originalImage = readImage(in, MAX_IMAGE_PIXELS);
+			if(originalImage == null) {
+				return null;
+			}
 			
 			//scale the image using the imgscalr library
 			BufferedImage scaledImage = Scalr.resize(originalImage, maxSize);
 			
 			//convert BufferedImage to byte array
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			ImageIO.write(scaledImage, getInformalFormatForMimeType(mimeType), baos);
-			baos.flush();
-			scaledImageBytes = baos.toByteArray();
-			baos.close();
+			scaledImageBytes = writeImage(scaledImage, mimeType);
 			
 		} catch (Exception e) {
 			log.error("Scaling image failed.", e);
@@ -156,6 +162,108 @@ public class ProfileUtils {
 		return scaledImageBytes;
 	}
 	
+	/**
+	 * Decode an image. The dimensions are read from the header first and if the image has more than maxPixels pixels
+	 * it is not decoded, so that very large images can't use up the heap.
+	 * 
+	 * @param in			stream of the original image
+	 * @param maxPixels		maximum number of pixels (width x height) allowed, 0 for no limit
+	 * @return the decoded image or null if it couldn't be read or was too large
+	 */
+	public static BufferedImage readImage(InputStream in, long maxPixels) {
+		
+		ImageInputStream iis = null;
+		ImageReader reader = null;
+		try {
+			iis = ImageIO.createImageInputStream(in);
+			if(iis == null) {
+				return null;
+			}
+			
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+			if(!readers.hasNext()) {
+				log.warn("No reader available for image.");
+				return null;
+			}
+			reader = readers.next();
+			reader.setInput(iis, true, true);
+			
+			//check size before decoding
+			int width = reader.getWidth(0);
+			int height = reader.getHeight(0);
+			if(maxPixels > 0 && (long)width * height > maxPixels) {
+				log.warn("Image is too large to process: " + width + "x" + height + ", max pixels is " + maxPixels);
+				return null;
+			}
+			
+			return reader.read(0);
+			
+		} catch (Exception e) {
+			log.error("Reading image failed.", e);
+			return null;
+		} finally {
+			if(reader != null) {
+				reader.dispose();
+			}
+			if(iis != null) {
+				try {
+					iis.close();
+				} catch (IOException e) {
+					log.error("Error closing image stream: ", e); 
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Encode an image in the format for the given mimetype
+	 * 
+	 * @param image		image to encode
+	 * @param mimeType	mimetype of the original image, eg image/jpeg
+	 * @return bytes of the encoded image
+	 * @throws IOException
+	 */
+	public static byte[] writeImage(BufferedImage image, String mimeType) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ImageIO.write(image, getInformalFormatForMimeType(mimeType), baos);
+		baos.flush();
+		byte[] bytes = baos.toByteArray();
+		baos.close();
+		return bytes;
+	}
+	
+	/**
+	 * Crop the largest square possible out of the centre of an image and resize it to the avatar size
+	 * 
+	 * @param image		original image
+	 * @return
+	 */
+	public static BufferedImage cropToAvatar(BufferedImage image) {
+		
+		//determine the smaller side of the image and use that as the size of the cropped square
+		//to be taken out of the centre
+		//then resize to the avatar size =80 square.
+		
+		int smallestSide = Math.min(image.getWidth(), image.getHeight());
+		
+		int startX = (image.getWidth() / 2) - (smallestSide/2);
+		int startY = (image.getHeight() / 2) - (smallestSide/2);
+		
+		if(log.isDebugEnabled()){
+			log.debug("image.getWidth():" + image.getWidth());
+			log.debug("image.getHeight():" + image.getHeight());
+			log.debug("smallestSide:" + smallestSide);
+			log.debug("startX:" + startX);
+			log.debug("startY:" + startY);	
+		}
+		
+		//crop to these bounds and starting positions
+		BufferedImage croppedImage = Scalr.crop(image, startX, startY, smallestSide, smallestSide);
+
+		//now resize it to the desired avatar size
+		return Scalr.resize(croppedImage, AVATAR_IMAGE_XY);
+	}
+	
 	/**
 	 * Convert a Date into a String according to format, or, if format
 	 * is set to null, do a current locale based conversion.
@@ -563,62 +671,13 @@ public class ProfileUtils {
 			in = new ByteArrayInputStream(imageData);
 			
 			//original buffered image
-			BufferedImage originalImage = ImageIO.read(in);
-			
-			//OPTION 1
-			//determine the smaller side of the image and use that as the size of the cropped square
-			//to be taken out of the centre
-			//then resize to the avatar size =80 square.
-			
-			int smallestSide = originalImage.getWidth();
-			if(originalImage.getHeight() < originalImage.getWidth()) {
-				smallestSide = originalImage.getHeight();
+			BufferedImage originalImage = readImage(in, MAX_IMAGE_PIXELS);
+			if(originalImage == null) {
+				return null;
 			}
 			
-			if(log.isDebugEnabled()){
-				log.debug("smallestSide:" + smallestSide);
-			}
-			
-			int startX = (originalImage.getWidth() / 2) - (smallestSide/2);
-			int startY = (originalImage.getHeight() / 2) - (smallestSide/2);
-			
-			//OPTION 2 (unused)
-			//determine a percentage of the original image which we want to keep, say 90%.
-			//then figure out the dimensions of the box and crop to that.
-			//then resize to the avatar size =80 square.
-					
-			//int percentWidth = (originalImage.getWidth() / 100) * 90;
-			//int startX = (originalImage.getWidth() / 2) - (percentWidth/2);
-			//int percentHeight = (originalImage.getHeight() / 100) * 90;
-			//int startY = (originalImage.getHeight() / 2) - (percentHeight/2);
-			//log.debug("percentWidth:" + percentWidth);
-			//log.debug("percentHeight:" + percentHeight);
-			//so it is square, we can only use one dimension for both side, so choose the smaller one
-			//int croppedSize = percentWidth;
-			//if(percentHeight < percentWidth) {
-			//	croppedSize = percentHeight;
-			//}
-			//log.debug("croppedSize:" + croppedSize);
-		
-			if(log.isDebugEnabled()){
-				log.debug("originalImage.getWidth():" + originalImage.getWidth());
-				log.debug("originalImage.getHeight():" + originalImage.getHeight());
-				log.debug("startX:" + startX);
-				log.debug("startY:" + startY);	
-			}
-			
-			//crop to these bounds and starting positions
-			BufferedImage croppedImage = Scalr.crop(originalImage, startX, startY, smallestSide, smallestSide);
-
-			//now resize it to the desired avatar size
-			BufferedImage scaledImage = Scalr.resize(croppedImage, 80);
-			
 			//convert BufferedImage to byte array
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
-			ImageIO.write(scaledImage, getInformalFormatForMimeType(mimeType), baos);
-			baos.flush();
-			outputBytes = baos.toByteArray();
-			baos.close();
+			outputBytes = writeImage(cropToAvatar(originalImage), mimeType);
 			
 		} catch (Exception e) {
 			log.error("Cropping and scaling image failed.", e);